@@ -2,8 +2,16 @@ package org.dsa.iot.calendar;
 
 import microsoft.exchange.webservices.data.core.enumeration.misc.ExchangeVersion;
 import org.dsa.iot.calendar.caldav.CalDAVCalendar;
+import org.dsa.iot.calendar.event.BusyTimeline;
+import org.dsa.iot.calendar.event.ChangeLog;
 import org.dsa.iot.calendar.event.DSAEvent;
+import org.dsa.iot.calendar.event.EventCursor;
+import org.dsa.iot.calendar.event.EventDetails;
+import org.dsa.iot.calendar.event.EventSnapshot;
 import org.dsa.iot.calendar.event.EventUtils;
+import org.dsa.iot.calendar.event.FreeSlotFinder;
+import org.dsa.iot.calendar.event.SortedMerge;
+import org.dsa.iot.calendar.event.TimeRange;
 import org.dsa.iot.calendar.ews.ExchangeCalendar;
 import org.dsa.iot.calendar.google.GoogleCalendar;
 import org.dsa.iot.dslink.node.Node;
@@ -14,16 +22,30 @@ import org.dsa.iot.dslink.node.actions.table.Row;
 import org.dsa.iot.dslink.node.actions.table.Table;
 import org.dsa.iot.dslink.node.value.Value;
 import org.dsa.iot.dslink.node.value.ValueType;
+import org.dsa.iot.dslink.util.Objects;
+import org.dsa.iot.dslink.util.json.JsonArray;
+import org.dsa.iot.dslink.util.json.JsonObject;
 import org.dsa.iot.dslink.util.handler.Handler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.text.ParseException;
+import java.time.DateTimeException;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
 
-import static org.dsa.iot.calendar.CalendarHandler.CALENDARS;
 import static org.dsa.iot.calendar.event.EventUtils.timeStringToInstant;
 
 public class Actions {
@@ -56,6 +78,30 @@ public class Actions {
         return builder.build();
     }
 
+    static Node addFindFreeSlotNode(Node superRoot) {
+        NodeBuilder builder = superRoot.createChild("findFreeSlot", false);
+        builder.setDisplayName("Find Free Slot");
+        builder.setSerializable(false);
+        builder.setAction(new FindFreeSlot());
+        return builder.build();
+    }
+
+    static Node addGetAvailabilityGridNode(Node superRoot) {
+        NodeBuilder builder = superRoot.createChild("getAvailabilityGrid", false);
+        builder.setDisplayName("Get Availability Grid");
+        builder.setSerializable(false);
+        builder.setAction(new GetAvailabilityGrid());
+        return builder.build();
+    }
+
+    static Node addQueryEventsNode(Node superRoot) {
+        NodeBuilder builder = superRoot.createChild("queryEvents", false);
+        builder.setDisplayName("Query Events");
+        builder.setSerializable(false);
+        builder.setAction(new QueryEvents());
+        return builder.build();
+    }
+
     public static Node addRemoveCalendarNode(Node calendarNode) {
         NodeBuilder rmBuilder = calendarNode.createChild("removeAccount", false);
         rmBuilder.setDisplayName("Remove Account");
@@ -68,7 +114,7 @@ public class Actions {
         NodeBuilder refreshBuilder = calendarNode.createChild("refreshCalendar", false);
         refreshBuilder.setDisplayName("Refresh Calendar");
         refreshBuilder.setSerializable(false);
-        refreshBuilder.setAction(new RefreshBuilder(CALENDARS.get(calendarNode.getName())));
+        refreshBuilder.setAction(new RefreshBuilder(CalendarManager.get(calendarNode.getName())));
         return refreshBuilder.build();
     }
 
@@ -77,39 +123,103 @@ public class Actions {
         NodeBuilder createEventNode = calendarNode.createChild("createAnEvent", false);
         createEventNode.setDisplayName("Create Event");
         createEventNode.setSerializable(false);
-        createEventNode.setAction(new CreateEvent(CALENDARS.get(calendarNode.getName())));
+        createEventNode.setAction(new CreateEvent(CalendarManager.get(calendarNode.getName())));
         return createEventNode.build();
     }
 
-    public static Node addEditEventNode(Node eventNode) {
+    public static Node addEditEventNode(Node eventNode, BaseCalendar calendar) {
         NodeBuilder editEventNode = eventNode.createChild("editEvent", false);
         editEventNode.setDisplayName("Edit Event");
         editEventNode.setSerializable(false);
-        editEventNode.setAction(new EditEvent(CALENDARS.get(eventNode.getParent().getParent().getName())));
+        editEventNode.setAction(new EditEvent(calendar));
         return editEventNode.build();
     }
 
-    public static Node addDeleteEventNode(Node eventNode) {
+    public static Node addDeleteEventNode(Node eventNode, BaseCalendar calendar) {
         NodeBuilder deleteEventNode = eventNode.createChild("deleteEvent", false);
         deleteEventNode.setDisplayName("Delete Event");
         deleteEventNode.setSerializable(false);
-        deleteEventNode.setAction(new RemoveEvent(CALENDARS.get(eventNode.getParent().getParent().getName()), eventNode.getName()));
+        deleteEventNode.setAction(new RemoveEvent(calendar, eventNode.getName()));
         return deleteEventNode.build();
     }
 
+    public static Node addGetEventDetailsNode(Node eventNode, BaseCalendar calendar) {
+        NodeBuilder getEventDetails = eventNode.createChild("getEventDetails", false);
+        getEventDetails.setDisplayName("Get Event Details");
+        getEventDetails.setSerializable(false);
+        getEventDetails.setAction(new GetEventDetails(calendar, eventNode.getName()));
+        return getEventDetails.build();
+    }
+
     public static Node addGetEventsRange(Node calendarNode) {
         NodeBuilder getEventsRange = calendarNode.createChild("getEventsRange", false);
         getEventsRange.setDisplayName("Get Events Range");
         getEventsRange.setSerializable(false);
-        getEventsRange.setAction(new GetEvents(CALENDARS.get(calendarNode.getName())));
+        getEventsRange.setAction(new GetEvents(CalendarManager.get(calendarNode.getName())));
         return getEventsRange.build();
     }
 
+    public static Node addGetAvailabilityNode(Node calendarNode) {
+        NodeBuilder getAvailability = calendarNode.createChild("getAvailability", false);
+        getAvailability.setDisplayName("Get Availability");
+        getAvailability.setSerializable(false);
+        getAvailability.setAction(new GetAvailability(CalendarManager.get(calendarNode.getName())));
+        return getAvailability.build();
+    }
+
+    public static Node addSearchEventsNode(Node calendarNode) {
+        NodeBuilder searchEvents = calendarNode.createChild("searchEvents", false);
+        searchEvents.setDisplayName("Search Events");
+        searchEvents.setSerializable(false);
+        searchEvents.setAction(new SearchEvents(CalendarManager.get(calendarNode.getName())));
+        return searchEvents.build();
+    }
+
+    public static Node addWatchChangesNode(Node calendarNode) {
+        NodeBuilder watchChanges = calendarNode.createChild("watchChanges", false);
+        watchChanges.setDisplayName("Watch Changes");
+        watchChanges.setSerializable(false);
+        watchChanges.setAction(new WatchChanges(CalendarManager.get(calendarNode.getName())));
+        return watchChanges.build();
+    }
+
+    public static Node addAddTriggerNode(Node calendarNode) {
+        NodeBuilder addTrigger = calendarNode.createChild("addTrigger", false);
+        addTrigger.setDisplayName("Add Trigger");
+        addTrigger.setSerializable(false);
+        addTrigger.setAction(new AddTrigger(CalendarManager.get(calendarNode.getName())));
+        return addTrigger.build();
+    }
+
+    public static Node addBulkCreateEventsNode(Node calendarNode) {
+        NodeBuilder bulkCreate = calendarNode.createChild("bulkCreateEvents", false);
+        bulkCreate.setDisplayName("Bulk Create Events");
+        bulkCreate.setSerializable(false);
+        bulkCreate.setAction(new BulkCreateEvents(CalendarManager.get(calendarNode.getName())));
+        return bulkCreate.build();
+    }
+
+    public static Node addBulkDeleteEventsNode(Node calendarNode) {
+        NodeBuilder bulkDelete = calendarNode.createChild("bulkDeleteEvents", false);
+        bulkDelete.setDisplayName("Bulk Delete Events");
+        bulkDelete.setSerializable(false);
+        bulkDelete.setAction(new BulkDeleteEvents(CalendarManager.get(calendarNode.getName())));
+        return bulkDelete.build();
+    }
+
+    static Node addRemoveTriggerNode(Node triggerNode, BaseCalendar calendar) {
+        NodeBuilder removeTrigger = triggerNode.createChild("removeTrigger", false);
+        removeTrigger.setDisplayName("Remove Trigger");
+        removeTrigger.setSerializable(false);
+        removeTrigger.setAction(new RemoveTrigger(calendar, triggerNode.getName()));
+        return removeTrigger.build();
+    }
+
     public static Node addGetCalendars(Node calendarNode) {
         NodeBuilder getCalendars = calendarNode.createChild("getCalendars", false);
         getCalendars.setDisplayName("Get Calendars");
         getCalendars.setSerializable(false);
-        getCalendars.setAction(new GetCalendars(CALENDARS.get(calendarNode.getName())));
+        getCalendars.setAction(new GetCalendars(CalendarManager.get(calendarNode.getName())));
         return getCalendars.build();
     }
 
@@ -159,11 +269,18 @@ public class Actions {
                     Node events = eventsBuilder.build();
 
                     CalDAVCalendar cal = new CalDAVCalendar(host, port, path, events);
-                    CALENDARS.put(desc, cal);
+                    CalendarManager.register(desc, cal);
 
                     Actions.addCreateEventNode(calendarNode);
                     Actions.addRemoveCalendarNode(calendarNode);
                     Actions.addRefreshCalendarNode(calendarNode);
+                    Actions.addGetAvailabilityNode(calendarNode);
+                    Actions.addSearchEventsNode(calendarNode);
+                    Actions.addWatchChangesNode(calendarNode);
+                    Actions.addAddTriggerNode(calendarNode);
+                    Actions.addBulkCreateEventsNode(calendarNode);
+                    Actions.addBulkDeleteEventsNode(calendarNode);
+                    CalendarHandler.setStatus(calendarNode, CalendarHandler.STATUS_READY);
                 }
             });
             addParameter(new Parameter("desc", ValueType.STRING));
@@ -205,10 +322,12 @@ public class Actions {
 
                     try {
                         GoogleCalendar cal = new GoogleCalendar(calendarNode, clientId, clientSecret);
-                        CALENDARS.put(desc, cal);
+                        CalendarManager.register(desc, cal);
                         cal.attemptAuthorize(calendarNode);
+                        CalendarHandler.setStatus(calendarNode, CalendarHandler.STATUS_READY);
                     } catch (IOException e) {
                         LOGGER.debug(e.toString());
+                        CalendarHandler.setStatus(calendarNode, CalendarHandler.STATUS_FAILED + e.getMessage());
                     }
                 }
             });
@@ -269,11 +388,18 @@ public class Actions {
                     cal = new ExchangeCalendar(calendarNode, version, email, password, url);
                 }
 
-                CALENDARS.put(desc, cal);
+                CalendarManager.register(desc, cal);
 
                 Actions.addCreateEventNode(calendarNode);
                 Actions.addRemoveCalendarNode(calendarNode);
                 Actions.addRefreshCalendarNode(calendarNode);
+                Actions.addGetAvailabilityNode(calendarNode);
+                Actions.addSearchEventsNode(calendarNode);
+                Actions.addWatchChangesNode(calendarNode);
+                Actions.addAddTriggerNode(calendarNode);
+                Actions.addBulkCreateEventsNode(calendarNode);
+                Actions.addBulkDeleteEventsNode(calendarNode);
+                CalendarHandler.setStatus(calendarNode, CalendarHandler.STATUS_READY);
 
                 cal.startUpdateLoop();
             });
@@ -286,6 +412,48 @@ public class Actions {
         }
     }
 
+    private static List<String> splitList(String list) {
+        List<String> items = new ArrayList<>();
+        for (String item : list.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    /**
+     * @param account Name of the calendar node, used as the calendar of
+     *                providers that do not identify one per event.
+     */
+    static Row eventRow(String account, DSAEvent event) {
+        DSAIdentifier calendar = event.getCalendar() != null ? event.getCalendar() : new DSAIdentifier(account, account);
+        return Row.make(
+                new Value(event.getUniqueId()),
+                new Value(event.getTitle()),
+                new Value(event.getDescription()),
+                new Value(EventUtils.instantToTimeString(event.getStart())),
+                new Value(EventUtils.instantToTimeString(event.getEnd())),
+                new Value(event.getTimeZone()),
+                new Value(calendar.getUid()),
+                new Value(calendar.getTitle()),
+                new Value(event.getLocation()),
+                new Value(event.serializeGuests()));
+    }
+
+    private static void addEventColumns(Action action) {
+        action.addResult(new Parameter("ID", ValueType.STRING));
+        action.addResult(new Parameter("Title", ValueType.STRING));
+        action.addResult(new Parameter("Description", ValueType.STRING));
+        action.addResult(new Parameter("Start", ValueType.STRING));
+        action.addResult(new Parameter("End", ValueType.STRING));
+        action.addResult(new Parameter("TimeZone", ValueType.STRING));
+        action.addResult(new Parameter("CalendarID", ValueType.STRING));
+        action.addResult(new Parameter("CalendarTitle", ValueType.STRING));
+        action.addResult(new Parameter("Location", ValueType.STRING));
+        action.addResult(new Parameter("Guests", ValueType.ARRAY));
+    }
+
     public static ExchangeVersion parseExchangeVersion(String str) {
         switch (str) {
             case "2007 SP1":
@@ -299,13 +467,175 @@ public class Actions {
         }
     }
 
+    private static class FindFreeSlot extends Action {
+        static final int DEFAULT_DURATION_MINUTES = 30;
+        static final int DEFAULT_COUNT = 5;
+
+        FindFreeSlot() {
+            super(Permission.READ, actionResult -> {
+                try {
+                    String timeRange = actionResult.getParameter("timeRange").getString();
+                    String[] dates = timeRange.split("/", 2);
+                    if (dates.length != 2) {
+                        throw new Exception("Unexpected dates length");
+                    }
+                    Instant windowStart = timeStringToInstant(dates[0]);
+                    Instant windowEnd = timeStringToInstant(dates[1]);
+                    List<String> calendarNames = splitList(actionResult.getParameter("calendars", new Value("")).getString());
+                    List<String> guests = splitList(actionResult.getParameter("guests", new Value("")).getString());
+                    int minutes = actionResult.getParameter("duration", new Value(DEFAULT_DURATION_MINUTES)).getNumber().intValue();
+                    int count = actionResult.getParameter("count", new Value(DEFAULT_COUNT)).getNumber().intValue();
+                    String workdayStart = actionResult.getParameter("workdayStart", new Value("")).getString();
+                    String workdayEnd = actionResult.getParameter("workdayEnd", new Value("")).getString();
+
+                    FreeSlotFinder finder = new FreeSlotFinder(Duration.ofMinutes(minutes),
+                            workdayStart.isEmpty() ? null : LocalTime.parse(workdayStart),
+                            workdayEnd.isEmpty() ? null : LocalTime.parse(workdayEnd),
+                            ZoneId.systemDefault());
+                    List<List<DSAEvent>> busy = collectBusyEvents(calendarNames, guests, windowStart, windowEnd);
+
+                    actionResult.getTable().setMode(Table.Mode.APPEND);
+                    for (TimeRange slot : finder.find(busy, windowStart, windowEnd, count)) {
+                        actionResult.getTable().addRow(Row.make(
+                                new Value(EventUtils.instantToTimeString(slot.start)),
+                                new Value(EventUtils.instantToTimeString(slot.end))));
+                    }
+                } catch (Exception e) {
+                    LOGGER.debug(e.toString());
+                    actionResult.getTable().addRow(Row.make(new Value("Error occurred: " + e.getMessage())));
+                }
+            });
+            addParameter(new Parameter("calendars", ValueType.STRING)
+                    .setDescription("Comma separated names of calendars that must be free"));
+            addParameter(new Parameter("guests", ValueType.STRING)
+                    .setDescription("Comma separated emails of guests that must be free"));
+            addParameter(new Parameter("duration", ValueType.NUMBER, new Value(DEFAULT_DURATION_MINUTES))
+                    .setDescription("Minutes"));
+            Parameter parameter = new Parameter("timeRange", ValueType.TIME);
+            parameter.setEditorType(EditorType.DATE_RANGE);
+            addParameter(parameter);
+            addParameter(new Parameter("workdayStart", ValueType.STRING).setPlaceHolder("09:00"));
+            addParameter(new Parameter("workdayEnd", ValueType.STRING).setPlaceHolder("17:00"));
+            addParameter(new Parameter("count", ValueType.NUMBER, new Value(DEFAULT_COUNT)));
+
+            addResult(new Parameter("Start", ValueType.STRING));
+            addResult(new Parameter("End", ValueType.STRING));
+            setResultType(ResultType.TABLE);
+        }
+
+        /**
+         * Reads the busy events of the requested calendars and guests from
+         * the in-memory snapshots, each list sorted by start time. A guest is
+         * busy during every event of any calendar they attend.
+         */
+        private static List<List<DSAEvent>> collectBusyEvents(List<String> calendarNames, List<String> guests,
+                                                              Instant start, Instant end) throws Exception {
+            List<List<DSAEvent>> busy = new ArrayList<>();
+            for (String name : calendarNames) {
+                BaseCalendar calendar = CalendarManager.get(name);
+                if (calendar == null) {
+                    throw new Exception("Unknown calendar " + name);
+                }
+                busy.add(calendar.getEventsInRange(start, end));
+            }
+            if (!guests.isEmpty()) {
+                for (BaseCalendar calendar : CalendarManager.getCalendars()) {
+                    List<DSAEvent> attended = new ArrayList<>();
+                    for (DSAEvent event : calendar.getEventsInRange(start, end)) {
+                        for (String guest : guests) {
+                            if (event.hasGuest(guest)) {
+                                attended.add(event);
+                                break;
+                            }
+                        }
+                    }
+                    busy.add(attended);
+                }
+            }
+            return busy;
+        }
+    }
+
+    private static class GetAvailabilityGrid extends Action {
+        GetAvailabilityGrid() {
+            super(Permission.READ, actionResult -> {
+                try {
+                    String timeRange = actionResult.getParameter("timeRange").getString();
+                    String[] dates = timeRange.split("/", 2);
+                    if (dates.length != 2) {
+                        throw new Exception("Unexpected dates length");
+                    }
+                    Instant start = timeStringToInstant(dates[0]);
+                    Instant end = timeStringToInstant(dates[1]);
+                    List<String> names = splitList(actionResult.getParameter("calendars", new Value("")).getString());
+                    if (names.isEmpty()) {
+                        throw new Exception("No calendars given");
+                    }
+
+                    List<BaseCalendar> calendars = new ArrayList<>();
+                    List<BusyTimeline> timelines = new ArrayList<>();
+                    for (String name : names) {
+                        BaseCalendar calendar = CalendarManager.get(name);
+                        if (calendar == null) {
+                            throw new Exception("Unknown calendar " + name);
+                        }
+                        BusyTimeline timeline = calendar.getBusyTimeline();
+                        if (!timelines.isEmpty() && !timeline.getResolution().equals(timelines.get(0).getResolution())) {
+                            throw new Exception("Calendars use different busy resolutions");
+                        }
+                        calendars.add(calendar);
+                        timelines.add(timeline);
+                    }
+
+                    BusyTimeline first = timelines.get(0);
+                    Instant gridStart = first.slotStart(start);
+                    long resolution = first.getResolution().toMillis();
+                    int slots = (int) ((end.toEpochMilli() - gridStart.toEpochMilli() + resolution - 1) / resolution);
+                    String startString = EventUtils.instantToTimeString(gridStart);
+                    Value minutes = new Value(first.getResolution().toMinutes());
+
+                    List<long[]> grid = new ArrayList<>();
+                    actionResult.getTable().setMode(Table.Mode.APPEND);
+                    for (int i = 0; i < names.size(); i++) {
+                        long[] busy = calendars.get(i).getBusy(gridStart, slots);
+                        grid.add(busy);
+                        actionResult.getTable().addRow(Row.make(new Value(names.get(i)), new Value(startString), minutes,
+                                new Value(BusyTimeline.toBitString(busy, slots))));
+                    }
+                    actionResult.getTable().addRow(Row.make(new Value("Any Busy"), new Value(startString), minutes,
+                            new Value(BusyTimeline.toBitString(BusyTimeline.or(grid), slots))));
+                    actionResult.getTable().addRow(Row.make(new Value("All Busy"), new Value(startString), minutes,
+                            new Value(BusyTimeline.toBitString(BusyTimeline.and(grid), slots))));
+                } catch (Exception e) {
+                    LOGGER.debug(e.toString());
+                    actionResult.getTable().addRow(Row.make(new Value("Error occurred: " + e.getMessage())));
+                }
+            });
+            addParameter(new Parameter("calendars", ValueType.STRING)
+                    .setDescription("Comma separated names of calendars"));
+            Parameter parameter = new Parameter("timeRange", ValueType.TIME);
+            parameter.setEditorType(EditorType.DATE_RANGE);
+            addParameter(parameter);
+
+            addResult(new Parameter("Calendar", ValueType.STRING));
+            addResult(new Parameter("Start", ValueType.STRING));
+            addResult(new Parameter("SlotMinutes", ValueType.NUMBER));
+            addResult(new Parameter("Busy", ValueType.STRING));
+            setResultType(ResultType.TABLE);
+        }
+    }
+
     private static class RemoveAccount extends Action {
         RemoveAccount() {
             super(Permission.CONFIG, new Handler<ActionResult>() {
                 @Override
                 public void handle(ActionResult event) {
                     Node calendar = event.getNode().getParent();
-                    event.getNode().getParent().getParent().removeChild(calendar, false);
+                    BaseCalendar removed = CalendarManager.remove(calendar.getName());
+                    if (removed != null) {
+                        removed.discardSnapshot();
+                    }
+                    calendar.getParent().removeChild(calendar, false);
                 }
             });
         }
@@ -313,15 +643,18 @@ public class Actions {
 
     private static class RefreshBuilder extends Action {
         RefreshBuilder(final BaseCalendar calendar) {
-            super(Permission.WRITE, event -> calendar.updateCalendar());
+            super(Permission.WRITE, event -> calendar.refresh());
         }
     }
 
     private static class CreateEvent extends Action {
         CreateEvent(final BaseCalendar calendar) {
             super(Permission.WRITE, actionResult -> {
+                RowStream stream = new RowStream(actionResult);
                 String title = actionResult.getParameter("title").getString();
-                if (title != null && !title.isEmpty()) {
+                if (title == null || title.isEmpty()) {
+                    stream.close();
+                } else {
                     String desc = actionResult.getParameter("desc", new Value("")).getString();
                     String timeRange = actionResult.getParameter("timeRange").getString();
                     try {
@@ -342,11 +675,20 @@ public class Actions {
                             String calUid = calendar1.substring(indexOfPipe + 1);
                             event.setCalendar(new DSAIdentifier(calUid, calTitle));
                         }
-                        calendar.createEvent(event);
-                        actionResult.getTable().addRow(Row.make(new Value("Event created.")));
+                        // Reported once the provider created the event; the event shows up right away.
+                        calendar.createEvent(event).whenComplete((created, e) -> {
+                            if (e == null) {
+                                stream.add(Row.make(new Value("Event created.")));
+                            } else {
+                                LOGGER.debug(e.toString());
+                                stream.add(Row.make(new Value("Error occurred: " + e.getMessage())));
+                            }
+                            stream.close();
+                        });
                     } catch (Exception e) {
                         LOGGER.debug(e.toString());
-                        actionResult.getTable().addRow(Row.make(new Value("Error occurred: " + e.getMessage())));
+                        stream.add(Row.make(new Value("Error occurred: " + e.getMessage())));
+                        stream.close();
                     }
                 }
             });
@@ -365,45 +707,54 @@ public class Actions {
             }
 
             addResult(new Parameter("success", ValueType.STRING));
+            setResultType(ResultType.STREAM);
         }
     }
 
     private static class EditEvent extends Action {
         EditEvent(final BaseCalendar calendar) {
             super(Permission.WRITE, actionResult -> {
-                String title = actionResult.getParameter("title").getString();
-                if (title != null && !title.isEmpty()) {
-                    String desc = actionResult.getParameter("desc", new Value("")).getString();
-                    String timeRange = actionResult.getParameter("timeRange").getString();
-                    String location = actionResult.getParameter("location", new Value("")).getString();
-                    try {
-                        String[] dates = timeRange.split("/", 2);
+                RowStream stream = new RowStream(actionResult);
+                String title = actionResult.getParameter("title", new Value("")).getString();
+                Value desc = actionResult.getParameter("desc");
+                Value timeRange = actionResult.getParameter("timeRange");
+                Value location = actionResult.getParameter("location");
+                try {
+                    String uid = actionResult.getNode().getParent().getName();
+                    DSAEvent current = calendar.getSnapshot().get(uid);
+                    if (current == null) {
+                        throw new Exception("Event no longer exists");
+                    }
+                    // Parameters left out keep their current value.
+                    DSAEvent event = current.copy();
+                    if (title != null && !title.isEmpty()) {
+                        event.setTitle(title);
+                    }
+                    if (desc != null && desc.getString() != null) {
+                        event.setDescription(desc.getString());
+                    }
+                    if (location != null && location.getString() != null) {
+                        event.setLocation(location.getString());
+                    }
+                    if (timeRange != null && timeRange.getString() != null) {
+                        String[] dates = timeRange.getString().split("/", 2);
                         if (dates.length != 2) {
                             throw new Exception("Unexpected dates length");
                         }
-                        Instant startDate = EventUtils.timeStringToInstant(dates[0]);
-                        Instant endDate = EventUtils.timeStringToInstant(dates[1]);
-                        DSAEvent event = new DSAEvent(title, startDate, endDate);
-                        event.setDescription(desc);
-                        event.setLocation(location);
-                        Node editEventNode = actionResult.getNode().getParent();
-                        editEventNode.setDisplayName(title);
-                        editEventNode.getChild("description", false).setValue(new Value(desc));
-                        editEventNode.getChild("start", false).setValue(new Value(dates[0]));
-                        editEventNode.getChild("end", false).setValue(new Value(dates[1]));
-                        editEventNode.getChild("location", false).setValue(new Value(location));
-                        if (calendar.supportsMultipleCalendars()) {
-                            String calendarId = editEventNode.getChild("calendarId", false).getValue().getString();
-                            event.setCalendar(new DSAIdentifier(calendarId,
-                                    editEventNode.getChild("calendar", false).getValue().getString()));
-                        }
-                        calendar.deleteEvent(editEventNode.getName(), false);
-                        calendar.createEvent(event);
-                        actionResult.getTable().addRow(Row.make(new Value(true)));
-                    } catch (Exception e) {
-                        LOGGER.debug(e.toString());
-                        actionResult.getTable().addRow(Row.make(new Value(false)));
+                        event.setStart(EventUtils.timeStringToInstant(dates[0]));
+                        event.setEnd(EventUtils.timeStringToInstant(dates[1]));
                     }
+                    calendar.updateEvent(event).whenComplete((updated, e) -> {
+                        if (e != null) {
+                            LOGGER.debug(e.toString());
+                        }
+                        stream.add(Row.make(new Value(e == null)));
+                        stream.close();
+                    });
+                } catch (Exception e) {
+                    LOGGER.debug(e.toString());
+                    stream.add(Row.make(new Value(false)));
+                    stream.close();
                 }
             });
             addParameter(new Parameter("title", ValueType.STRING));
@@ -414,59 +765,548 @@ public class Actions {
             addParameter(parameter);
 
             addResult(new Parameter("success", ValueType.BOOL));
+            setResultType(ResultType.STREAM);
         }
     }
 
     private static class RemoveEvent extends Action {
         RemoveEvent(final BaseCalendar calendar, final String uid) {
-            super(Permission.WRITE, event -> calendar.deleteEvent(uid, true));
+            super(Permission.WRITE, actionResult -> {
+                RowStream stream = new RowStream(actionResult);
+                calendar.deleteEvent(uid).whenComplete((deleted, e) -> {
+                    if (e != null) {
+                        LOGGER.debug(e.toString());
+                    }
+                    stream.add(Row.make(new Value(e == null)));
+                    stream.close();
+                });
+            });
+            addResult(new Parameter("success", ValueType.BOOL));
+            setResultType(ResultType.STREAM);
+        }
+    }
+
+    /* Streams one row per item of a bulk action, in the order the items were given. */
+    private static void sendBulkResults(RowStream stream, List<DSAEvent> items, BulkResult[] outcomes) {
+        for (int i = 0; i < outcomes.length; i++) {
+            BulkResult outcome = outcomes[i];
+            stream.add(Row.make(
+                    new Value(i),
+                    new Value(outcome.getUniqueId()),
+                    new Value(items.get(i) != null ? items.get(i).getTitle() : null),
+                    new Value(outcome.isSuccess()),
+                    new Value(outcome.getError())));
+        }
+        stream.close();
+    }
+
+    private static void addBulkColumns(Action action) {
+        action.addResult(new Parameter("Index", ValueType.NUMBER));
+        action.addResult(new Parameter("ID", ValueType.STRING));
+        action.addResult(new Parameter("Title", ValueType.STRING));
+        action.addResult(new Parameter("Success", ValueType.BOOL));
+        action.addResult(new Parameter("Error", ValueType.STRING));
+        action.setResultType(ResultType.STREAM);
+    }
+
+    private static class BulkCreateEvents extends Action {
+        BulkCreateEvents(final BaseCalendar calendar) {
+            super(Permission.WRITE, actionResult -> {
+                RowStream stream = new RowStream(actionResult);
+                Value eventsParam = actionResult.getParameter("events");
+                JsonArray items = eventsParam != null && eventsParam.getArray() != null ? eventsParam.getArray() : new JsonArray();
+                Objects.getDaemonThreadPool().execute(() -> {
+                    List<DSAEvent> parsed = new ArrayList<>();
+                    BulkResult[] outcomes = new BulkResult[items.size()];
+                    List<DSAEvent> toCreate = new ArrayList<>();
+                    List<Integer> indexes = new ArrayList<>();
+                    Map<String, DSAIdentifier> calendars = new HashMap<>();
+                    if (calendar.supportsMultipleCalendars()) {
+                        for (DSAIdentifier id : calendar.getCalendars()) {
+                            calendars.put(id.getUid(), id);
+                        }
+                    }
+                    for (int i = 0; i < items.size(); i++) {
+                        try {
+                            DSAEvent event = parseBulkEvent(items.get(i), calendar, calendars);
+                            parsed.add(event);
+                            toCreate.add(event);
+                            indexes.add(i);
+                        } catch (RuntimeException e) {
+                            parsed.add(null);
+                            outcomes[i] = BulkResult.failure(null, e.getMessage());
+                        }
+                    }
+                    calendar.createEvents(toCreate).whenComplete((results, e) -> {
+                        for (int i = 0; i < indexes.size(); i++) {
+                            outcomes[indexes.get(i)] = e == null ? results.get(i) : BulkResult.failure(null, e.getMessage());
+                        }
+                        sendBulkResults(stream, parsed, outcomes);
+                    });
+                });
+            });
+            addParameter(new Parameter("events", ValueType.ARRAY)
+                    .setDescription("Objects with title, start, end, calendarId when the account has several calendars, "
+                            + "and optionally description and location"));
+            addBulkColumns(this);
+        }
+
+        /**
+         * @throws IllegalArgumentException If the item is not a valid event.
+         */
+        private static DSAEvent parseBulkEvent(Object item, BaseCalendar calendar, Map<String, DSAIdentifier> calendars) {
+            if (!(item instanceof JsonObject)) {
+                throw new IllegalArgumentException("Expected an object");
+            }
+            JsonObject json = (JsonObject) item;
+            String title = json.get("title");
+            String start = json.get("start");
+            String end = json.get("end");
+            if (title == null || title.isEmpty() || start == null || end == null) {
+                throw new IllegalArgumentException("Title, start and end are required");
+            }
+            DSAEvent event;
+            try {
+                event = new DSAEvent(title, EventUtils.timeStringToInstant(start), EventUtils.timeStringToInstant(end));
+            } catch (ParseException | DateTimeException e) {
+                throw new IllegalArgumentException("Invalid start or end", e);
+            }
+            event.setDescription(json.get("description") != null ? json.get("description") : "");
+            event.setLocation(json.get("location") != null ? json.get("location") : "");
+            if (calendar.supportsMultipleCalendars()) {
+                String calendarId = json.get("calendarId");
+                if (calendarId == null || calendarId.isEmpty()) {
+                    throw new IllegalArgumentException("calendarId is required");
+                }
+                DSAIdentifier target = calendars.get(calendarId);
+                if (target == null) {
+                    throw new IllegalArgumentException("Unknown calendar " + calendarId);
+                }
+                event.setCalendar(target);
+            }
+            return event;
+        }
+    }
+
+    private static class BulkDeleteEvents extends Action {
+        BulkDeleteEvents(final BaseCalendar calendar) {
+            super(Permission.WRITE, actionResult -> {
+                RowStream stream = new RowStream(actionResult);
+                Value idsParam = actionResult.getParameter("ids");
+                Value timeRange = actionResult.getParameter("timeRange");
+                String title = actionResult.getParameter("title", new Value("")).getString();
+                Objects.getDaemonThreadPool().execute(() -> {
+                    EventSnapshot snapshot = calendar.getSnapshot();
+                    List<DSAEvent> targets = new ArrayList<>();
+                    try {
+                        if (idsParam != null && idsParam.getArray() != null && idsParam.getArray().size() > 0) {
+                            for (Object id : idsParam.getArray()) {
+                                targets.add(snapshot.get(String.valueOf(id)));
+                            }
+                        } else if (timeRange != null && timeRange.getString() != null) {
+                            String[] dates = timeRange.getString().split("/", 2);
+                            if (dates.length != 2) {
+                                throw new IllegalArgumentException("Unexpected dates length");
+                            }
+                            Pattern titlePattern = title == null || title.isEmpty() ? null : Pattern.compile(title);
+                            for (DSAEvent event : snapshot.getEventsInRange(EventUtils.timeStringToInstant(dates[0]),
+                                    EventUtils.timeStringToInstant(dates[1]))) {
+                                // Occurrences of recurring events are not stored events, so whole series are never deleted by range.
+                                DSAEvent stored = snapshot.get(event.getUniqueId());
+                                if (stored != null && !stored.getUniqueId().startsWith(WriteBehindQueue.PROVISIONAL_PREFIX)
+                                        && (titlePattern == null || (event.getTitle() != null
+                                        && titlePattern.matcher(event.getTitle()).find()))) {
+                                    targets.add(stored);
+                                }
+                            }
+                        } else {
+                            throw new IllegalArgumentException("Pass ids or a timeRange");
+                        }
+                    } catch (Exception e) {
+                        LOGGER.debug(e.toString());
+                        sendBulkResults(stream, Collections.singletonList(null),
+                                new BulkResult[]{BulkResult.failure(null, e.getMessage())});
+                        return;
+                    }
+                    BulkResult[] outcomes = new BulkResult[targets.size()];
+                    List<DSAEvent> toDelete = new ArrayList<>();
+                    List<Integer> indexes = new ArrayList<>();
+                    for (int i = 0; i < targets.size(); i++) {
+                        DSAEvent target = targets.get(i);
+                        if (target == null) {
+                            Object id = idsParam.getArray().get(i);
+                            outcomes[i] = BulkResult.failure(String.valueOf(id), "No such event");
+                        } else {
+                            toDelete.add(target);
+                            indexes.add(i);
+                        }
+                    }
+                    calendar.deleteEvents(toDelete).whenComplete((results, e) -> {
+                        for (int i = 0; i < indexes.size(); i++) {
+                            outcomes[indexes.get(i)] = e == null ? results.get(i)
+                                    : BulkResult.failure(toDelete.get(i).getUniqueId(), e.getMessage());
+                        }
+                        sendBulkResults(stream, targets, outcomes);
+                    });
+                });
+            });
+            addParameter(new Parameter("ids", ValueType.ARRAY).setDescription("Unique IDs of the events to delete"));
+            Parameter parameter = new Parameter("timeRange", ValueType.TIME);
+            parameter.setEditorType(EditorType.DATE_RANGE);
+            parameter.setDescription("Deletes the events in the range when no ids are given");
+            addParameter(parameter);
+            addParameter(new Parameter("title", ValueType.STRING).setDescription("Pattern the titles must contain, with a range"));
+            addBulkColumns(this);
+        }
+    }
+
+    private static class GetEventDetails extends Action {
+        GetEventDetails(final BaseCalendar calendar, final String uid) {
+            super(Permission.READ, actionResult -> {
+                try {
+                    EventDetails details = calendar.getEventDetails(uid);
+                    if (details == null) {
+                        throw new Exception("Event no longer exists");
+                    }
+                    actionResult.getTable().addRow(Row.make(
+                            new Value(details.getDescription()),
+                            new Value(details.serializeGuests())));
+                } catch (Exception e) {
+                    LOGGER.debug(e.toString());
+                    actionResult.getTable().addRow(Row.make(new Value("Error occurred: " + e.getMessage())));
+                }
+            });
+            addResult(new Parameter("Description", ValueType.STRING));
+            addResult(new Parameter("Guests", ValueType.ARRAY));
+            setResultType(ResultType.TABLE);
         }
     }
 
     private static class GetEvents extends Action {
+        static final String SORT_ASCENDING = "Start Ascending";
+        static final String SORT_DESCENDING = "Start Descending";
+
         GetEvents(final BaseCalendar calendar) {
             super(Permission.READ, actionResult -> {
+                RowStream stream = new RowStream(actionResult);
+                Objects.getDaemonThreadPool().execute(() -> {
+                    try {
+                        String timeRange = actionResult.getParameter("timeRange").getString();
+                        String[] dates = timeRange.split("/", 2);
+                        if (dates.length != 2) {
+                            throw new Exception("Unexpected dates length");
+                        }
+                        int limit = actionResult.getParameter("limit", new Value(0)).getNumber().intValue();
+                        int offset = actionResult.getParameter("offset", new Value(0)).getNumber().intValue();
+                        String cursorParam = actionResult.getParameter("cursor", new Value("")).getString();
+                        EventCursor cursor = cursorParam.isEmpty() ? null : EventCursor.parse(cursorParam);
+                        boolean descending = SORT_DESCENDING.equals(
+                                actionResult.getParameter("sort", new Value(SORT_ASCENDING)).getString());
+
+                        // TODO: We needn't to assume the timezone from DGLux https://github.com/IOT-DSA/dslink-java-calendar/issues/15
+                        Iterator<DSAEvent> events = calendar.getSnapshot()
+                                .iterateRange(timeStringToInstant(dates[0]), timeStringToInstant(dates[1]), descending, cursor);
+                        int skipped = 0;
+                        int sent = 0;
+                        while (events.hasNext() && !stream.isClosed() && (limit <= 0 || sent < limit)) {
+                            DSAEvent event = events.next();
+                            if (skipped < offset) {
+                                skipped++;
+                                continue;
+                            }
+                            Row row = eventRow(calendar.getName(), event);
+                            row.addValue(new Value(EventCursor.of(event)));
+                            stream.add(row);
+                            sent++;
+                        }
+                    } catch (Exception e) {
+                        LOGGER.debug(e.toString());
+                        stream.add(Row.make(new Value("Error occurred: " + e.getMessage())));
+                    }
+                    stream.close();
+                });
+            });
+            Parameter parameter = new Parameter("timeRange", ValueType.TIME);
+            parameter.setEditorType(EditorType.DATE_RANGE);
+            addParameter(parameter);
+            addParameter(new Parameter("limit", ValueType.NUMBER, new Value(0))
+                    .setDescription("Maximum number of events, 0 for all"));
+            addParameter(new Parameter("offset", ValueType.NUMBER, new Value(0))
+                    .setDescription("Number of events to skip"));
+            addParameter(new Parameter("cursor", ValueType.STRING)
+                    .setDescription("Cursor of the last event of the previous page"));
+            addParameter(new Parameter("sort", ValueType.makeEnum(SORT_ASCENDING, SORT_DESCENDING), new Value(SORT_ASCENDING)));
+
+            addEventColumns(this);
+            addResult(new Parameter("Cursor", ValueType.STRING));
+            setResultType(ResultType.STREAM);
+        }
+    }
+
+    private static class QueryEvents extends Action {
+        QueryEvents() {
+            super(Permission.READ, actionResult -> {
+                RowStream stream = new RowStream(actionResult);
                 try {
                     String timeRange = actionResult.getParameter("timeRange").getString();
                     String[] dates = timeRange.split("/", 2);
+                    if (dates.length != 2) {
+                        throw new Exception("Unexpected dates length");
+                    }
+                    Instant start = timeStringToInstant(dates[0]);
+                    Instant end = timeStringToInstant(dates[1]);
+                    List<String> names = splitList(actionResult.getParameter("calendars", new Value("")).getString());
+                    if (names.isEmpty()) {
+                        names = new ArrayList<>(CalendarManager.getNames());
+                    }
+                    int limit = actionResult.getParameter("limit", new Value(0)).getNumber().intValue();
+                    boolean descending = GetEvents.SORT_DESCENDING.equals(
+                            actionResult.getParameter("sort", new Value(GetEvents.SORT_ASCENDING)).getString());
+
+                    List<Iterable<SourcedEvent>> sources = new ArrayList<>();
+                    for (String name : names) {
+                        BaseCalendar calendar = CalendarManager.get(name);
+                        if (calendar == null) {
+                            throw new Exception("Unknown calendar " + name);
+                        }
+                        Iterator<SourcedEvent> range = sourced(name, calendar.getSnapshot().iterateRange(start, end, descending));
+                        sources.add(() -> range);
+                    }
+                    // Snapshots never change, so their ranges are walked lazily while the merged rows are sent.
+                    Objects.getDaemonThreadPool().execute(() -> {
+                        try {
+                            send(SortedMerge.merge(sources, descending ? SourcedEvent.ORDER.reversed() : SourcedEvent.ORDER),
+                                    limit, stream);
+                        } catch (RuntimeException e) {
+                            LOGGER.debug(e.toString());
+                            stream.add(Row.make(new Value("Error occurred: " + e.getMessage())));
+                        } finally {
+                            stream.close();
+                        }
+                    });
+                } catch (Exception e) {
+                    LOGGER.debug(e.toString());
+                    stream.add(Row.make(new Value("Error occurred: " + e.getMessage())));
+                    stream.close();
+                }
+            });
+            addParameter(new Parameter("calendars", ValueType.STRING)
+                    .setDescription("Comma separated names of calendars, all when empty"));
+            Parameter parameter = new Parameter("timeRange", ValueType.TIME);
+            parameter.setEditorType(EditorType.DATE_RANGE);
+            addParameter(parameter);
+            addParameter(new Parameter("limit", ValueType.NUMBER, new Value(0))
+                    .setDescription("Maximum number of events, 0 for all"));
+            addParameter(new Parameter("sort", ValueType.makeEnum(GetEvents.SORT_ASCENDING, GetEvents.SORT_DESCENDING),
+                    new Value(GetEvents.SORT_ASCENDING)));
+
+            addEventColumns(this);
+            addResult(new Parameter("Source", ValueType.STRING));
+            setResultType(ResultType.STREAM);
+        }
 
-                    // TODO: We needn't to assume the timezone from DGLux https://github.com/IOT-DSA/dslink-java-calendar/issues/15
-                    List<DSAEvent> events = calendar.getEventsInRange(timeStringToInstant(dates[0]), timeStringToInstant(dates[1]));
+        /* Tags the events of one calendar with its name as they are read. */
+        private static Iterator<SourcedEvent> sourced(String name, Iterator<DSAEvent> events) {
+            return new Iterator<SourcedEvent>() {
+                @Override
+                public boolean hasNext() {
+                    return events.hasNext();
+                }
+
+                @Override
+                public SourcedEvent next() {
+                    return new SourcedEvent(name, events.next());
+                }
+            };
+        }
+
+        private static void send(Iterator<SourcedEvent> merged, int limit, RowStream stream) {
+            for (int sent = 0; merged.hasNext() && !stream.isClosed() && (limit <= 0 || sent < limit); sent++) {
+                SourcedEvent next = merged.next();
+                Row row = eventRow(next.calendar, next.event);
+                row.addValue(new Value(next.calendar));
+                stream.add(row);
+            }
+        }
+    }
+
+    /* Event tagged with the name of the calendar node it was read from. */
+    private static final class SourcedEvent {
+        static final Comparator<SourcedEvent> ORDER = Comparator
+                .comparing((SourcedEvent sourced) -> sourced.event, EventSnapshot.ORDER)
+                .thenComparing(sourced -> sourced.calendar);
+
+        final String calendar;
+        final DSAEvent event;
+
+        SourcedEvent(String calendar, DSAEvent event) {
+            this.calendar = calendar;
+            this.event = event;
+        }
+    }
+
+    private static class SearchEvents extends Action {
+        SearchEvents(final BaseCalendar calendar) {
+            super(Permission.READ, actionResult -> {
+                try {
+                    String timeRange = actionResult.getParameter("timeRange").getString();
+                    String[] dates = timeRange.split("/", 2);
+                    if (dates.length != 2) {
+                        throw new Exception("Unexpected dates length");
+                    }
+                    int limit = actionResult.getParameter("limit", new Value(0)).getNumber().intValue();
+                    List<DSAEvent> events = calendar.searchEvents(
+                            actionResult.getParameter("title", new Value("")).getString(),
+                            actionResult.getParameter("location", new Value("")).getString(),
+                            actionResult.getParameter("guest", new Value("")).getString(),
+                            timeStringToInstant(dates[0]), timeStringToInstant(dates[1]));
+                    if (limit > 0 && events.size() > limit) {
+                        events = events.subList(0, limit);
+                    }
                     actionResult.getTable().setMode(Table.Mode.APPEND);
                     for (DSAEvent event : events) {
-                        actionResult
-                                .getTable()
-                                .addRow(Row.make(
-                                        new Value(event.getUniqueId()),
-                                        new Value(event.getTitle()),
-                                        new Value(event.getDescription()),
-                                        new Value(EventUtils.instantToTimeString(event.getStart())),
-                                        new Value(EventUtils.instantToTimeString(event.getEnd())),
-                                        new Value(event.getTimeZone()),
-                                        new Value(event.getCalendar().getTitle()),
-                                        new Value(event.getCalendar().getUid()),
-                                        new Value(event.getLocation()),
-                                        new Value(event.serializeGuests())));
+                        actionResult.getTable().addRow(eventRow(calendar.getName(), event));
                     }
                 } catch (Exception e) {
-                    e.printStackTrace();
+                    LOGGER.debug(e.toString());
                     actionResult.getTable().addRow(Row.make(new Value("Error occurred: " + e.getMessage())));
                 }
             });
+            addParameter(new Parameter("title", ValueType.STRING)
+                    .setDescription("Words that must all appear in the title"));
+            addParameter(new Parameter("location", ValueType.STRING)
+                    .setDescription("Words that must all appear in the location"));
+            addParameter(new Parameter("guest", ValueType.STRING)
+                    .setDescription("Email of a guest, or the part before the @. Not supported by Exchange"));
             Parameter parameter = new Parameter("timeRange", ValueType.TIME);
             parameter.setEditorType(EditorType.DATE_RANGE);
             addParameter(parameter);
+            addParameter(new Parameter("limit", ValueType.NUMBER, new Value(0))
+                    .setDescription("Maximum number of events, 0 for all"));
+
+            addEventColumns(this);
+            setResultType(ResultType.TABLE);
+        }
+    }
+
+    private static class WatchChanges extends Action {
+        static final String CHANGE_RESET = "reset";
 
+        WatchChanges(final BaseCalendar calendar) {
+            super(Permission.READ, actionResult -> {
+                RowStream stream = new RowStream(actionResult);
+                long since = actionResult.getParameter("since", new Value(-1)).getNumber().longValue();
+                ChangeLog.Listener listener = new ChangeLog.Listener() {
+                    @Override
+                    public void onChanges(List<ChangeLog.Change> changes) {
+                        for (ChangeLog.Change change : changes) {
+                            DSAEvent event = change.getEvent();
+                            stream.add(Row.make(
+                                    new Value(change.getSequence()),
+                                    new Value(change.getType().name().toLowerCase(Locale.ROOT)),
+                                    new Value(event.getUniqueId()),
+                                    new Value(event.getTitle()),
+                                    new Value(EventUtils.instantToTimeString(event.getStart())),
+                                    new Value(EventUtils.instantToTimeString(event.getEnd())),
+                                    new Value(event.getLocation())));
+                        }
+                        stream.flush();
+                    }
+
+                    @Override
+                    public void onGap(long lastSequence) {
+                        stream.add(Row.make(new Value(lastSequence), new Value(CHANGE_RESET)));
+                        stream.flush();
+                    }
+                };
+                stream.onClose(() -> calendar.getChangeLog().unsubscribe(listener));
+                calendar.getChangeLog().subscribe(since, listener);
+            });
+            addParameter(new Parameter("since", ValueType.NUMBER, new Value(-1))
+                    .setDescription("Last sequence number seen, -1 for new changes only"));
+
+            addResult(new Parameter("Sequence", ValueType.NUMBER));
+            addResult(new Parameter("Change", ValueType.STRING));
             addResult(new Parameter("ID", ValueType.STRING));
             addResult(new Parameter("Title", ValueType.STRING));
-            addResult(new Parameter("Description", ValueType.STRING));
             addResult(new Parameter("Start", ValueType.STRING));
             addResult(new Parameter("End", ValueType.STRING));
-            addResult(new Parameter("TimeZone", ValueType.STRING));
-            addResult(new Parameter("CalendarID", ValueType.STRING));
-            addResult(new Parameter("CalendarTitle", ValueType.STRING));
             addResult(new Parameter("Location", ValueType.STRING));
-            addResult(new Parameter("Guests", ValueType.ARRAY));
+            setResultType(ResultType.STREAM);
+        }
+    }
+
+    private static class AddTrigger extends Action {
+        AddTrigger(final BaseCalendar calendar) {
+            super(Permission.CONFIG, actionResult -> {
+                try {
+                    String name = actionResult.getParameter("name").getString();
+                    calendar.getTriggers().add(name,
+                            actionResult.getParameter("when").getString(),
+                            actionResult.getParameter("minutes", new Value(0)).getNumber().longValue(),
+                            actionResult.getParameter("title", new Value("")).getString(),
+                            actionResult.getParameter("location", new Value("")).getString(),
+                            calendar);
+                    actionResult.getTable().addRow(Row.make(new Value("Trigger added.")));
+                } catch (Exception e) {
+                    LOGGER.debug(e.toString());
+                    actionResult.getTable().addRow(Row.make(new Value("Error occurred: " + e.getMessage())));
+                }
+            });
+            addParameter(new Parameter("name", ValueType.STRING));
+            addParameter(new Parameter("when", ValueType.makeEnum("Before Start", "At Start", "At End"), new Value("At Start")));
+            addParameter(new Parameter("minutes", ValueType.NUMBER, new Value(0))
+                    .setDescription("Minutes before the start, for Before Start"));
+            addParameter(new Parameter("title", ValueType.STRING)
+                    .setDescription("Regular expression found in the titles of matching events"));
+            addParameter(new Parameter("location", ValueType.STRING)
+                    .setDescription("Regular expression found in the locations of matching events"));
+
+            addResult(new Parameter("success", ValueType.STRING));
+        }
+    }
+
+    private static class RemoveTrigger extends Action {
+        RemoveTrigger(final BaseCalendar calendar, final String name) {
+            super(Permission.CONFIG, actionResult -> calendar.getTriggers().remove(name));
+        }
+    }
+
+    private static class GetAvailability extends Action {
+        GetAvailability(final BaseCalendar calendar) {
+            super(Permission.READ, actionResult -> {
+                try {
+                    String timeRange = actionResult.getParameter("timeRange").getString();
+                    String[] dates = timeRange.split("/", 2);
+                    if (dates.length != 2) {
+                        throw new Exception("Unexpected dates length");
+                    }
+                    List<String> emails = splitList(actionResult.getParameter("emails", new Value("")).getString());
+                    Map<String, List<TimeRange>> busy = calendar.getAvailability(emails,
+                            timeStringToInstant(dates[0]), timeStringToInstant(dates[1]));
+                    actionResult.getTable().setMode(Table.Mode.APPEND);
+                    for (Map.Entry<String, List<TimeRange>> entry : busy.entrySet()) {
+                        for (TimeRange range : entry.getValue()) {
+                            actionResult.getTable().addRow(Row.make(
+                                    new Value(entry.getKey()),
+                                    new Value(EventUtils.instantToTimeString(range.start)),
+                                    new Value(EventUtils.instantToTimeString(range.end))));
+                        }
+                    }
+                } catch (Exception e) {
+                    LOGGER.debug(e.toString());
+                    actionResult.getTable().addRow(Row.make(new Value("Error occurred: " + e.getMessage())));
+                }
+            });
+            addParameter(new Parameter("emails", ValueType.STRING)
+                    .setDescription("Comma separated emails"));
+            Parameter parameter = new Parameter("timeRange", ValueType.TIME);
+            parameter.setEditorType(EditorType.DATE_RANGE);
+            addParameter(parameter);
+
+            addResult(new Parameter("Email", ValueType.STRING));
+            addResult(new Parameter("Start", ValueType.STRING));
+            addResult(new Parameter("End", ValueType.STRING));
             setResultType(ResultType.TABLE);
         }
     }
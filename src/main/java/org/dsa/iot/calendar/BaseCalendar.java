@@ -1,58 +1,636 @@
 package org.dsa.iot.calendar;
 
+import org.dsa.iot.calendar.event.BusyTimeline;
+import org.dsa.iot.calendar.event.ChangeLog;
 import org.dsa.iot.calendar.event.DSAEvent;
+import org.dsa.iot.calendar.event.EventDelta;
+import org.dsa.iot.calendar.event.EventDetails;
+import org.dsa.iot.calendar.event.EventIndex;
+import org.dsa.iot.calendar.event.EventPatch;
+import org.dsa.iot.calendar.event.EventSnapshot;
 import org.dsa.iot.calendar.event.EventUtils;
+import org.dsa.iot.calendar.event.TimeRange;
 import org.dsa.iot.calendar.guest.DSAGuest;
 import org.dsa.iot.dslink.node.Node;
 import org.dsa.iot.dslink.node.NodeBuilder;
 import org.dsa.iot.dslink.node.value.Value;
 import org.dsa.iot.dslink.node.value.ValueType;
 import org.dsa.iot.dslink.provider.LoopProvider;
+import org.dsa.iot.dslink.util.Objects;
+import org.dsa.iot.dslink.util.handler.Handler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 public abstract class BaseCalendar {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BaseCalendar.class);
 
     private static final int UPDATE_LOOP_DELAY = 30;
+    private static final int BUSY_HORIZON_DAYS = 35;
+    private static final int DEFAULT_BUSY_RESOLUTION = 15;
+    private static final int MAX_CACHED_DETAILS = 256;
+    private static final int MAX_LOGGED_CHANGES = 1024;
 
     protected final Node eventsNode;
 
+    private final Object refreshLock = new Object();
+    /* Guards publishing snapshots, by syncs and by queued mutations. */
+    private final Object publishLock = new Object();
+    private CompletableFuture<Void> runningRefresh;
+    private CompletableFuture<Void> queuedRefresh;
+
+    private ScheduledFuture<?> updateLoop;
+    private volatile boolean closed;
+
+    private volatile EventSnapshot snapshot = EventSnapshot.EMPTY;
+    /* Events as last synced from the provider, without the queued mutations. Guarded by publishLock. */
+    private EventSnapshot confirmed = EventSnapshot.EMPTY;
+    private final Map<String, String> syncState = new ConcurrentHashMap<>();
+    private final SnapshotFile snapshotFile;
+
+    private final Duration busyResolution;
+    private volatile BusyTimeline busyTimeline;
+
+    private final EventIndex index = new EventIndex();
+    private final LiveStatus liveStatus;
+    private final Triggers triggers;
+    private final ChangeLog changeLog = new ChangeLog(MAX_LOGGED_CHANGES);
+    private final Map<String, EventDetails> detailsCache = Collections.synchronizedMap(new DetailsCache());
+    private final WriteBehindQueue mutations = new WriteBehindQueue(new MutationSender(),
+            Objects.getDaemonThreadPool(), TimingWheel.get());
+
     public BaseCalendar(Node eventsNode) {
         this.eventsNode = eventsNode;
+        snapshotFile = new SnapshotFile(eventsNode.getParent().getName());
+        Value resolution = eventsNode.getParent().getRoConfig("busyResolution");
+        busyResolution = Duration.ofMinutes(resolution != null ? resolution.getNumber().longValue() : DEFAULT_BUSY_RESOLUTION);
+        restoreSnapshot();
+        busyTimeline = buildBusyTimeline(snapshot);
+        liveStatus = new LiveStatus(eventsNode.getParent(), this::getSnapshot, TimingWheel.get());
+        liveStatus.update();
+        triggers = new Triggers(eventsNode.getParent(), this::getSnapshot, TimingWheel.get(), this);
+    }
+
+    /**
+     * Creates an event at the provider.
+     *
+     * @param event Event to create, without a unique ID.
+     * @return Unique ID the provider assigned to the event.
+     * @throws Exception If the provider could not create the event.
+     */
+    protected abstract String insertEvent(DSAEvent event) throws Exception;
+
+    /**
+     * Deletes an event at the provider.
+     *
+     * @param event Last synced version of the event.
+     * @throws Exception If the provider could not delete the event.
+     */
+    protected abstract void removeEvent(DSAEvent event) throws Exception;
+
+    /**
+     * Sends the changed fields of an event to the provider, which keeps its
+     * unique ID and the responses of its guests.
+     *
+     * @param patch Changes to the event.
+     * @throws Exception If the provider rejected the update.
+     */
+    protected abstract void patchEvent(EventPatch patch) throws Exception;
+
+    /**
+     * Decides whether a failed mutation is retried. Providers override this
+     * to tell their network and throttling errors apart from rejections.
+     *
+     * @param e Failure of an insert, patch or remove.
+     * @return True if sending the mutation again may succeed.
+     */
+    protected boolean isTransient(Exception e) {
+        return e instanceof IOException;
+    }
+
+    /**
+     * Queues the creation of an event. It is shown right away under a
+     * provisional unique ID, until a sync brings in the one assigned by the
+     * provider.
+     *
+     * @param event Event to create.
+     * @return Future completed once the provider created the event.
+     */
+    public CompletableFuture<Void> createEvent(DSAEvent event) {
+        CompletableFuture<Void> created = mutations.create(event);
+        applyPendingMutations(event.getUniqueId());
+        return created;
+    }
+
+    /**
+     * Queues an in-place update of an event, shown right away. Only the
+     * fields that differ from the event in the current snapshot are sent.
+     *
+     * @param edited Edited copy of an event of the current snapshot.
+     * @return Future completed once the provider updated the event, or failed
+     * with an {@link IllegalArgumentException} if the event no longer exists.
+     */
+    public CompletableFuture<Void> updateEvent(DSAEvent edited) {
+        DSAEvent current = snapshot.get(edited.getUniqueId());
+        if (current == null) {
+            return failed(new IllegalArgumentException("Event " + edited.getUniqueId() + " no longer exists"));
+        }
+        if (EventPatch.between(current, edited).isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> updated = mutations.update(current, edited);
+        applyPendingMutations(edited.getUniqueId());
+        return updated;
     }
 
-    public abstract void createEvent(DSAEvent event);
+    /**
+     * Queues the deletion of an event, whose node is removed right away.
+     *
+     * @param uid Unique ID of an event of the current snapshot.
+     * @return Future completed once the provider deleted the event, or failed
+     * with an {@link IllegalArgumentException} if the event no longer exists.
+     */
+    public CompletableFuture<Void> deleteEvent(String uid) {
+        DSAEvent current = snapshot.get(uid);
+        if (current == null) {
+            return failed(new IllegalArgumentException("Event " + uid + " no longer exists"));
+        }
+        CompletableFuture<Void> deleted = mutations.delete(current);
+        applyPendingMutations(uid);
+        return deleted;
+    }
 
-    public abstract void deleteEvent(String uid, boolean destroyNode);
+    /**
+     * Creates events at the provider in as few requests as it allows. The
+     * default sends them one at a time.
+     *
+     * @param events Events to create, without unique IDs.
+     * @return Outcome of every event, in order.
+     */
+    protected List<BulkResult> insertEvents(List<DSAEvent> events) {
+        List<BulkResult> results = new ArrayList<>();
+        for (DSAEvent event : events) {
+            try {
+                results.add(BulkResult.success(insertEvent(event)));
+            } catch (Exception e) {
+                LOGGER.debug("Could not create " + event.getTitle(), e);
+                results.add(BulkResult.failure(null, e.getMessage()));
+            }
+        }
+        return results;
+    }
 
-    public abstract List<DSAEvent> getEvents();
+    /**
+     * Deletes events at the provider in as few requests as it allows. The
+     * default sends them one at a time.
+     *
+     * @param events Last synced versions of the events.
+     * @return Outcome of every event, in order.
+     */
+    protected List<BulkResult> removeEvents(List<DSAEvent> events) {
+        List<BulkResult> results = new ArrayList<>();
+        for (DSAEvent event : events) {
+            try {
+                removeEvent(event);
+                results.add(BulkResult.success(event.getUniqueId()));
+            } catch (Exception e) {
+                LOGGER.debug("Could not delete " + event.getUniqueId(), e);
+                results.add(BulkResult.failure(event.getUniqueId(), e.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Creates many events at once, bypassing the write-behind queue. The
+     * calendar syncs once all of them were sent.
+     *
+     * @param events Events to create.
+     * @return Future of the outcome of every event, in order.
+     */
+    public CompletableFuture<List<BulkResult>> createEvents(List<DSAEvent> events) {
+        return CompletableFuture.supplyAsync(() -> insertEvents(events), Objects.getDaemonThreadPool())
+                .thenApply(this::refreshAfter);
+    }
+
+    /**
+     * Deletes many events at once, bypassing the write-behind queue. The
+     * calendar syncs once all of them were sent.
+     *
+     * @param events Events of the current snapshot.
+     * @return Future of the outcome of every event, in order.
+     */
+    public CompletableFuture<List<BulkResult>> deleteEvents(List<DSAEvent> events) {
+        return CompletableFuture.supplyAsync(() -> removeEvents(events), Objects.getDaemonThreadPool())
+                .thenApply(this::refreshAfter);
+    }
+
+    private List<BulkResult> refreshAfter(List<BulkResult> results) {
+        Objects.getDaemonThreadPool().execute(this::refresh);
+        return results;
+    }
+
+    private static CompletableFuture<Void> failed(Exception e) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * Fetches every event from the provider.
+     *
+     * @return All events of the calendar.
+     * @throws Exception If the events could not all be fetched. A partial
+     *                   list would be synced as the whole calendar.
+     */
+    public abstract List<DSAEvent> getEvents() throws Exception;
+
+    /**
+     * Fetches the changes since the last sync. Providers that support sync
+     * tokens or ETags override this to return a delta; the default performs a
+     * full fetch.
+     *
+     * @param previousState Sync state returned by the previous sync, empty when
+     *                      a full sync is required.
+     * @return Result of the sync, or null if the provider could not be reached.
+     */
+    protected SyncResult fetchChanges(Map<String, String> previousState) {
+        try {
+            return SyncResult.full(getEvents(), new HashMap<>());
+        } catch (Exception e) {
+            LOGGER.debug("Could not sync " + getName(), e);
+            return null;
+        }
+    }
 
     /**
      * This filters for events by start and end time.
      *
      * @param start Start time
      * @param end   End time
-     * @return List of strings to unique ids.
+     * @return Events of the current snapshot in the range, sorted by start time.
      */
     public List<DSAEvent> getEventsInRange(Instant start, Instant end) {
-        List<DSAEvent> events = getEvents();
-        List<DSAEvent> newEvents = new ArrayList<>();
+        return snapshot.getEventsInRange(start, end);
+    }
 
-        for (DSAEvent event : events) {
-            if (event.isInRange(start, end)) {
-                newEvents.add(event);
+    /**
+     * Loads the description and guests of an event synced as a header only.
+     * Providers that sync headers override this; the default returns what
+     * the header holds.
+     *
+     * @param header Event header from the current snapshot.
+     * @return Details of the event, or null if it no longer exists.
+     * @throws Exception If the provider could not be queried.
+     */
+    protected EventDetails fetchDetails(DSAEvent header) throws Exception {
+        return new EventDetails(header.getDescription(), header.getGuests());
+    }
+
+    /**
+     * Gets the description and guests of an event. Details of header-only
+     * events are fetched from the provider and kept in a bounded LRU cache
+     * until the event changes.
+     *
+     * @param uid Unique ID of the event.
+     * @return Details of the event, or null if there is no such event.
+     * @throws Exception If the provider could not be queried.
+     */
+    public EventDetails getEventDetails(String uid) throws Exception {
+        DSAEvent event = snapshot.get(uid);
+        if (event == null) {
+            return null;
+        }
+        if (event.isDetailed()) {
+            return new EventDetails(event.getDescription(), event.getGuests());
+        }
+        EventDetails details = detailsCache.get(uid);
+        if (details == null) {
+            details = fetchDetails(event);
+            if (details != null) {
+                detailsCache.put(uid, details);
+                index.addGuests(uid, details.getGuests());
+            }
+        }
+        return details;
+    }
+
+    /**
+     * Finds when people are busy without downloading their events. Providers
+     * with a free/busy endpoint override this to ask for every address in one
+     * call. The default answers from the local store, so it only knows about
+     * the events of this calendar the people attend.
+     *
+     * @param emails Email addresses of the people.
+     * @param start  Start of the range.
+     * @param end    End of the range.
+     * @return Busy ranges of every address, in the order of the addresses.
+     * @throws Exception If the provider could not be queried.
+     */
+    public Map<String, List<TimeRange>> getAvailability(List<String> emails, Instant start, Instant end) throws Exception {
+        List<DSAEvent> events = getEventsInRange(start, end);
+        Map<String, List<TimeRange>> busy = new LinkedHashMap<>();
+        for (String email : emails) {
+            List<TimeRange> ranges = new ArrayList<>();
+            for (DSAEvent event : events) {
+                if (event.hasGuest(email)) {
+                    ranges.add(new TimeRange(event.getStart(), event.getEnd()));
+                }
+            }
+            busy.put(email, ranges);
+        }
+        return busy;
+    }
+
+    /**
+     * Finds events through the inverted index. Every given filter must match;
+     * with no filter, all events in the range match.
+     *
+     * @param title    Words of the title, or null.
+     * @param location Words of the location, or null.
+     * @param guest    Email of a guest or the part before its {@code @}, or
+     *                 null.
+     * @param start    Start of the range.
+     * @param end      End of the range.
+     * @return Matching events of the current snapshot, sorted by start time.
+     * @throws IllegalArgumentException If filtering by guest is not
+     *                                  supported by the provider.
+     */
+    public List<DSAEvent> searchEvents(String title, String location, String guest, Instant start, Instant end) {
+        if (guest != null && !guest.trim().isEmpty() && !supportsGuestSearch()) {
+            throw new IllegalArgumentException("Searching by guest is not supported by this calendar");
+        }
+        EventSnapshot current = snapshot;
+        Set<String> uids = narrow(null, EventIndex.Field.TITLE, title);
+        uids = narrow(uids, EventIndex.Field.LOCATION, location);
+        uids = narrow(uids, EventIndex.Field.GUEST, guest);
+        if (uids == null) {
+            return current.getEventsInRange(start, end);
+        }
+
+        long startMillis = start.toEpochMilli();
+        long endMillis = end.toEpochMilli();
+        List<DSAEvent> events = new ArrayList<>();
+        for (String uid : uids) {
+            DSAEvent event = current.get(uid);
+            if (event == null) {
+                continue;
+            }
+            if (event.getRecurrence() != null) {
+                event.getRecurrence().occurrences(event, startMillis, endMillis).forEachRemaining(events::add);
+            } else if (event.isInRange(startMillis, endMillis)) {
+                events.add(event);
+            }
+        }
+        events.sort(EventSnapshot.ORDER);
+        return events;
+    }
+
+    private Set<String> narrow(Set<String> uids, EventIndex.Field field, String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return uids;
+        }
+        Set<String> found = index.find(field, query);
+        if (uids == null) {
+            return found;
+        }
+        uids.retainAll(found);
+        return uids;
+    }
+
+    /**
+     * @return Name of the calendar node.
+     */
+    public String getName() {
+        return eventsNode.getParent().getName();
+    }
+
+    /**
+     * @return The events published by the last sync. Never blocks, and the
+     * returned snapshot never changes.
+     */
+    public EventSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    Triggers getTriggers() {
+        return triggers;
+    }
+
+    /**
+     * @return Changes applied by the syncs of this run, with sequence numbers.
+     */
+    public ChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    /**
+     * @return Busy slots from the start of today over the sync horizon, at the
+     * resolution set by the calendar's {@code busyResolution} config in
+     * minutes. The returned timeline never changes. Its slots outside the
+     * horizon read as free, {@link #getBusy(Instant, int)} covers any window.
+     */
+    public BusyTimeline getBusyTimeline() {
+        return busyTimeline;
+    }
+
+    /**
+     * Busy slots of a window at the busy resolution, aligned to the slots of
+     * {@link #getBusyTimeline()}. Windows reaching outside its horizon are
+     * computed from the events of the current snapshot instead.
+     *
+     * @param from  Time inside the first slot of the result.
+     * @param count Number of slots.
+     * @return Bitset as returned by {@link BusyTimeline#getBusy(Instant, int)}.
+     */
+    public long[] getBusy(Instant from, int count) {
+        BusyTimeline timeline = busyTimeline;
+        Instant start = timeline.slotStart(from);
+        Instant end = start.plus(timeline.getResolution().multipliedBy(count));
+        Instant horizonEnd = timeline.getOrigin().plus(timeline.getResolution().multipliedBy(timeline.getSlotCount()));
+        if (!start.isBefore(timeline.getOrigin()) && !end.isAfter(horizonEnd)) {
+            return timeline.getBusy(start, count);
+        }
+        BusyTimeline window = new BusyTimeline(start, timeline.getResolution(), count);
+        Iterator<DSAEvent> inWindow = snapshot.iterateRange(start, end, false);
+        while (inWindow.hasNext()) {
+            window.add(inWindow.next());
+        }
+        return window.getBusy(start, count);
+    }
+
+    public synchronized void startUpdateLoop() {
+        if (closed) {
+            return;
+        }
+        if (updateLoop != null) {
+            updateLoop.cancel(false);
+        }
+        updateLoop = LoopProvider.getProvider().schedulePeriodic(this::refresh, 0, UPDATE_LOOP_DELAY, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the update loop and releases the provider's connections. A closed
+     * calendar never syncs again; use {@link CalendarManager#remove(String)}
+     * rather than calling this directly.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (updateLoop != null) {
+                updateLoop.cancel(false);
+                updateLoop = null;
+            }
+        }
+        liveStatus.close();
+        triggers.close();
+        releaseResources();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Deletes the locally persisted events of a calendar that is being removed.
+     */
+    public void discardSnapshot() {
+        snapshotFile.delete();
+    }
+
+    private void restoreSnapshot() {
+        List<DSAEvent> stored = new ArrayList<>();
+        if (!snapshotFile.load(stored, syncState)) {
+            return;
+        }
+        stored.removeIf(event -> event.getUniqueId() == null);
+        snapshot = snapshot.next(stored);
+        synchronized (publishLock) {
+            confirmed = snapshot;
+        }
+        for (DSAEvent event : snapshot.getEvents()) {
+            index.add(event);
+            createEventNode(event);
+        }
+        reportMemory(snapshot);
+    }
+
+    /* Shows how much heap the event store of this calendar takes. */
+    private void reportMemory(EventSnapshot current) {
+        Node calendarNode = eventsNode.getParent();
+        Node storeBytes = calendarNode.getChild("storeBytes", false);
+        if (storeBytes == null) {
+            storeBytes = calendarNode.createChild("storeBytes", false)
+                    .setDisplayName("Event Store Bytes")
+                    .setSerializable(false)
+                    .setValueType(ValueType.NUMBER)
+                    .build();
+        }
+        Node bytesPerEvent = calendarNode.getChild("bytesPerEvent", false);
+        if (bytesPerEvent == null) {
+            bytesPerEvent = calendarNode.createChild("bytesPerEvent", false)
+                    .setDisplayName("Bytes Per Event")
+                    .setSerializable(false)
+                    .setValueType(ValueType.NUMBER)
+                    .build();
+        }
+        long bytes = current.getMemoryBytes();
+        storeBytes.setValue(new Value(bytes));
+        bytesPerEvent.setValue(new Value(current.size() == 0 ? 0 : bytes / current.size()));
+    }
+
+    /**
+     * Called once when the calendar is closed. Providers override this to shut
+     * down their HTTP clients and services.
+     */
+    protected void releaseResources() {
+    }
+
+    /**
+     * Requests a sync of this calendar. Only one sync runs at a time. A request
+     * made while a sync is in flight queues a single follow-up sync, which every
+     * further request joins until it starts.
+     *
+     * @return Future completed when a sync started after this request finishes.
+     */
+    public CompletableFuture<Void> refresh() {
+        CompletableFuture<Void> refresh;
+        synchronized (refreshLock) {
+            if (closed) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (runningRefresh != null) {
+                if (queuedRefresh == null) {
+                    queuedRefresh = new CompletableFuture<>();
+                }
+                return queuedRefresh;
             }
+            refresh = new CompletableFuture<>();
+            runningRefresh = refresh;
         }
 
-        return newEvents;
+        CompletableFuture<Void> result = refresh;
+        try {
+            while (refresh != null) {
+                try {
+                    if (!closed) {
+                        updateCalendar();
+                    }
+                    refresh.complete(null);
+                } catch (RuntimeException e) {
+                    refresh.completeExceptionally(e);
+                }
+                synchronized (refreshLock) {
+                    refresh = queuedRefresh;
+                    queuedRefresh = null;
+                    runningRefresh = refresh;
+                }
+            }
+        } finally {
+            if (refresh != null) {
+                // An Error escaped the sync; later refreshes must not merge into one that never finishes.
+                CompletableFuture<Void> queued;
+                synchronized (refreshLock) {
+                    runningRefresh = null;
+                    queued = queuedRefresh;
+                    queuedRefresh = null;
+                }
+                IllegalStateException aborted = new IllegalStateException("Refresh aborted");
+                refresh.completeExceptionally(aborted);
+                if (queued != null) {
+                    queued.completeExceptionally(aborted);
+                }
+            }
+        }
+        return result;
     }
 
-    public void startUpdateLoop() {
-        LoopProvider.getProvider().schedulePeriodic(this::updateCalendar, 0, UPDATE_LOOP_DELAY, TimeUnit.SECONDS);
+    /**
+     * @return Whether synced events carry their guests, which searching by
+     * guest needs.
+     */
+    protected boolean supportsGuestSearch() {
+        return true;
     }
 
     public boolean supportsMultipleCalendars() {
@@ -101,6 +679,15 @@ public abstract class BaseCalendar {
                 .setDisplayName("Guests")
                 .setValueType(ValueType.ARRAY)
                 .build();
+        if (event.getRecurrence() != null) {
+            eventNode.createChild("recurrence", false)
+                    .setDisplayName("Recurrence")
+                    .setValueType(ValueType.STRING)
+                    .build()
+                    .setValue(new Value(event.getRecurrence().toString()));
+        } else if (eventNode.hasChild("recurrence", false)) {
+            eventNode.removeChild("recurrence", false);
+        }
         String title = event.getTitle();
         String description = event.getDescription();
         Instant start = event.getStart();
@@ -136,27 +723,256 @@ public abstract class BaseCalendar {
             eventNode.getChild("calendar", false).setValue(new Value(calendarIdentifier.getTitle()));
             eventNode.getChild("calendarId", false).setValue(new Value(calendarIdentifier.getUid()));
         }
-        Actions.addEditEventNode(eventNode);
-        Actions.addDeleteEventNode(eventNode);
+        if (!event.isDetailed()) {
+            Handler<Node> loadDetails = node -> loadDetails(eventNode);
+            eventNode.getChild("description", false).getListener().setOnSubscribeHandler(loadDetails);
+            eventNode.getChild("guests", false).getListener().setOnSubscribeHandler(loadDetails);
+        }
+        Actions.addEditEventNode(eventNode, this);
+        Actions.addDeleteEventNode(eventNode, this);
+        Actions.addGetEventDetailsNode(eventNode, this);
     }
 
-    public void updateCalendar() {
-        List<DSAEvent> events = getEvents();
-        List<String> touchedEvents = new ArrayList<>();
+    /* Fills the description and guests of a header-only event once someone subscribes to them. */
+    private void loadDetails(Node eventNode) {
+        Objects.getDaemonThreadPool().execute(() -> {
+            try {
+                EventDetails details = getEventDetails(eventNode.getName());
+                if (details == null) {
+                    return;
+                }
+                if (details.getDescription() != null) {
+                    eventNode.getChild("description", false).setValue(new Value(details.getDescription()));
+                }
+                eventNode.getChild("guests", false).setValue(new Value(details.serializeGuests()));
+            } catch (Exception e) {
+                LOGGER.debug("Could not load details of " + eventNode.getName(), e);
+            }
+        });
+    }
 
-        for (DSAEvent event : events) {
-            if (event.getUniqueId() == null) {
-                continue;
+    /**
+     * Syncs with the provider, publishes the next snapshot and reconciles the
+     * event nodes that changed. Mutations still queued are applied on top of
+     * what the provider returned. Use {@link #refresh()} so that syncs never
+     * overlap.
+     */
+    protected void updateCalendar() {
+        SyncResult result = fetchChanges(new HashMap<>(syncState));
+        if (result == null) {
+            return;
+        }
+
+        synchronized (publishLock) {
+            Map<String, DSAEvent> events = new HashMap<>();
+            if (!result.isFull()) {
+                for (DSAEvent event : confirmed.getEvents()) {
+                    events.put(event.getUniqueId(), event);
+                }
             }
-            touchedEvents.add(event.getUniqueId());
+            for (String uid : result.getRemovedIds()) {
+                events.remove(uid);
+            }
+            for (DSAEvent event : result.getEvents()) {
+                if (event.getUniqueId() != null) {
+                    events.put(event.getUniqueId(), event);
+                }
+            }
+            EventSnapshot previous = snapshot;
+            EventSnapshot previousConfirmed = confirmed;
+            confirmed = previous.next(events.values());
+            EventSnapshot next = confirmed;
+            if (!mutations.isEmpty()) {
+                mutations.overlay(events);
+                next = confirmed.next(events.values());
+            }
+            EventDelta delta = publish(previous, next, EventDelta.between(previous, next));
+            if (result.isFull()) {
+                removeOrphanedEventNodes(next);
+            }
+
+            boolean stateChanged = !syncState.equals(result.getSyncState());
+            if (stateChanged) {
+                syncState.clear();
+                syncState.putAll(result.getSyncState());
+            }
+            // The file only holds confirmed events, a restart would otherwise show mutations it never sends.
+            boolean confirmedChanged = previous == previousConfirmed && next == confirmed
+                    ? !delta.isEmpty() : !EventDelta.between(previousConfirmed, confirmed).isEmpty();
+            if (stateChanged || confirmedChanged) {
+                snapshotFile.save(confirmed.getEvents(), syncState);
+            }
+        }
+    }
+
+    /* Shows the queued mutations of one event right away, without waiting for the provider. */
+    private void applyPendingMutations(String uid) {
+        synchronized (publishLock) {
+            EventSnapshot previous = snapshot;
+            DSAEvent current = previous.get(uid);
+            DSAEvent shown = mutations.overlay(uid, confirmed.get(uid));
+            if (current == null && shown == null) {
+                return;
+            }
+            EventSnapshot next = previous.with(uid, shown);
+            publish(previous, next, EventDelta.of(current, next.get(uid)));
+        }
+    }
+
+    private static boolean isProvisional(DSAEvent event) {
+        return event.getUniqueId().startsWith(WriteBehindQueue.PROVISIONAL_PREFIX);
+    }
+
+    /* Makes the next snapshot current and updates the nodes and views of the events that changed. */
+    private EventDelta publish(EventSnapshot previous, EventSnapshot next, EventDelta delta) {
+        snapshot = next;
+        reportMemory(next);
+
+        for (DSAEvent event : delta.getRemoved()) {
+            detailsCache.remove(event.getUniqueId());
+            index.remove(event.getUniqueId());
+            eventsNode.removeChild(event.getUniqueId(), false);
+        }
+        for (DSAEvent event : delta.getAdded()) {
+            index.add(event);
+            createEventNode(event);
+        }
+        for (DSAEvent event : delta.getUpdated()) {
+            detailsCache.remove(event.getUniqueId());
+            index.add(event);
             createEventNode(event);
         }
+        updateBusyTimeline(previous, next, delta);
+        if (!delta.isEmpty()) {
+            liveStatus.update();
+            // Locally created events only reach watchers and triggers once the provider assigned their ID.
+            EventDelta confirmed = delta.filter(event -> !isProvisional(event));
+            if (!confirmed.isEmpty()) {
+                triggers.apply(confirmed);
+                changeLog.append(confirmed);
+            }
+        }
+        return delta;
+    }
 
-        if (eventsNode.getChildren() != null) {
-            for (Map.Entry<String, Node> eventNode : eventsNode.getChildren().entrySet()) {
-                if (!touchedEvents.contains(eventNode.getValue().getName())) {
-                    eventsNode.removeChild(eventNode.getValue(), false);
-                }
+    /* Sends queued mutations through the provider hooks, and syncs once each one settled. */
+    private final class MutationSender implements WriteBehindQueue.Sender {
+        @Override
+        public String send(WriteBehindQueue.Mutation mutation) throws Exception {
+            switch (mutation.getKind()) {
+                case CREATE:
+                    DSAEvent event = mutation.getEvent().copy();
+                    event.setUniqueId(null);
+                    return insertEvent(event);
+                case UPDATE:
+                    EventPatch patch = EventPatch.between(mutation.getBase(), mutation.getEvent());
+                    if (!patch.isEmpty()) {
+                        patchEvent(patch);
+                    }
+                    return mutation.getUniqueId();
+                default:
+                    removeEvent(mutation.getBase());
+                    return mutation.getUniqueId();
+            }
+        }
+
+        @Override
+        public boolean isTransient(Exception e) {
+            return BaseCalendar.this.isTransient(e);
+        }
+
+        @Override
+        public void onSettled(WriteBehindQueue.Mutation mutation, Exception failure) {
+            if (failure != null) {
+                LOGGER.debug("Could not " + mutation.getKind() + " event " + mutation.getUniqueId(), failure);
+                // Shows the event as last synced again, with the mutations still queued for it.
+                applyPendingMutations(mutation.getUniqueId());
+            }
+            Objects.getDaemonThreadPool().execute(BaseCalendar.this::refresh);
+        }
+    }
+
+    private BusyTimeline buildBusyTimeline(EventSnapshot events) {
+        Instant origin = LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant();
+        int slots = (int) (Duration.ofDays(BUSY_HORIZON_DAYS).toMillis() / busyResolution.toMillis());
+        BusyTimeline timeline = new BusyTimeline(origin, busyResolution, slots);
+        Iterator<DSAEvent> inHorizon = events.iterateRange(origin, origin.plus(Duration.ofDays(BUSY_HORIZON_DAYS)), false);
+        while (inHorizon.hasNext()) {
+            timeline.add(inHorizon.next());
+        }
+        return timeline;
+    }
+
+    /*
+     * Applies a delta to a copy of the timeline, or rebuilds it once a day has
+     * passed or when a recurring series changed.
+     */
+    private void updateBusyTimeline(EventSnapshot previous, EventSnapshot next, EventDelta delta) {
+        BusyTimeline current = busyTimeline;
+        if (!current.getOrigin().equals(LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant())
+                || touchesRecurrence(previous, delta)) {
+            busyTimeline = buildBusyTimeline(next);
+            return;
+        }
+        if (delta.isEmpty()) {
+            return;
+        }
+
+        BusyTimeline timeline = current.copy();
+        for (DSAEvent event : delta.getRemoved()) {
+            timeline.remove(event);
+        }
+        for (DSAEvent event : delta.getUpdated()) {
+            timeline.remove(previous.get(event.getUniqueId()));
+            timeline.add(event);
+        }
+        for (DSAEvent event : delta.getAdded()) {
+            timeline.add(event);
+        }
+        busyTimeline = timeline;
+    }
+
+    private static boolean touchesRecurrence(EventSnapshot previous, EventDelta delta) {
+        for (DSAEvent event : delta.getRemoved()) {
+            if (event.getRecurrence() != null) {
+                return true;
+            }
+        }
+        for (DSAEvent event : delta.getAdded()) {
+            if (event.getRecurrence() != null) {
+                return true;
+            }
+        }
+        for (DSAEvent event : delta.getUpdated()) {
+            if (event.getRecurrence() != null || previous.get(event.getUniqueId()).getRecurrence() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Least recently used details, bounded to MAX_CACHED_DETAILS entries. */
+    private static final class DetailsCache extends LinkedHashMap<String, EventDetails> {
+        private static final float LOAD_FACTOR = 0.75f;
+
+        DetailsCache() {
+            super(MAX_CACHED_DETAILS, LOAD_FACTOR, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, EventDetails> eldest) {
+            return size() > MAX_CACHED_DETAILS;
+        }
+    }
+
+    /* Removes nodes persisted by a previous run for events that no longer exist. */
+    private void removeOrphanedEventNodes(EventSnapshot current) {
+        if (eventsNode.getChildren() == null) {
+            return;
+        }
+        for (Node eventNode : new ArrayList<>(eventsNode.getChildren().values())) {
+            if (current.get(eventNode.getName()) == null) {
+                eventsNode.removeChild(eventNode, false);
             }
         }
     }
@@ -0,0 +1,44 @@
+package org.dsa.iot.calendar;
+
+/**
+ * Outcome of one event of a bulk create or delete.
+ */
+public class BulkResult {
+    private final String uid;
+    private final String error;
+
+    private BulkResult(String uid, String error) {
+        this.uid = uid;
+        this.error = error;
+    }
+
+    /**
+     * @param uid Unique ID of the created or deleted event.
+     */
+    public static BulkResult success(String uid) {
+        return new BulkResult(uid, null);
+    }
+
+    /**
+     * @param uid   Unique ID of the event, or null if it was not created.
+     * @param error Reason reported by the provider.
+     */
+    public static BulkResult failure(String uid, String error) {
+        return new BulkResult(uid, error != null ? error : "Unknown error");
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public String getUniqueId() {
+        return uid;
+    }
+
+    /**
+     * @return Reason of the failure, or null on success.
+     */
+    public String getError() {
+        return error;
+    }
+}
@@ -9,12 +9,19 @@ import org.dsa.iot.dslink.DSLink;
 import org.dsa.iot.dslink.DSLinkHandler;
 import org.dsa.iot.dslink.node.Node;
 import org.dsa.iot.dslink.node.value.Value;
+import org.dsa.iot.dslink.node.value.ValueType;
+import org.dsa.iot.dslink.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
 
 public class CalendarHandler extends DSLinkHandler {
-    static final Map<String, BaseCalendar> CALENDARS = new HashMap<>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(CalendarHandler.class);
+
+    static final String STATUS_RESTORING = "Restoring";
+    static final String STATUS_READY = "Ready";
+    static final String STATUS_FAILED = "Failed: ";
 
     @Override
     public boolean isResponder() {
@@ -30,62 +37,130 @@ public class CalendarHandler extends DSLinkHandler {
         Actions.addAddCalDavCalendarNode(superRoot);
         Actions.addAddGoogleCalendarNode(superRoot);
         Actions.addAddExchangeCalendarNode(superRoot);
+        Actions.addFindFreeSlotNode(superRoot);
+        Actions.addGetAvailabilityGridNode(superRoot);
+        Actions.addQueryEventsNode(superRoot);
+
+        for (Node calendarNode : new ArrayList<>(superRoot.getChildren().values())) {
+            Value typeAttribute = calendarNode.getAttribute("type");
+            if (typeAttribute == null || CalendarManager.contains(calendarNode.getName())) {
+                continue;
+            }
+
+            // Nodes persisted from the previous run stay visible while the
+            // provider connects in the background.
+            setStatus(calendarNode, STATUS_RESTORING);
+            Actions.addRemoveCalendarNode(calendarNode);
+            final String type = typeAttribute.getString();
+            Objects.getDaemonThreadPool().execute(() -> restoreCalendar(calendarNode, type));
+        }
+    }
 
-        for (Map.Entry<String, Node> entry : superRoot.getChildren().entrySet()) {
-            try {
-                Value typeAttribute = entry.getValue().getAttribute("type");
-                if (typeAttribute != null) {
-                    Node calendarNode = entry.getValue();
-
-                    // Set up calendar
-                    if (!CALENDARS.containsKey(calendarNode.getName())) {
-                        BaseCalendar cal;
-                        switch (typeAttribute.getString()) {
-                            case "caldav":
-                                String host = calendarNode.getRoConfig("host").getString();
-                                int port = calendarNode.getRoConfig("port").getNumber().intValue();
-                                String path = calendarNode.getRoConfig("path").getString();
-                                Node eventsNode = calendarNode.getChild("events", false);
-                                cal = new CalDAVCalendar(host, port, path, eventsNode);
-                                CALENDARS.put(calendarNode.getName(), cal);
-                                break;
-                            case "google":
-                                String clientId = calendarNode.getRoConfig("clientId").getString();
-                                String clientSecret = calendarNode.getRoConfig("clientSecret").getString();
-                                cal = new GoogleCalendar(calendarNode, clientId, clientSecret);
-                                CALENDARS.put(calendarNode.getName(), cal);
-                                ((GoogleCalendar) cal).attemptAuthorize(calendarNode);
-                                Actions.addGetEventsRange(calendarNode);
-                                Actions.addGetCalendars(calendarNode);
-                                break;
-                            case "exchange":
-                                String vers = getROConfigOrDefault(calendarNode, "version", new Value("2010 SP2")).getString();
-                                ExchangeVersion version = Actions.parseExchangeVersion(vers);
-                                String email = getROConfigOrDefault(calendarNode, "email", new Value("")).getString();
-                                String pass = getPasswordOrDefault(calendarNode, "");
-                                boolean autoDisc = getROConfigOrDefault(calendarNode, "autoDiscoverUrl", new Value(true)).getBool();
-                                String url = getROConfigOrDefault(calendarNode, "url", new Value("")).getString();
-                                if (autoDisc) {
-                                    cal = new ExchangeCalendar(calendarNode, version, email, pass);
-                                } else {
-                                    cal = new ExchangeCalendar(calendarNode, version, email, pass, url);
-                                }
-                                CALENDARS.put(calendarNode.getName(), cal);
-                                cal.startUpdateLoop();
-                            default:
-                                throw new Exception("Unknown calendar type");
-                        }
+    private static void restoreCalendar(Node calendarNode, String type) {
+        try {
+            BaseCalendar cal;
+            switch (type) {
+                case "caldav":
+                    String host = calendarNode.getRoConfig("host").getString();
+                    int port = calendarNode.getRoConfig("port").getNumber().intValue();
+                    String path = calendarNode.getRoConfig("path").getString();
+                    Node eventsNode = calendarNode.getChild("events", false);
+                    cal = new CalDAVCalendar(host, port, path, eventsNode);
+                    break;
+                case "google":
+                    String clientId = calendarNode.getRoConfig("clientId").getString();
+                    String clientSecret = calendarNode.getRoConfig("clientSecret").getString();
+                    cal = new GoogleCalendar(calendarNode, clientId, clientSecret);
+                    break;
+                case "exchange":
+                    String vers = getROConfigOrDefault(calendarNode, "version", new Value("2010 SP2")).getString();
+                    ExchangeVersion version = Actions.parseExchangeVersion(vers);
+                    String email = getROConfigOrDefault(calendarNode, "email", new Value("")).getString();
+                    String pass = getPasswordOrDefault(calendarNode, "");
+                    boolean autoDisc = getROConfigOrDefault(calendarNode, "autoDiscoverUrl", new Value(true)).getBool();
+                    String url = getROConfigOrDefault(calendarNode, "url", new Value("")).getString();
+                    if (autoDisc) {
+                        cal = new ExchangeCalendar(calendarNode, version, email, pass);
+                    } else {
+                        cal = new ExchangeCalendar(calendarNode, version, email, pass, url);
                     }
+                    break;
+                default:
+                    throw new Exception("Unknown calendar type");
+            }
+
+            // The account may have been removed while the provider was connecting.
+            if (discardIfRemoved(calendarNode, cal)) {
+                return;
+            }
+            CalendarManager.register(calendarNode.getName(), cal);
+            if (cal instanceof GoogleCalendar) {
+                ((GoogleCalendar) cal).attemptAuthorize(calendarNode);
+            } else if (cal instanceof ExchangeCalendar) {
+                cal.startUpdateLoop();
+            }
+            if (discardIfRemoved(calendarNode, cal)) {
+                return;
+            }
 
-                    Actions.addRemoveCalendarNode(calendarNode);
-                    Actions.addRefreshCalendarNode(calendarNode);
-                    Actions.addCreateEventNode(calendarNode);
-                }
-            } catch (Exception e) {
-                System.err.println("Error restoring:");
-                e.printStackTrace();
+            if (cal instanceof GoogleCalendar) {
+                Actions.addGetEventsRange(calendarNode);
+                Actions.addGetCalendars(calendarNode);
             }
+
+            Actions.addRefreshCalendarNode(calendarNode);
+
+            Actions.addGetAvailabilityNode(calendarNode);
+
+            Actions.addSearchEventsNode(calendarNode);
+
+            Actions.addWatchChangesNode(calendarNode);
+
+            Actions.addAddTriggerNode(calendarNode);
+            Actions.addBulkCreateEventsNode(calendarNode);
+            Actions.addBulkDeleteEventsNode(calendarNode);
+            Actions.addCreateEventNode(calendarNode);
+            setStatus(calendarNode, STATUS_READY);
+        } catch (Exception e) {
+            LOGGER.error("Error restoring " + calendarNode.getName(), e);
+            setStatus(calendarNode, STATUS_FAILED + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes a restored calendar whose node was removed in the meantime and
+     * deletes its persisted events.
+     *
+     * @return True if the calendar node was removed.
+     */
+    private static boolean discardIfRemoved(Node calendarNode, BaseCalendar cal) {
+        Node parent = calendarNode.getParent();
+        if (parent != null && parent.getChild(calendarNode.getName(), false) == calendarNode) {
+            return false;
+        }
+        if (!CalendarManager.remove(calendarNode.getName(), cal)) {
+            cal.close();
+        }
+        cal.discardSnapshot();
+        return true;
+    }
+
+    /**
+     * Shows the readiness of a calendar on its node.
+     *
+     * @param calendarNode Calendar node.
+     * @param status       Human readable status.
+     */
+    static void setStatus(Node calendarNode, String status) {
+        Node statusNode = calendarNode.getChild("status", false);
+        if (statusNode == null) {
+            statusNode = calendarNode.createChild("status", false)
+                    .setDisplayName("Status")
+                    .setSerializable(false)
+                    .setValueType(ValueType.STRING)
+                    .build();
         }
+        statusNode.setValue(new Value(status));
     }
 
     private static Value getROConfigOrDefault(Node n, String name, Value def) {
@@ -0,0 +1,72 @@
+package org.dsa.iot.calendar;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the calendars served by this link, keyed by the name of their
+ * calendar node. The registry owns the lifecycle of every calendar: replacing
+ * or removing an entry closes the calendar it held.
+ */
+public final class CalendarManager {
+    private static final ConcurrentMap<String, BaseCalendar> CALENDARS = new ConcurrentHashMap<>();
+
+    private CalendarManager() {
+    }
+
+    public static void register(String name, BaseCalendar calendar) {
+        BaseCalendar previous = CALENDARS.put(name, calendar);
+        if (previous != null && previous != calendar) {
+            previous.close();
+        }
+    }
+
+    public static BaseCalendar get(String name) {
+        return CALENDARS.get(name);
+    }
+
+    public static boolean contains(String name) {
+        return CALENDARS.containsKey(name);
+    }
+
+    public static Collection<BaseCalendar> getCalendars() {
+        return Collections.unmodifiableCollection(CALENDARS.values());
+    }
+
+    public static Collection<String> getNames() {
+        return Collections.unmodifiableCollection(CALENDARS.keySet());
+    }
+
+    /**
+     * Unregisters and closes a calendar, stopping its update loop and
+     * releasing its connections.
+     *
+     * @param name Name of the calendar node.
+     * @return The removed calendar, or null if none was registered.
+     */
+    public static BaseCalendar remove(String name) {
+        BaseCalendar calendar = CALENDARS.remove(name);
+        if (calendar != null) {
+            calendar.close();
+        }
+        return calendar;
+    }
+
+    /**
+     * Unregisters and closes a calendar, unless its name was registered to
+     * another calendar since.
+     *
+     * @param name     Name of the calendar node.
+     * @param calendar Calendar registered under that name.
+     * @return True if the calendar was removed.
+     */
+    public static boolean remove(String name, BaseCalendar calendar) {
+        if (!CALENDARS.remove(name, calendar)) {
+            return false;
+        }
+        calendar.close();
+        return true;
+    }
+}
@@ -1,5 +1,7 @@
 package org.dsa.iot.calendar;
 
+import java.util.Objects;
+
 public class DSAIdentifier {
     private final String uid;
     private final String title;
@@ -16,4 +18,22 @@ public class DSAIdentifier {
     public String getUid() {
         return uid;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        DSAIdentifier that = (DSAIdentifier) o;
+        return Objects.equals(uid, that.uid) && Objects.equals(title, that.title);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(uid, title);
+    }
 }
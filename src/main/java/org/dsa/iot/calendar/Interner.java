@@ -0,0 +1,46 @@
+package org.dsa.iot.calendar;
+
+import org.dsa.iot.calendar.guest.DSAGuest;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Canonicalizing pool: equal values passed to {@link #intern(Object)} come
+ * back as one shared instance. Entries are weakly referenced, so the pool
+ * shrinks once no event holds a value anymore. Interned values are shared
+ * and must not be modified.
+ *
+ * @param <T> Type of the pooled values.
+ */
+public final class Interner<T> {
+    public static final Interner<DSAGuest> GUESTS = new Interner<>();
+    public static final Interner<DSAIdentifier> IDENTIFIERS = new Interner<>();
+    public static final Interner<String> TIME_ZONES = new Interner<>();
+    public static final Interner<String> TEXT = new Interner<>();
+
+    private final Map<T, WeakReference<T>> pool = new WeakHashMap<>();
+
+    /**
+     * @param value Value to canonicalize, may be null.
+     * @return The pooled instance equal to the value, or the value itself if
+     * it is the first of its kind.
+     */
+    public synchronized T intern(T value) {
+        if (value == null) {
+            return null;
+        }
+        WeakReference<T> reference = pool.get(value);
+        T canonical = reference != null ? reference.get() : null;
+        if (canonical == null) {
+            pool.put(value, new WeakReference<>(value));
+            canonical = value;
+        }
+        return canonical;
+    }
+
+    public synchronized int size() {
+        return pool.size();
+    }
+}
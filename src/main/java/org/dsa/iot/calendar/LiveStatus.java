@@ -0,0 +1,106 @@
+package org.dsa.iot.calendar;
+
+import org.dsa.iot.calendar.event.DSAEvent;
+import org.dsa.iot.calendar.event.EventSnapshot;
+import org.dsa.iot.dslink.node.Node;
+import org.dsa.iot.dslink.node.value.Value;
+import org.dsa.iot.dslink.node.value.ValueType;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+/**
+ * Value nodes of a calendar telling whether it is busy right now, which
+ * events are current and next, and how many minutes are left until the next
+ * one. They are recomputed only when one of them can change, at a time
+ * scheduled on the shared {@link TimingWheel}, and whenever a sync changes
+ * the events.
+ */
+final class LiveStatus {
+    private static final long MINUTE_MILLIS = 60_000;
+
+    private final Supplier<EventSnapshot> snapshots;
+    private final TimingWheel wheel;
+    private final Node busy;
+    private final Node currentEvent;
+    private final Node nextEvent;
+    private final Node minutesUntilNext;
+
+    private TimingWheel.Timeout pending;
+    private boolean closed;
+
+    LiveStatus(Node calendarNode, Supplier<EventSnapshot> snapshots, TimingWheel wheel) {
+        this.snapshots = snapshots;
+        this.wheel = wheel;
+        busy = valueNode(calendarNode, "busy", "Busy", ValueType.BOOL);
+        currentEvent = valueNode(calendarNode, "currentEvent", "Current Event", ValueType.STRING);
+        nextEvent = valueNode(calendarNode, "nextEvent", "Next Event", ValueType.STRING);
+        minutesUntilNext = valueNode(calendarNode, "minutesUntilNext", "Minutes Until Next", ValueType.NUMBER);
+    }
+
+    /**
+     * Recomputes the values from the current snapshot and schedules the next
+     * change.
+     */
+    synchronized void update() {
+        if (closed) {
+            return;
+        }
+        if (pending != null) {
+            pending.cancel();
+            pending = null;
+        }
+
+        long now = System.currentTimeMillis();
+        EventSnapshot snapshot = snapshots.get();
+        DSAEvent current = null;
+        long change = Long.MAX_VALUE;
+        Instant instant = Instant.ofEpochMilli(now);
+        for (Iterator<DSAEvent> events = snapshot.iterateRange(instant, instant, false); events.hasNext();) {
+            DSAEvent event = events.next();
+            if (event.getStartMillis() <= now && now < event.getEndMillis()) {
+                if (current == null) {
+                    current = event;
+                }
+                change = Math.min(change, event.getEndMillis());
+            }
+        }
+        DSAEvent next = snapshot.firstStartingAfter(now);
+
+        busy.setValue(new Value(current != null));
+        currentEvent.setValue(current != null ? new Value(current.getTitle()) : null);
+        nextEvent.setValue(next != null ? new Value(next.getTitle()) : null);
+        if (next != null) {
+            long minutes = (next.getStartMillis() - now + MINUTE_MILLIS - 1) / MINUTE_MILLIS;
+            minutesUntilNext.setValue(new Value(minutes));
+            change = Math.min(change, next.getStartMillis() - (minutes - 1) * MINUTE_MILLIS);
+        } else {
+            minutesUntilNext.setValue(null);
+        }
+
+        if (change != Long.MAX_VALUE) {
+            pending = wheel.schedule(change, this::update);
+        }
+    }
+
+    synchronized void close() {
+        closed = true;
+        if (pending != null) {
+            pending.cancel();
+            pending = null;
+        }
+    }
+
+    private static Node valueNode(Node calendarNode, String name, String displayName, ValueType type) {
+        Node node = calendarNode.getChild(name, false);
+        if (node == null) {
+            node = calendarNode.createChild(name, false)
+                    .setDisplayName(displayName)
+                    .setSerializable(false)
+                    .setValueType(type)
+                    .build();
+        }
+        return node;
+    }
+}
@@ -0,0 +1,79 @@
+package org.dsa.iot.calendar;
+
+import org.dsa.iot.dslink.methods.StreamState;
+import org.dsa.iot.dslink.node.actions.ActionResult;
+import org.dsa.iot.dslink.node.actions.table.BatchRow;
+import org.dsa.iot.dslink.node.actions.table.Row;
+import org.dsa.iot.dslink.node.actions.table.Table;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streams the rows of an action result in chunks instead of buffering the
+ * whole table. Producers check {@link #isClosed()} and stop as soon as the
+ * requester closes the stream.
+ */
+final class RowStream {
+    static final int CHUNK_SIZE = 100;
+
+    private final Table table;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile Runnable closeCallback;
+    private BatchRow batch = new BatchRow();
+    private int batched;
+
+    RowStream(ActionResult actionResult) {
+        table = actionResult.getTable();
+        table.setMode(Table.Mode.APPEND);
+        actionResult.setStreamState(StreamState.INITIALIZED);
+        actionResult.setCloseHandler(event -> {
+            closed.set(true);
+            Runnable callback = closeCallback;
+            if (callback != null) {
+                callback.run();
+            }
+        });
+    }
+
+    /**
+     * @param callback Run when the requester closes the stream.
+     */
+    void onClose(Runnable callback) {
+        closeCallback = callback;
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    void add(Row row) {
+        batch.addRow(row);
+        if (++batched >= CHUNK_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the remaining rows, if the requester still listens, and ends the
+     * stream.
+     */
+    void close() {
+        if (closed.get()) {
+            return;
+        }
+        flush();
+        closed.set(true);
+        table.close();
+    }
+
+    /**
+     * Sends the rows added so far without waiting for a full chunk.
+     */
+    void flush() {
+        if (batched > 0 && !closed.get()) {
+            table.addBatchRows(batch);
+        }
+        batch = new BatchRow();
+        batched = 0;
+    }
+}
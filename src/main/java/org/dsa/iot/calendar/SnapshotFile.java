@@ -0,0 +1,106 @@
+package org.dsa.iot.calendar;
+
+import org.dsa.iot.calendar.event.DSAEvent;
+import org.dsa.iot.dslink.util.json.EncodingFormat;
+import org.dsa.iot.dslink.util.json.JsonArray;
+import org.dsa.iot.dslink.util.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local copy of a calendar's events and sync state, used to serve queries
+ * right after a restart while the first sync is still running.
+ */
+class SnapshotFile {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotFile.class);
+    private static final File SNAPSHOT_DIR = new File("snapshots");
+
+    private final File directory;
+    private final File file;
+
+    SnapshotFile(String calendarName) {
+        this(SNAPSHOT_DIR, calendarName);
+    }
+
+    SnapshotFile(File directory, String calendarName) {
+        this.directory = directory;
+        String fileName;
+        try {
+            fileName = URLEncoder.encode(calendarName, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        file = new File(directory, fileName + ".json");
+    }
+
+    /**
+     * Reads the snapshot into the given collections. A missing or unreadable
+     * snapshot leaves them untouched.
+     *
+     * @param events    Receives the stored events.
+     * @param syncState Receives the stored provider sync state.
+     * @return True if a snapshot was loaded.
+     */
+    boolean load(List<DSAEvent> events, Map<String, String> syncState) {
+        if (!file.isFile()) {
+            return false;
+        }
+        try {
+            JsonObject json = new JsonObject(EncodingFormat.JSON, Files.readAllBytes(file.toPath()));
+            JsonArray eventsJson = json.get("events");
+            for (int i = 0; i < eventsJson.size(); i++) {
+                events.add(DSAEvent.fromJson((JsonObject) eventsJson.get(i)));
+            }
+            JsonObject stateJson = json.get("syncState");
+            for (Map.Entry<String, Object> entry : stateJson) {
+                syncState.put(entry.getKey(), (String) entry.getValue());
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Ignoring unreadable snapshot " + file, e);
+            events.clear();
+            syncState.clear();
+            return false;
+        }
+    }
+
+    void save(Collection<DSAEvent> events, Map<String, String> syncState) {
+        JsonArray eventsJson = new JsonArray();
+        for (DSAEvent event : events) {
+            eventsJson.add(event.toJson());
+        }
+        JsonObject stateJson = new JsonObject();
+        for (Map.Entry<String, String> entry : syncState.entrySet()) {
+            stateJson.put(entry.getKey(), entry.getValue());
+        }
+        JsonObject json = new JsonObject();
+        json.put("events", eventsJson);
+        json.put("syncState", stateJson);
+
+        try {
+            Files.createDirectories(directory.toPath());
+            Path temp = new File(directory, file.getName() + ".tmp").toPath();
+            Files.write(temp, json.encode(EncodingFormat.JSON));
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write snapshot " + file, e);
+        }
+    }
+
+    void delete() {
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Failed to delete snapshot " + file);
+        }
+    }
+}
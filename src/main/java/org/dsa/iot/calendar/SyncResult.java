@@ -0,0 +1,54 @@
+package org.dsa.iot.calendar;
+
+import org.dsa.iot.calendar.event.DSAEvent;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Outcome of one provider sync. A full result replaces every stored event,
+ * a delta result only carries the events that changed and the ids of the
+ * events that were removed since the last sync.
+ */
+public class SyncResult {
+    private final boolean full;
+    private final List<DSAEvent> events;
+    private final Set<String> removedIds;
+    private final Map<String, String> syncState;
+
+    private SyncResult(boolean full, List<DSAEvent> events, Set<String> removedIds, Map<String, String> syncState) {
+        this.full = full;
+        this.events = events;
+        this.removedIds = removedIds;
+        this.syncState = syncState;
+    }
+
+    public static SyncResult full(List<DSAEvent> events, Map<String, String> syncState) {
+        return new SyncResult(true, events, Collections.emptySet(), syncState);
+    }
+
+    public static SyncResult delta(List<DSAEvent> changedEvents, Set<String> removedIds, Map<String, String> syncState) {
+        return new SyncResult(false, changedEvents, removedIds, syncState);
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public List<DSAEvent> getEvents() {
+        return events;
+    }
+
+    public Set<String> getRemovedIds() {
+        return removedIds;
+    }
+
+    /**
+     * @return Provider specific sync tokens or ETags to pass to the next sync.
+     */
+    public Map<String, String> getSyncState() {
+        return syncState;
+    }
+}
@@ -0,0 +1,191 @@
+package org.dsa.iot.calendar;
+
+import org.dsa.iot.dslink.provider.LoopProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hierarchical timing wheel running the time based updates of all
+ * calendars. Each level has {@value #WHEEL_SIZE} slots, every slot of a
+ * level spanning a whole turn of the level below. Scheduling and cancelling
+ * are O(1); a timeout is moved down a level at most once per level before
+ * it fires.
+ * <p>
+ * Timeouts due further ahead than the highest level reaches are parked in
+ * its farthest slot and placed again when that slot comes around.
+ */
+public final class TimingWheel {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimingWheel.class);
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    private static final long TICK_MILLIS = 1000;
+
+    private final long tickMillis;
+    private final Timeout[][] slots = new Timeout[LEVELS][WHEEL_SIZE];
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis Resolution of the wheel.
+     * @param nowMillis  Time the wheel starts at.
+     */
+    TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        for (Timeout[] level : slots) {
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                level[i] = Timeout.sentinel();
+            }
+        }
+    }
+
+    /**
+     * @return The wheel shared by all calendars, advanced every second by the
+     * link's loop.
+     */
+    public static TimingWheel get() {
+        return Shared.WHEEL;
+    }
+
+    /**
+     * @param deadlineMillis Epoch milliseconds to run the task at. Past
+     *                       deadlines run on the next tick.
+     * @param task           Task to run on the thread advancing the wheel;
+     *                       it must not block.
+     * @return Handle to cancel the task.
+     */
+    public synchronized Timeout schedule(long deadlineMillis, Runnable task) {
+        long deadlineTick = Math.max(Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis), currentTick + 1);
+        Timeout timeout = new Timeout(this, deadlineTick, task);
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Moves the wheel forward to the given time, running every task that
+     * became due.
+     */
+    void advanceTo(long nowMillis) {
+        long targetTick = Math.floorDiv(nowMillis, tickMillis);
+        List<Timeout> expired = new ArrayList<>();
+        synchronized (this) {
+            while (currentTick < targetTick) {
+                currentTick++;
+                cascade();
+                Timeout head = slots[0][(int) (currentTick & WHEEL_MASK)];
+                for (Timeout timeout = head.next; timeout != head; timeout = head.next) {
+                    timeout.unlink();
+                    size--;
+                    expired.add(timeout);
+                }
+            }
+        }
+        for (Timeout timeout : expired) {
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                LOGGER.debug("Timed task failed", e);
+            }
+        }
+    }
+
+    /* Moves the timeouts of the higher level slots that come due at this tick down. */
+    private void cascade() {
+        int top = 0;
+        while (top + 1 < LEVELS && (currentTick & ((1L << (WHEEL_BITS * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        for (int level = top; level > 0; level--) {
+            Timeout head = slots[level][(int) ((currentTick >> (WHEEL_BITS * level)) & WHEEL_MASK)];
+            for (Timeout timeout = head.next; timeout != head; timeout = head.next) {
+                timeout.unlink();
+                place(timeout);
+            }
+        }
+    }
+
+    private void place(Timeout timeout) {
+        long delta = timeout.deadlineTick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        int shift = WHEEL_BITS * level;
+        int index;
+        if (delta >= 1L << (shift + WHEEL_BITS)) {
+            index = (int) (((currentTick >> shift) + WHEEL_MASK) & WHEEL_MASK);
+        } else {
+            index = (int) ((timeout.deadlineTick >> shift) & WHEEL_MASK);
+        }
+        timeout.linkBefore(slots[level][index]);
+    }
+
+    /* Started on first use, so that tests can build wheels without a link loop. */
+    private static final class Shared {
+        private static final TimingWheel WHEEL = new TimingWheel(TICK_MILLIS, System.currentTimeMillis());
+
+        static {
+            LoopProvider.getProvider().schedulePeriodic(() -> WHEEL.advanceTo(System.currentTimeMillis()),
+                    TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Scheduled task of a {@link TimingWheel}.
+     */
+    public static final class Timeout {
+        private final TimingWheel wheel;
+        private final long deadlineTick;
+        private final Runnable task;
+        private Timeout prev = this;
+        private Timeout next = this;
+
+        private Timeout(TimingWheel wheel, long deadlineTick, Runnable task) {
+            this.wheel = wheel;
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+        }
+
+        private static Timeout sentinel() {
+            return new Timeout(null, 0, null);
+        }
+
+        /**
+         * Stops the task from running, if it has not run yet.
+         */
+        public void cancel() {
+            synchronized (wheel) {
+                if (next != this) {
+                    unlink();
+                    wheel.size--;
+                }
+            }
+        }
+
+        private void linkBefore(Timeout head) {
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = this;
+            next = this;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package org.dsa.iot.calendar;
+
+import org.dsa.iot.calendar.event.DSAEvent;
+import org.dsa.iot.calendar.event.EventDelta;
+import org.dsa.iot.calendar.event.EventSnapshot;
+import org.dsa.iot.calendar.event.EventUtils;
+import org.dsa.iot.calendar.event.Trigger;
+import org.dsa.iot.dslink.node.Node;
+import org.dsa.iot.dslink.node.value.Value;
+import org.dsa.iot.dslink.node.value.ValueType;
+import org.dsa.iot.dslink.util.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Triggers of a calendar, persisted as the children of its {@code triggers}
+ * node. Every event a trigger matches is scheduled on the shared
+ * {@link TimingWheel} at the time the trigger fires for it, and syncs only
+ * re-arm the events that changed. Recurring events are armed for their next
+ * occurrence only, and re-armed when it fires. When a trigger fires, its
+ * node's value is set to the event, which subscribers receive as a pulse.
+ */
+final class Triggers {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Triggers.class);
+
+    private final Supplier<EventSnapshot> snapshots;
+    private final TimingWheel wheel;
+    private final Node triggersNode;
+    private final Map<String, Armed> armed = new HashMap<>();
+    private boolean closed;
+
+    Triggers(Node calendarNode, Supplier<EventSnapshot> snapshots, TimingWheel wheel, BaseCalendar calendar) {
+        this.snapshots = snapshots;
+        this.wheel = wheel;
+        Node node = calendarNode.getChild("triggers", false);
+        if (node == null) {
+            node = calendarNode.createChild("triggers", false)
+                    .setDisplayName("Triggers")
+                    .build();
+        }
+        triggersNode = node;
+        if (triggersNode.getChildren() == null) {
+            return;
+        }
+        for (Node triggerNode : new ArrayList<>(triggersNode.getChildren().values())) {
+            if (triggerNode.getRoConfig("kind") == null) {
+                continue;
+            }
+            try {
+                Trigger trigger = parse(triggerNode.getRoConfig("kind").getString(),
+                        triggerNode.getRoConfig("minutes").getNumber().longValue(),
+                        triggerNode.getRoConfig("title").getString(),
+                        triggerNode.getRoConfig("location").getString());
+                Actions.addRemoveTriggerNode(triggerNode, calendar);
+                arm(triggerNode, trigger);
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not restore trigger " + triggerNode.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Adds a trigger and schedules it for the events of the current snapshot.
+     *
+     * @param kind     Name of a {@link Trigger.Kind}, in any case and with
+     *                 spaces for underscores.
+     * @param minutes  Minutes before the start, for
+     *                 {@link Trigger.Kind#BEFORE_START}.
+     * @param title    Pattern found in the titles of matching events, or empty.
+     * @param location Pattern found in the locations of matching events, or
+     *                 empty.
+     * @throws IllegalArgumentException If the kind or a pattern is invalid,
+     *                                  or the name is taken.
+     */
+    synchronized void add(String name, String kind, long minutes, String title, String location, BaseCalendar calendar) {
+        if (triggersNode.hasChild(name, false)) {
+            throw new IllegalArgumentException("Trigger " + name + " already exists");
+        }
+        Trigger trigger = parse(kind, minutes, title, location);
+        Node triggerNode = triggersNode.createChild(name, false)
+                .setValueType(ValueType.MAP)
+                .setRoConfig("kind", new Value(trigger.getKind().name()))
+                .setRoConfig("minutes", new Value(trigger.getMinutes()))
+                .setRoConfig("title", new Value(title))
+                .setRoConfig("location", new Value(location))
+                .build();
+        Actions.addRemoveTriggerNode(triggerNode, calendar);
+        arm(triggerNode, trigger);
+    }
+
+    synchronized void remove(String name) {
+        Armed removed = armed.remove(name);
+        if (removed != null) {
+            removed.cancelAll();
+        }
+        triggersNode.removeChild(name, false);
+    }
+
+    /**
+     * Re-arms the events changed by a sync.
+     */
+    synchronized void apply(EventDelta delta) {
+        long now = System.currentTimeMillis();
+        for (Armed trigger : armed.values()) {
+            for (DSAEvent event : delta.getRemoved()) {
+                trigger.cancel(event.getUniqueId());
+            }
+            for (DSAEvent event : delta.getAdded()) {
+                schedule(trigger, event, now);
+            }
+            for (DSAEvent event : delta.getUpdated()) {
+                schedule(trigger, event, now);
+            }
+        }
+    }
+
+    synchronized void close() {
+        closed = true;
+        for (Armed trigger : armed.values()) {
+            trigger.cancelAll();
+        }
+        armed.clear();
+    }
+
+    private static Trigger parse(String kind, long minutes, String title, String location) {
+        return new Trigger(Trigger.Kind.valueOf(kind.trim().toUpperCase(Locale.ROOT).replace(' ', '_')), minutes,
+                title == null || title.isEmpty() ? null : Pattern.compile(title),
+                location == null || location.isEmpty() ? null : Pattern.compile(location));
+    }
+
+    private void arm(Node triggerNode, Trigger trigger) {
+        if (closed) {
+            return;
+        }
+        Armed added = new Armed(triggerNode, trigger);
+        armed.put(triggerNode.getName(), added);
+        long now = System.currentTimeMillis();
+        for (DSAEvent event : snapshots.get().getEvents()) {
+            schedule(added, event, now);
+        }
+    }
+
+    /* Schedules the next firing for an event, or for the next occurrence of a recurring one. */
+    private void schedule(Armed trigger, DSAEvent event, long now) {
+        String uid = event.getUniqueId();
+        trigger.cancel(uid);
+        if (!trigger.trigger.matches(event)) {
+            return;
+        }
+        DSAEvent target = event;
+        if (event.getRecurrence() != null) {
+            target = null;
+            Iterator<DSAEvent> occurrences = event.getRecurrence().occurrences(event, now, Long.MAX_VALUE);
+            while (occurrences.hasNext() && target == null) {
+                DSAEvent occurrence = occurrences.next();
+                if (trigger.trigger.fireTime(occurrence) > now) {
+                    target = occurrence;
+                }
+            }
+            if (target == null) {
+                return;
+            }
+        }
+        long fireTime = trigger.trigger.fireTime(target);
+        if (fireTime > now) {
+            DSAEvent fired = target;
+            trigger.timeouts.put(uid, wheel.schedule(fireTime, () -> fire(trigger, uid, fired)));
+        }
+    }
+
+    private synchronized void fire(Armed trigger, String uid, DSAEvent target) {
+        if (trigger.timeouts.remove(uid) == null) {
+            return;
+        }
+        DSAEvent current = snapshots.get().get(uid);
+        if (current == null) {
+            return;
+        }
+        DSAEvent event = current;
+        if (current.getRecurrence() != null) {
+            event = target;
+            schedule(trigger, current, trigger.trigger.fireTime(target));
+        }
+        JsonObject fired = new JsonObject();
+        fired.put("id", event.getUniqueId());
+        fired.put("title", event.getTitle());
+        fired.put("start", EventUtils.instantToTimeString(event.getStart()));
+        fired.put("end", EventUtils.instantToTimeString(event.getEnd()));
+        fired.put("location", event.getLocation());
+        trigger.node.setValue(new Value(fired));
+    }
+
+    private static final class Armed {
+        private final Node node;
+        private final Trigger trigger;
+        private final Map<String, TimingWheel.Timeout> timeouts = new HashMap<>();
+
+        private Armed(Node node, Trigger trigger) {
+            this.node = node;
+            this.trigger = trigger;
+        }
+
+        private void cancel(String uid) {
+            TimingWheel.Timeout timeout = timeouts.remove(uid);
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+
+        private void cancelAll() {
+            for (TimingWheel.Timeout timeout : timeouts.values()) {
+                timeout.cancel();
+            }
+            timeouts.clear();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package org.dsa.iot.calendar;
+
+import org.dsa.iot.calendar.event.DSAEvent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Event mutations of a calendar waiting to be sent to its provider. They are
+ * sent one at a time, in order, so that action handlers never wait on the
+ * provider. A mutation is merged into a queued one for the same event while
+ * that one has not been sent yet, and transient failures are retried with
+ * exponential backoff.
+ * <p>
+ * Created events get a provisional unique ID until the provider assigns
+ * theirs, so that they can be shown, edited and deleted right away.
+ */
+final class WriteBehindQueue {
+    static final String PROVISIONAL_PREFIX = "pending-";
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    enum Kind {
+        CREATE, UPDATE, DELETE
+    }
+
+    /**
+     * Sends mutations to the provider.
+     */
+    interface Sender {
+        /**
+         * @return Unique ID of the event, as assigned by the provider for
+         * created events.
+         * @throws Exception If the provider could not apply the mutation.
+         */
+        String send(Mutation mutation) throws Exception;
+
+        /**
+         * @return Whether sending again may succeed.
+         */
+        boolean isTransient(Exception e);
+
+        /**
+         * Called once a mutation was applied or given up on.
+         *
+         * @param failure Null if the mutation was applied.
+         */
+        void onSettled(Mutation mutation, Exception failure);
+    }
+
+    private final Sender sender;
+    private final Executor executor;
+    private final TimingWheel wheel;
+    private final Deque<Mutation> queue = new ArrayDeque<>();
+    private boolean running;
+
+    WriteBehindQueue(Sender sender, Executor executor, TimingWheel wheel) {
+        this.sender = sender;
+        this.executor = executor;
+        this.wheel = wheel;
+    }
+
+    /**
+     * @param event Event to create, which gets a provisional unique ID.
+     */
+    synchronized CompletableFuture<Void> create(DSAEvent event) {
+        event.setUniqueId(PROVISIONAL_PREFIX + UUID.randomUUID());
+        return enqueue(new Mutation(Kind.CREATE, event.getUniqueId(), null, event.copy()));
+    }
+
+    /**
+     * @param current Event as currently shown.
+     * @param edited  Edited copy of the event.
+     */
+    synchronized CompletableFuture<Void> update(DSAEvent current, DSAEvent edited) {
+        String uid = current.getUniqueId();
+        Mutation pending = findPending(uid);
+        if (pending != null && pending.kind != Kind.DELETE) {
+            // Creates absorb edits; updates keep the base of the first edit and send the latest fields.
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            pending.event = edited.copy();
+            pending.waiters.add(future);
+            return future;
+        }
+        return enqueue(new Mutation(Kind.UPDATE, uid, current.copy(), edited.copy()));
+    }
+
+    /**
+     * @param current Event as currently shown.
+     */
+    synchronized CompletableFuture<Void> delete(DSAEvent current) {
+        String uid = current.getUniqueId();
+        Mutation pending = findPending(uid);
+        if (pending != null && pending.kind == Kind.CREATE) {
+            // Never sent, so there is nothing to delete.
+            queue.remove(pending);
+            for (CompletableFuture<Void> waiter : pending.waiters) {
+                waiter.complete(null);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        if (pending != null) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            pending.kind = Kind.DELETE;
+            pending.event = null;
+            pending.waiters.add(future);
+            return future;
+        }
+        return enqueue(new Mutation(Kind.DELETE, uid, current.copy(), null));
+    }
+
+    /**
+     * Applies the queued mutations to a set of events, in order.
+     *
+     * @param events Events by unique ID.
+     */
+    synchronized void overlay(Map<String, DSAEvent> events) {
+        for (Mutation mutation : queue) {
+            if (mutation.kind == Kind.DELETE) {
+                events.remove(mutation.uid);
+            } else {
+                events.put(mutation.uid, mutation.event);
+            }
+        }
+    }
+
+    /**
+     * Applies the queued mutations of one event, in order.
+     *
+     * @param uid       Unique ID of the event.
+     * @param confirmed Event as last synced, or null if the provider has none.
+     * @return The event as it should be shown, or null if it is deleted.
+     */
+    synchronized DSAEvent overlay(String uid, DSAEvent confirmed) {
+        DSAEvent shown = confirmed;
+        for (Mutation mutation : queue) {
+            if (mutation.uid.equals(uid)) {
+                shown = mutation.kind == Kind.DELETE ? null : mutation.event;
+            }
+        }
+        return shown;
+    }
+
+    synchronized boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    synchronized int size() {
+        return queue.size();
+    }
+
+    private CompletableFuture<Void> enqueue(Mutation mutation) {
+        queue.addLast(mutation);
+        if (!running) {
+            running = true;
+            executor.execute(this::drain);
+        }
+        return mutation.waiters.get(0);
+    }
+
+    /* Latest queued mutation of an event that has not been handed to the sender yet. */
+    private Mutation findPending(String uid) {
+        Iterator<Mutation> mutations = queue.descendingIterator();
+        while (mutations.hasNext()) {
+            Mutation mutation = mutations.next();
+            if (mutation.uid.equals(uid)) {
+                return running && mutation == queue.peekFirst() ? null : mutation;
+            }
+        }
+        return null;
+    }
+
+    private void drain() {
+        try {
+            drainQueue();
+        } catch (RuntimeException | Error e) {
+            // Leaves the head queued; the next mutation starts draining again.
+            synchronized (this) {
+                running = false;
+            }
+            throw e;
+        }
+    }
+
+    private void drainQueue() {
+        while (true) {
+            Mutation next;
+            synchronized (this) {
+                next = queue.peekFirst();
+                if (next == null) {
+                    running = false;
+                    return;
+                }
+            }
+            Exception failure = null;
+            try {
+                String uid = sender.send(next);
+                if (next.kind == Kind.CREATE && uid != null) {
+                    assign(next.uid, uid);
+                }
+            } catch (Exception e) {
+                if (sender.isTransient(e) && ++next.attempts < MAX_ATTEMPTS) {
+                    long backoff = Math.min(INITIAL_BACKOFF_MILLIS << (next.attempts - 1), MAX_BACKOFF_MILLIS);
+                    wheel.schedule(System.currentTimeMillis() + backoff, () -> executor.execute(this::drain));
+                    return;
+                }
+                failure = e;
+            }
+            List<CompletableFuture<Void>> waiters;
+            synchronized (this) {
+                queue.removeFirst();
+                waiters = new ArrayList<>(next.waiters);
+                if (failure != null && next.kind == Kind.CREATE) {
+                    waiters.addAll(dropDependents(next.uid));
+                }
+            }
+            sender.onSettled(next, failure);
+            for (CompletableFuture<Void> waiter : waiters) {
+                if (failure == null) {
+                    waiter.complete(null);
+                } else {
+                    waiter.completeExceptionally(failure);
+                }
+            }
+        }
+    }
+
+    /* Removes the mutations queued behind a failed create, which the provider has no event for. */
+    private List<CompletableFuture<Void>> dropDependents(String provisional) {
+        List<CompletableFuture<Void>> waiters = new ArrayList<>();
+        Iterator<Mutation> mutations = queue.iterator();
+        while (mutations.hasNext()) {
+            Mutation mutation = mutations.next();
+            if (mutation.uid.equals(provisional)) {
+                mutations.remove();
+                waiters.addAll(mutation.waiters);
+            }
+        }
+        return waiters;
+    }
+
+    /* Moves the mutations queued behind a create to the unique ID the provider assigned. */
+    private synchronized void assign(String provisional, String uid) {
+        for (Mutation mutation : queue) {
+            if (mutation.uid.equals(provisional)) {
+                mutation.uid = uid;
+                if (mutation.base != null) {
+                    mutation.base.setUniqueId(uid);
+                }
+                if (mutation.event != null) {
+                    mutation.event.setUniqueId(uid);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queued change to one event. Its fields are guarded by the queue.
+     */
+    static final class Mutation {
+        private Kind kind;
+        private String uid;
+        private DSAEvent base;
+        private DSAEvent event;
+        private int attempts;
+        private final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+
+        private Mutation(Kind kind, String uid, DSAEvent base, DSAEvent event) {
+            this.kind = kind;
+            this.uid = uid;
+            this.base = base;
+            this.event = event;
+            waiters.add(new CompletableFuture<>());
+        }
+
+        Kind getKind() {
+            return kind;
+        }
+
+        String getUniqueId() {
+            return uid;
+        }
+
+        /**
+         * @return Event as last confirmed by the provider, for updates and
+         * deletes.
+         */
+        DSAEvent getBase() {
+            return base;
+        }
+
+        /**
+         * @return Event to create, or the latest edit of an update.
+         */
+        DSAEvent getEvent() {
+            return event;
+        }
+    }
+}
@@ -5,36 +5,57 @@ import net.fortuna.ical4j.model.*;
 import net.fortuna.ical4j.model.component.VEvent;
 import net.fortuna.ical4j.model.component.VTimeZone;
 import net.fortuna.ical4j.model.parameter.Cn;
+import net.fortuna.ical4j.model.parameter.Value;
 import net.fortuna.ical4j.model.property.Attendee;
 import net.fortuna.ical4j.model.property.Description;
+import net.fortuna.ical4j.model.property.DtEnd;
+import net.fortuna.ical4j.model.property.DtStart;
+import net.fortuna.ical4j.model.property.ExDate;
 import net.fortuna.ical4j.model.property.Location;
+import net.fortuna.ical4j.model.property.RRule;
+import net.fortuna.ical4j.model.property.RecurrenceId;
+import net.fortuna.ical4j.model.property.Summary;
 import net.fortuna.ical4j.model.property.Uid;
 import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.dsa.iot.calendar.BaseCalendar;
+import org.dsa.iot.calendar.Interner;
 import org.dsa.iot.calendar.event.DSAEvent;
+import org.dsa.iot.calendar.event.EventPatch;
+import org.dsa.iot.calendar.event.OccurrenceId;
+import org.dsa.iot.calendar.event.Recurrence;
 import org.dsa.iot.calendar.guest.DSAGuest;
 import org.dsa.iot.dslink.node.Node;
-import org.osaf.caldav4j.CalDAVCollection;
 import org.osaf.caldav4j.CalDAVConstants;
 import org.osaf.caldav4j.exceptions.CalDAV4JException;
 import org.osaf.caldav4j.methods.CalDAV4JMethodFactory;
 import org.osaf.caldav4j.methods.HttpClient;
 import org.osaf.caldav4j.model.request.CalendarQuery;
 import org.osaf.caldav4j.util.GenerateQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class CalDAVCalendar extends BaseCalendar {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CalDAVCalendar.class);
+    private static final TimeZoneRegistry TIME_ZONES = TimeZoneRegistryFactory.getInstance().createRegistry();
+
+    private final MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
     private final HttpClient httpClient;
-    private final CalDAVCollection caldavCollection;
+    private final EventCollection caldavCollection;
 
     public CalDAVCalendar(String host, int port, String path, Node eventsNode) {
         super(eventsNode);
         httpClient = new HttpClient();
+        httpClient.setHttpConnectionManager(connectionManager);
         httpClient.getHostConfiguration().setHost(host, port, "http");
-        caldavCollection = new CalDAVCollection(
+        caldavCollection = new EventCollection(
                 path,
                 (HostConfiguration) httpClient.getHostConfiguration().clone(),
                 new CalDAV4JMethodFactory(),
@@ -44,95 +65,251 @@ public class CalDAVCalendar extends BaseCalendar {
     }
 
     @Override
-    public void createEvent(DSAEvent event) {
-        java.util.Date start = Date.from(event.getStart());
-        java.util.Date end = Date.from(event.getEnd());
-        VEvent vEvent = new VEvent(new Date(start), new Date(end), event.getTitle());
-        if (event.getUniqueId() != null) {
-            // Add existing unique identifier.
-            vEvent.getProperties().add(new Uid(event.getUniqueId()));
+    protected void releaseResources() {
+        connectionManager.shutdown();
+    }
+
+    @Override
+    protected String insertEvent(DSAEvent event) throws CalDAV4JException {
+        String uid = Generators.timeBasedGenerator().generate().toString();
+        caldavCollection.add(httpClient, toVEvent(event, uid), toVTimeZone(event));
+        return uid;
+    }
+
+    @Override
+    protected void removeEvent(DSAEvent event) throws CalDAV4JException {
+        OccurrenceId occurrence = event.getOccurrenceId();
+        if (occurrence != null) {
+            // A moved occurrence lives in the resource of its series, which must keep the other occurrences.
+            caldavCollection.modify(httpClient, occurrence.getSeriesId(), calendar -> cancelOccurrence(calendar, occurrence));
+            return;
+        }
+        try {
+            // This throws an exception, but actually works.
+            caldavCollection.delete(httpClient, Component.VEVENT, event.getUniqueId());
+        } catch (CalDAV4JException ignored) {
+        }
+    }
+
+    /**
+     * CalDAV has no partial updates, so the resource of the event is read and
+     * written back with only the changed properties replaced. Attendee
+     * responses and the properties this link does not sync are kept.
+     */
+    @Override
+    protected void patchEvent(EventPatch patch) throws CalDAV4JException {
+        OccurrenceId occurrence = patch.getCurrent().getOccurrenceId();
+        String uid = occurrence != null ? occurrence.getSeriesId() : patch.getUniqueId();
+        caldavCollection.modify(httpClient, uid, calendar -> {
+            VEvent vEvent = findEvent(calendar, occurrence);
+            if (vEvent == null) {
+                throw new IllegalStateException("No event " + patch.getUniqueId() + " in its resource");
+            }
+            applyPatch(vEvent, patch);
+        });
+    }
+
+    /**
+     * @param occurrence Moved occurrence to find, or null for the master or
+     *                   single event, the one without a RECURRENCE-ID.
+     */
+    private static VEvent findEvent(Calendar calendar, OccurrenceId occurrence) {
+        for (Object component : calendar.getComponents(Component.VEVENT)) {
+            VEvent vEvent = (VEvent) component;
+            RecurrenceId recurrenceId = vEvent.getRecurrenceId();
+            if (occurrence == null ? recurrenceId == null
+                    : recurrenceId != null && recurrenceId.getDate().getTime() == occurrence.getOriginalStart()) {
+                return vEvent;
+            }
+        }
+        return null;
+    }
+
+    /* Removes a moved occurrence from its series and excludes its original start. */
+    private static void cancelOccurrence(Calendar calendar, OccurrenceId occurrence) {
+        VEvent moved = findEvent(calendar, occurrence);
+        if (moved != null) {
+            calendar.getComponents().remove(moved);
+        }
+        VEvent master = findEvent(calendar, null);
+        if (master == null) {
+            throw new IllegalStateException("No series " + occurrence.getSeriesId() + " in its resource");
+        }
+        DateList excluded = new DateList();
+        excluded.setUtc(true);
+        excluded.add(dateTime(occurrence.getOriginalStart(), null));
+        master.getProperties().add(new ExDate(excluded));
+    }
+
+    private static void applyPatch(VEvent vEvent, EventPatch patch) {
+        DSAEvent edited = patch.getEdited();
+        PropertyList properties = vEvent.getProperties();
+        if (patch.contains(EventPatch.Field.TITLE)) {
+            replace(properties, Property.SUMMARY, edited.getTitle() != null ? new Summary(edited.getTitle()) : null);
+        }
+        if (patch.contains(EventPatch.Field.DESCRIPTION)) {
+            replace(properties, Property.DESCRIPTION, new Description(edited.getDescription()));
+        }
+        if (patch.contains(EventPatch.Field.LOCATION)) {
+            replace(properties, Property.LOCATION, edited.getLocation() != null ? new Location(edited.getLocation()) : null);
+        }
+        if (patch.changesTime()) {
+            // Keeps the zone the event is stored in, so other clients see the same local times.
+            TimeZone timeZone = vEvent.getStartDate() != null ? vEvent.getStartDate().getTimeZone() : null;
+            replace(properties, Property.DTSTART, new DtStart(dateTime(edited.getStartMillis(), timeZone)));
+            replace(properties, Property.DURATION, null);
+            replace(properties, Property.DTEND, new DtEnd(dateTime(edited.getEndMillis(), timeZone)));
+        }
+    }
+
+    /* Replaces every property of a name, or removes them when the replacement is null. */
+    private static void replace(PropertyList properties, String name, Property property) {
+        properties.removeAll(properties.getProperties(name));
+        if (property != null) {
+            properties.add(property);
+        }
+    }
+
+    private static DateTime dateTime(long millis, TimeZone timeZone) {
+        DateTime dateTime = new DateTime(millis);
+        if (timeZone != null) {
+            dateTime.setTimeZone(timeZone);
         } else {
-            // Generate a new unique identifier.
-            vEvent.getProperties().add(new Uid(Generators.timeBasedGenerator().generate().toString()));
+            dateTime.setUtc(true);
         }
+        return dateTime;
+    }
+
+    private static VEvent toVEvent(DSAEvent event, String uid) {
+        // Local times with a TZID, so recurring events keep their local time across DST changes.
+        TimeZone timeZone = timeZoneOf(event);
+        DateTime start = dateTime(event.getStartMillis(), timeZone);
+        DateTime end = dateTime(event.getEndMillis(), timeZone);
+        VEvent vEvent = new VEvent(start, end, event.getTitle());
+        vEvent.getProperties().add(new Uid(uid));
         vEvent.getProperties().add(new Description(event.getDescription()));
         vEvent.getProperties().add(new Location(event.getLocation()));
         for (DSAGuest guest : event.getGuests()) {
             Attendee attendee = new Attendee(URI.create("mailto:" + guest.getEmail()));
-            attendee.getParameters().add(new Cn(guest.getDisplayName()));
+            if (guest.getDisplayName() != null) {
+                attendee.getParameters().add(new Cn(guest.getDisplayName()));
+            }
             vEvent.getProperties().add(attendee);
         }
-        VTimeZone vTimeZone = TimeZoneRegistryFactory.getInstance().createRegistry().getTimeZone(event.getTimeZone()).getVTimeZone();
-        try {
-            caldavCollection.add(httpClient, vEvent, vTimeZone);
-        } catch (CalDAV4JException e) {
-            e.printStackTrace();
+        Recurrence recurrence = event.getRecurrence();
+        if (recurrence != null) {
+            try {
+                vEvent.getProperties().add(new RRule(new Recur(recurrence.getRule())));
+            } catch (ParseException e) {
+                throw new IllegalArgumentException("Invalid rule " + recurrence.getRule(), e);
+            }
+            if (recurrence.getExcluded().length > 0) {
+                DateList excluded = new DateList(Value.DATE_TIME, timeZone);
+                if (timeZone == null) {
+                    excluded.setUtc(true);
+                }
+                for (long excludedStart : recurrence.getExcluded()) {
+                    excluded.add(dateTime(excludedStart, timeZone));
+                }
+                vEvent.getProperties().add(new ExDate(excluded));
+            }
         }
+        return vEvent;
     }
 
-    @Override
-    public void deleteEvent(String uid, boolean destroyNode) {
-        try {
-            // This throws an exception, but actually works.
-            caldavCollection.delete(httpClient, Component.VEVENT, uid);
-        } catch (CalDAV4JException ignored) {
-        }
-        if (destroyNode) {
-            eventsNode.removeChild(uid, false);
-        }
+    private static VTimeZone toVTimeZone(DSAEvent event) {
+        TimeZone timeZone = timeZoneOf(event);
+        return timeZone != null ? timeZone.getVTimeZone() : null;
+    }
+
+    /* Zone of an event in the iCalendar registry, or null for UTC and unknown zones. */
+    private static TimeZone timeZoneOf(DSAEvent event) {
+        return event.getTimeZone() != null ? TIME_ZONES.getTimeZone(event.getTimeZone()) : null;
     }
 
     @Override
-    public List<DSAEvent> getEvents() {
+    public List<DSAEvent> getEvents() throws CalDAV4JException {
         List<DSAEvent> events = new ArrayList<>();
-        try {
-            GenerateQuery genQuery = new GenerateQuery();
-            CalendarQuery query = genQuery.generate();
-            List<Calendar> calendars = caldavCollection.queryCalendars(httpClient, query);
-            for (Calendar calendar : calendars) {
-                String timeZone;
-                VTimeZone vTimeZone = (VTimeZone) calendar.getComponent(Component.VTIMEZONE);
-                if (vTimeZone != null) {
-                    timeZone = vTimeZone.getTimeZoneId().getValue();
-                } else {
-                    timeZone = TimeZone.getDefault().getID();
+        Map<String, DSAEvent> masters = new HashMap<>();
+        Map<String, List<Long>> exceptions = new HashMap<>();
+        GenerateQuery genQuery = new GenerateQuery();
+        CalendarQuery query = genQuery.generate();
+        List<Calendar> calendars = caldavCollection.queryCalendars(httpClient, query);
+        for (Calendar calendar : calendars) {
+            String timeZone;
+            VTimeZone vTimeZone = (VTimeZone) calendar.getComponent(Component.VTIMEZONE);
+            if (vTimeZone != null) {
+                timeZone = vTimeZone.getTimeZoneId().getValue();
+            } else {
+                timeZone = TimeZone.getDefault().getID();
+            }
+            ComponentList componentList = calendar.getComponents().getComponents(Component.VEVENT);
+            for (VEvent vEvent : (Iterable<VEvent>) componentList) {
+                if (vEvent.getUid() == null || vEvent.getSummary() == null) {
+                    continue;
                 }
-                ComponentList componentList = calendar.getComponents().getComponents(Component.VEVENT);
-                for (VEvent vEvent : (Iterable<VEvent>) componentList) {
-                    if (vEvent.getUid() == null || vEvent.getSummary() == null) {
-                        continue;
-                    }
-                    if (vEvent.getStartDate() == null || vEvent.getEndDate() == null) {
-                        throw new IllegalArgumentException("Start or end date can not be null.");
-                    }
-                    DSAEvent event = new DSAEvent(
-                            vEvent.getSummary().getValue(),
-                            vEvent.getStartDate().getDate().toInstant(),
-                            vEvent.getEndDate().getDate().toInstant()
-                    );
-                    event.setUniqueId(vEvent.getUid().getValue());
-                    if (vEvent.getDescription() != null) {
-                        event.setDescription(vEvent.getDescription().getValue());
-                    }
-                    if (vEvent.getLocation() != null) {
-                        event.setLocation(vEvent.getLocation().getValue());
+                if (vEvent.getStartDate() == null || vEvent.getEndDate() == null) {
+                    throw new IllegalArgumentException("Start or end date can not be null.");
+                }
+                DSAEvent event = new DSAEvent(
+                        vEvent.getSummary().getValue(),
+                        vEvent.getStartDate().getDate().toInstant(),
+                        vEvent.getEndDate().getDate().toInstant()
+                );
+                String uid = vEvent.getUid().getValue();
+                RecurrenceId recurrenceId = vEvent.getRecurrenceId();
+                if (recurrenceId != null) {
+                    // Modified occurrence, kept as a separate event and excluded from its series.
+                    long originalStart = recurrenceId.getDate().getTime();
+                    exceptions.computeIfAbsent(uid, k -> new ArrayList<>()).add(originalStart);
+                    event.setOccurrenceId(new OccurrenceId(uid, originalStart));
+                    uid = Recurrence.occurrenceId(uid, originalStart);
+                } else if (vEvent.getProperty(Property.RRULE) != null) {
+                    try {
+                        event.setRecurrence(parseRecurrence(vEvent));
+                        masters.put(uid, event);
+                    } catch (IllegalArgumentException e) {
+                        LOGGER.debug("Keeping only the first occurrence of " + uid, e);
                     }
-                    for (Object prop : vEvent.getProperties()) {
-                        if (prop instanceof Attendee) {
-                            DSAGuest guest = new DSAGuest();
-                            guest.setDisplayName(((Attendee) prop).getName());
-                            guest.setEmail(((Attendee) prop).getValue());
-                            event.getGuests().add(guest);
-                        }
+                }
+                event.setUniqueId(uid);
+                if (vEvent.getDescription() != null) {
+                    event.setDescription(vEvent.getDescription().getValue());
+                }
+                if (vEvent.getLocation() != null) {
+                    event.setLocation(vEvent.getLocation().getValue());
+                }
+                for (Object prop : vEvent.getProperties()) {
+                    if (prop instanceof Attendee) {
+                        Attendee attendee = (Attendee) prop;
+                        Parameter cn = attendee.getParameter(Parameter.CN);
+                        DSAGuest guest = new DSAGuest(null, cn != null ? cn.getValue() : null,
+                                DSAGuest.toEmail(attendee.getValue()), false);
+                        event.getGuests().add(Interner.GUESTS.intern(guest));
                     }
-                    event.setTimeZone(timeZone);
-                    events.add(event);
                 }
+                event.setTimeZone(timeZone);
+                events.add(event);
+            }
+        }
+        for (Map.Entry<String, List<Long>> entry : exceptions.entrySet()) {
+            DSAEvent master = masters.get(entry.getKey());
+            if (master != null) {
+                master.setRecurrence(master.getRecurrence().excluding(entry.getValue()));
             }
-        } catch (CalDAV4JException e) {
-            e.printStackTrace();
         }
 
         return events;
     }
+
+    private static Recurrence parseRecurrence(VEvent vEvent) {
+        Recurrence recurrence = Recurrence.parse(vEvent.getProperty(Property.RRULE).getValue());
+        List<Long> excluded = new ArrayList<>();
+        for (Object exDate : vEvent.getProperties().getProperties(Property.EXDATE)) {
+            for (Object date : ((ExDate) exDate).getDates()) {
+                excluded.add(((java.util.Date) date).getTime());
+            }
+        }
+        return recurrence.excluding(excluded);
+    }
 }
@@ -0,0 +1,40 @@
+package org.dsa.iot.calendar.caldav;
+
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Component;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.osaf.caldav4j.CalDAVCollection;
+import org.osaf.caldav4j.exceptions.CalDAV4JException;
+import org.osaf.caldav4j.methods.CalDAV4JMethodFactory;
+import org.osaf.caldav4j.methods.HttpClient;
+import org.osaf.caldav4j.model.response.CalDAVResource;
+
+import java.util.function.Consumer;
+
+/**
+ * Calendar collection that edits events inside the resource they are stored
+ * in, so the properties this link does not sync, such as ORGANIZER, PARTSTAT
+ * or SEQUENCE, and the other occurrences of a series are written back as they
+ * were.
+ */
+class EventCollection extends CalDAVCollection {
+    EventCollection(String path, HostConfiguration hostConfiguration, CalDAV4JMethodFactory methodFactory, String prodId) {
+        super(path, hostConfiguration, methodFactory, prodId);
+    }
+
+    /**
+     * Reads the resource holding an event, changes it and writes it back.
+     * The PUT is conditional on the ETag the resource was just read with, so
+     * it fails instead of overwriting a change made in between. Changes made
+     * since the last sync are kept, except for the changed properties.
+     *
+     * @param uid    UID of the event, or of the series of an occurrence.
+     * @param change Changes the calendar of the resource in place.
+     */
+    void modify(HttpClient httpClient, String uid, Consumer<Calendar> change) throws CalDAV4JException {
+        CalDAVResource resource = getCalDAVResourceByUID(httpClient, Component.VEVENT, uid);
+        Calendar calendar = resource.getCalendar();
+        change.accept(calendar);
+        put(httpClient, calendar, stripHost(resource.getResourceMetadata().getHref()), resource.getResourceMetadata().getETag());
+    }
+}
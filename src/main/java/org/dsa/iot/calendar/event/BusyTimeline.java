@@ -0,0 +1,196 @@
+package org.dsa.iot.calendar.event;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Busy slots of a calendar over a fixed horizon, one bit per slot. Each
+ * slot also counts the events covering it, so events can be added and
+ * removed one at a time as they change. Bitsets of several calendars
+ * combine word by word with {@link #or(List)} and {@link #and(List)}.
+ * <p>
+ * Instances are not thread safe. Calendars change a {@link #copy()} and
+ * publish it once done.
+ */
+public final class BusyTimeline {
+    private static final int WORD_SHIFT = 6;
+
+    private final long origin;
+    private final long resolution;
+    private final int slotCount;
+    private final int[] occupancy;
+    private final long[] bits;
+
+    /**
+     * @param origin     Start of the first slot.
+     * @param resolution Length of every slot.
+     * @param slotCount  Number of slots.
+     */
+    public BusyTimeline(Instant origin, Duration resolution, int slotCount) {
+        if (resolution.toMillis() <= 0) {
+            throw new IllegalArgumentException("Resolution must be at least a millisecond");
+        }
+        this.origin = origin.toEpochMilli();
+        this.resolution = resolution.toMillis();
+        this.slotCount = slotCount;
+        this.occupancy = new int[slotCount];
+        this.bits = new long[wordCount(slotCount)];
+    }
+
+    private BusyTimeline(BusyTimeline other) {
+        this.origin = other.origin;
+        this.resolution = other.resolution;
+        this.slotCount = other.slotCount;
+        this.occupancy = other.occupancy.clone();
+        this.bits = other.bits.clone();
+    }
+
+    public BusyTimeline copy() {
+        return new BusyTimeline(this);
+    }
+
+    public Instant getOrigin() {
+        return Instant.ofEpochMilli(origin);
+    }
+
+    public Duration getResolution() {
+        return Duration.ofMillis(resolution);
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * @param time Any time.
+     * @return Start of the slot containing the time.
+     */
+    public Instant slotStart(Instant time) {
+        return Instant.ofEpochMilli(origin + Math.floorDiv(time.toEpochMilli() - origin, resolution) * resolution);
+    }
+
+    /**
+     * Marks the slots the event touches as busy.
+     */
+    public void add(DSAEvent event) {
+        mark(event, 1);
+    }
+
+    /**
+     * Releases the slots of an event previously added. Slots stay busy while
+     * another event covers them.
+     */
+    public void remove(DSAEvent event) {
+        mark(event, -1);
+    }
+
+    private void mark(DSAEvent event, int step) {
+        long first = Math.floorDiv(event.getStartMillis() - origin, resolution);
+        long last = Math.floorDiv(event.getEndMillis() - origin + resolution - 1, resolution);
+        int from = (int) Math.min(slotCount, Math.max(0, first));
+        int to = (int) Math.max(0, Math.min(slotCount, last));
+        for (int slot = from; slot < to; slot++) {
+            occupancy[slot] += step;
+            if (occupancy[slot] > 0) {
+                bits[slot >> WORD_SHIFT] |= 1L << slot;
+            } else {
+                occupancy[slot] = 0;
+                bits[slot >> WORD_SHIFT] &= ~(1L << slot);
+            }
+        }
+    }
+
+    public boolean isBusy(Instant time) {
+        long slot = Math.floorDiv(time.toEpochMilli() - origin, resolution);
+        return (word(slot) & 1L) != 0;
+    }
+
+    /**
+     * @param from  Time inside the first slot of the result.
+     * @param count Number of slots.
+     * @return Bitset where bit {@code i} is set if slot {@code i} after the
+     * one containing {@code from} is busy. Slots outside the horizon are free.
+     */
+    public long[] getBusy(Instant from, int count) {
+        long firstSlot = Math.floorDiv(from.toEpochMilli() - origin, resolution);
+        long[] result = new long[wordCount(count)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = word(firstSlot + ((long) i << WORD_SHIFT));
+        }
+        int tail = count & (Long.SIZE - 1);
+        if (tail != 0) {
+            result[result.length - 1] &= (1L << tail) - 1;
+        }
+        return result;
+    }
+
+    /* 64 slots starting at any slot index, reading zeros outside the horizon. */
+    private long word(long slot) {
+        long index = Math.floorDiv(slot, Long.SIZE);
+        int shift = (int) Math.floorMod(slot, Long.SIZE);
+        long low = wordAt(index) >>> shift;
+        if (shift == 0) {
+            return low;
+        }
+        return low | (wordAt(index + 1) << (Long.SIZE - shift));
+    }
+
+    private long wordAt(long index) {
+        return index >= 0 && index < bits.length ? bits[(int) index] : 0L;
+    }
+
+    /**
+     * @return Slots busy in any of the bitsets.
+     */
+    public static long[] or(List<long[]> bitsets) {
+        long[] result = new long[maxLength(bitsets)];
+        for (long[] bitset : bitsets) {
+            for (int i = 0; i < bitset.length; i++) {
+                result[i] |= bitset[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Slots busy in all of the bitsets.
+     */
+    public static long[] and(List<long[]> bitsets) {
+        long[] result = new long[maxLength(bitsets)];
+        if (bitsets.isEmpty()) {
+            return result;
+        }
+        System.arraycopy(bitsets.get(0), 0, result, 0, bitsets.get(0).length);
+        for (long[] bitset : bitsets) {
+            for (int i = 0; i < result.length; i++) {
+                result[i] &= i < bitset.length ? bitset[i] : 0L;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The first {@code count} bits as a string of '0' (free) and '1'
+     * (busy) characters.
+     */
+    public static String toBitString(long[] bitset, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append((bitset[i >> WORD_SHIFT] & (1L << i)) != 0 ? '1' : '0');
+        }
+        return builder.toString();
+    }
+
+    private static int maxLength(List<long[]> bitsets) {
+        int length = 0;
+        for (long[] bitset : bitsets) {
+            length = Math.max(length, bitset.length);
+        }
+        return length;
+    }
+
+    private static int wordCount(int slots) {
+        return (slots + Long.SIZE - 1) / Long.SIZE;
+    }
+}
@@ -0,0 +1,161 @@
+package org.dsa.iot.calendar.event;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Bounded log of the changes applied to a calendar by its syncs, each with a
+ * sequence number. Subscribers get every change as it is appended and can
+ * resume from the last sequence number they saw, as long as it is still
+ * retained. Events are copied into the log, so retained changes don't keep
+ * old snapshots alive.
+ * <p>
+ * The log is not persisted, so the sequence numbers of a run start above the
+ * start time of the run. A number handed out by an earlier run is below all
+ * numbers of the current one and is reported as a gap instead of replaying
+ * unrelated changes.
+ */
+public final class ChangeLog {
+    public enum Type {
+        ADDED, UPDATED, REMOVED
+    }
+
+    /* Sequence numbers reserved per millisecond since the epoch. Keeps the
+     * numbers of later runs apart while staying exact as a JSON double. */
+    private static final long SEQUENCES_PER_MILLI = 1000;
+
+    private final int capacity;
+    private final Deque<Change> changes = new ArrayDeque<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private long lastSequence;
+
+    /**
+     * @param capacity Number of most recent changes retained for resuming.
+     */
+    public ChangeLog(int capacity) {
+        this(capacity, System.currentTimeMillis() * SEQUENCES_PER_MILLI);
+    }
+
+    /**
+     * @param capacity      Number of most recent changes retained for resuming.
+     * @param firstSequence Sequence number before the first change.
+     */
+    ChangeLog(int capacity, long firstSequence) {
+        this.capacity = capacity;
+        this.lastSequence = firstSequence;
+    }
+
+    /**
+     * Records the changes of a sync and hands them to every subscriber.
+     */
+    public synchronized void append(EventDelta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        List<Change> appended = new ArrayList<>();
+        for (DSAEvent event : delta.getAdded()) {
+            appended.add(new Change(++lastSequence, Type.ADDED, event));
+        }
+        for (DSAEvent event : delta.getUpdated()) {
+            appended.add(new Change(++lastSequence, Type.UPDATED, event));
+        }
+        for (DSAEvent event : delta.getRemoved()) {
+            appended.add(new Change(++lastSequence, Type.REMOVED, event));
+        }
+        for (Change change : appended) {
+            changes.addLast(change);
+            if (changes.size() > capacity) {
+                changes.removeFirst();
+            }
+        }
+        List<Change> published = Collections.unmodifiableList(appended);
+        for (Listener listener : listeners) {
+            listener.onChanges(published);
+        }
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Subscribes to the changes appended from now on, after replaying the
+     * retained changes following {@code since}. No change is missed or
+     * delivered twice between the replay and the live changes.
+     *
+     * @param since    Last sequence number seen, or a negative number to
+     *                 skip the replay.
+     * @param listener Gets the changes of each sync; it must not block.
+     */
+    public synchronized void subscribe(long since, Listener listener) {
+        if (since >= 0) {
+            long first = changes.isEmpty() ? lastSequence + 1 : changes.getFirst().getSequence();
+            if (since > lastSequence || since < first - 1) {
+                listener.onGap(lastSequence);
+            } else {
+                List<Change> replay = new ArrayList<>();
+                for (Change change : changes) {
+                    if (change.getSequence() > since) {
+                        replay.add(change);
+                    }
+                }
+                if (!replay.isEmpty()) {
+                    listener.onChanges(Collections.unmodifiableList(replay));
+                }
+            }
+        }
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public interface Listener {
+        /**
+         * @param changes Changes in sequence order.
+         */
+        void onChanges(List<Change> changes);
+
+        /**
+         * Called instead of a replay when the changes after the requested
+         * sequence number were already dropped, or the number is from a
+         * different run. The subscriber should rescan the events.
+         *
+         * @param lastSequence Sequence number of the last change logged.
+         */
+        void onGap(long lastSequence);
+    }
+
+    public static final class Change {
+        private final long sequence;
+        private final Type type;
+        private final DSAEvent event;
+
+        private Change(long sequence, Type type, DSAEvent event) {
+            this.sequence = sequence;
+            this.type = type;
+            this.event = event.copy();
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return The new version of the event, or its last version if it
+         * was removed.
+         */
+        public DSAEvent getEvent() {
+            return event;
+        }
+    }
+}
@@ -1,37 +1,47 @@
 package org.dsa.iot.calendar.event;
 
 import org.dsa.iot.calendar.DSAIdentifier;
+import org.dsa.iot.calendar.Interner;
 import org.dsa.iot.calendar.guest.DSAGuest;
 import org.dsa.iot.dslink.util.json.JsonArray;
 import org.dsa.iot.dslink.util.json.JsonObject;
 
-import java.time.Clock;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.TimeZone;
 
 public class DSAEvent {
     private String uniqueId;
     private String title;
     private String description;
-    private Instant start;
-    private Instant end;
+    private long start;
+    private long end;
     private String timeZone;
     private DSAIdentifier calendarIdentifier;
     private boolean readOnly;
     private String location;
-    private List<DSAGuest> guests;
-
-    protected Clock clock;
+    private boolean detailed = true;
+    private Recurrence recurrence;
+    private OccurrenceId occurrenceId;
+    private VersionedList<DSAGuest> guests;
+    private JsonArray guestsJson;
+    private int guestsJsonVersion;
 
     public DSAEvent(String title, Instant start, Instant end) {
         this.title = title;
-        this.start = start;
-        this.end = end;
+        this.start = start.toEpochMilli();
+        this.end = end.toEpochMilli();
         timeZone = TimeZone.getDefault().getID();
-        guests = new ArrayList<>();
-        clock = Clock.systemDefaultZone();
+        guests = new VersionedList<>();
+    }
+
+    /**
+     * For views that read their fields from elsewhere and override every
+     * getter.
+     */
+    DSAEvent() {
     }
 
     /**
@@ -42,9 +52,15 @@ public class DSAEvent {
      * @return True if the datetime is within this event's range.
      */
     public final boolean isInRange(Instant start, Instant end) {
-        TimeRange eventRange = new TimeRange(this.start, this.end);
-        TimeRange requestedRange = new TimeRange(start, end);
-        return TimeRange.areOverlapping(eventRange, requestedRange);
+        return isInRange(start.toEpochMilli(), end.toEpochMilli());
+    }
+
+    /**
+     * Same as {@link #isInRange(Instant, Instant)} on epoch milliseconds,
+     * without allocating.
+     */
+    public final boolean isInRange(long start, long end) {
+        return TimeRange.overlaps(getStartMillis(), getEndMillis(), start, end);
     }
 
     public String getUniqueId() {
@@ -72,11 +88,15 @@ public class DSAEvent {
     }
 
     public Instant getStart() {
+        return Instant.ofEpochMilli(start);
+    }
+
+    public long getStartMillis() {
         return start;
     }
 
     public void setStart(Instant start) {
-        this.start = start;
+        this.start = start.toEpochMilli();
     }
 
     public String getTimeZone() {
@@ -84,7 +104,7 @@ public class DSAEvent {
     }
 
     public void setTimeZone(String timeZone) {
-        this.timeZone = timeZone;
+        this.timeZone = Interner.TIME_ZONES.intern(timeZone);
     }
 
     public DSAIdentifier getCalendar() {
@@ -111,28 +131,235 @@ public class DSAEvent {
         this.location = location;
     }
 
+    /**
+     * @return False if the event was synced as a header, without its
+     * description and guests.
+     */
+    public boolean isDetailed() {
+        return detailed;
+    }
+
+    public void setDetailed(boolean detailed) {
+        this.detailed = detailed;
+    }
+
+    /**
+     * @return Rule of a recurring master event, or null for single events
+     * and occurrences.
+     */
+    public Recurrence getRecurrence() {
+        return recurrence;
+    }
+
+    public void setRecurrence(Recurrence recurrence) {
+        this.recurrence = recurrence;
+    }
+
+    /**
+     * @return Series and original start of a modified occurrence stored as
+     * an event of its own, or null.
+     */
+    public OccurrenceId getOccurrenceId() {
+        return occurrenceId;
+    }
+
+    public void setOccurrenceId(OccurrenceId occurrenceId) {
+        this.occurrenceId = occurrenceId;
+    }
+
     public List<DSAGuest> getGuests() {
         return guests;
     }
 
-    public JsonArray serializeGuests() {
-        JsonArray guestsJson = new JsonArray();
-        for (DSAGuest guest : guests) {
-            JsonObject guestJson = new JsonObject();
-            guestJson.put("uid", guest.getUniqueId());
-            guestJson.put("name", guest.getDisplayName());
-            guestJson.put("email", guest.getEmail());
-            guestJson.put("organizer", guest.isOrganizer());
-            guestsJson.add(guestJson);
+    /**
+     * @param email Email address, compared ignoring case.
+     * @return Whether the address is one of the guests of this event.
+     */
+    public boolean hasGuest(String email) {
+        for (DSAGuest guest : getGuests()) {
+            if (email.equalsIgnoreCase(DSAGuest.toEmail(guest.getEmail()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Serializes the guests once per version of the guest list. The returned
+     * array is shared between the event node and action results and must not
+     * be modified.
+     *
+     * @return Guests as JSON.
+     */
+    public synchronized JsonArray serializeGuests() {
+        if (guestsJson == null || guestsJsonVersion != guests.version()) {
+            guestsJson = GuestList.serialize(guests);
+            guestsJsonVersion = guests.version();
         }
         return guestsJson;
     }
 
     public Instant getEnd() {
+        return Instant.ofEpochMilli(end);
+    }
+
+    public long getEndMillis() {
         return end;
     }
 
     public void setEnd(Instant end) {
-        this.end = end;
+        this.end = end.toEpochMilli();
+    }
+
+    /**
+     * Compares every synced field of two events.
+     *
+     * @param other Event to compare with.
+     * @return True if both events would be displayed identically.
+     */
+    public boolean contentEquals(DSAEvent other) {
+        return Objects.equals(getUniqueId(), other.getUniqueId())
+                && Objects.equals(getTitle(), other.getTitle())
+                && Objects.equals(getDescription(), other.getDescription())
+                && getStartMillis() == other.getStartMillis()
+                && getEndMillis() == other.getEndMillis()
+                && Objects.equals(getTimeZone(), other.getTimeZone())
+                && Objects.equals(getCalendar(), other.getCalendar())
+                && isReadOnly() == other.isReadOnly()
+                && Objects.equals(getLocation(), other.getLocation())
+                && isDetailed() == other.isDetailed()
+                && Objects.equals(getRecurrence(), other.getRecurrence())
+                && Objects.equals(getOccurrenceId(), other.getOccurrenceId())
+                && Objects.equals(getGuests(), other.getGuests());
+    }
+
+    /**
+     * Events are equal when their content is, so a view over a snapshot row
+     * equals the event the row was built from.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DSAEvent)) {
+            return false;
+        }
+        return contentEquals((DSAEvent) o);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getUniqueId(), getStartMillis(), getEndMillis());
+    }
+
+    /**
+     * @return Mutable copy of this event. Copies of snapshot views don't keep
+     * the snapshot alive.
+     */
+    public DSAEvent copy() {
+        DSAEvent copy = new DSAEvent(getTitle(), getStart(), getEnd());
+        copy.setUniqueId(getUniqueId());
+        copy.setDescription(getDescription());
+        copy.setTimeZone(getTimeZone());
+        copy.setCalendar(getCalendar());
+        copy.setReadOnly(isReadOnly());
+        copy.setLocation(getLocation());
+        copy.setDetailed(isDetailed());
+        copy.setRecurrence(getRecurrence());
+        copy.setOccurrenceId(getOccurrenceId());
+        copy.getGuests().addAll(getGuests());
+        return copy;
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.put("uid", getUniqueId());
+        json.put("title", getTitle());
+        json.put("description", getDescription());
+        json.put("start", getStartMillis());
+        json.put("end", getEndMillis());
+        json.put("timeZone", getTimeZone());
+        DSAIdentifier calendar = getCalendar();
+        if (calendar != null) {
+            json.put("calendarId", calendar.getUid());
+            json.put("calendar", calendar.getTitle());
+        }
+        json.put("readOnly", isReadOnly());
+        json.put("location", getLocation());
+        json.put("detailed", isDetailed());
+        Recurrence rule = getRecurrence();
+        if (rule != null) {
+            json.put("recurrence", rule.getRule());
+            JsonArray excluded = new JsonArray();
+            for (long start : rule.getExcluded()) {
+                excluded.add(start);
+            }
+            json.put("excluded", excluded);
+        }
+        OccurrenceId occurrence = getOccurrenceId();
+        if (occurrence != null) {
+            json.put("seriesId", occurrence.getSeriesId());
+            json.put("originalStart", occurrence.getOriginalStart());
+        }
+        json.put("guests", serializeGuests());
+        return json;
+    }
+
+    /* Array list exposing its modification count, including replacements. */
+    private static final class VersionedList<E> extends ArrayList<E> {
+        @Override
+        public E set(int index, E element) {
+            modCount++;
+            return super.set(index, element);
+        }
+
+        int version() {
+            return modCount;
+        }
+    }
+
+    public static DSAEvent fromJson(JsonObject json) {
+        Instant start = Instant.ofEpochMilli(((Number) json.get("start")).longValue());
+        Instant end = Instant.ofEpochMilli(((Number) json.get("end")).longValue());
+        DSAEvent event = new DSAEvent(json.get("title"), start, end);
+        event.setUniqueId(json.get("uid"));
+        event.setDescription(json.get("description"));
+        event.setTimeZone(json.get("timeZone"));
+        String calendarId = json.get("calendarId");
+        if (calendarId != null) {
+            event.setCalendar(Interner.IDENTIFIERS.intern(new DSAIdentifier(calendarId, json.get("calendar"))));
+        }
+        Boolean readOnly = json.get("readOnly");
+        event.setReadOnly(readOnly != null && readOnly);
+        event.setLocation(json.get("location"));
+        Boolean detailed = json.get("detailed");
+        event.setDetailed(detailed == null || detailed);
+        String rule = json.get("recurrence");
+        if (rule != null) {
+            List<Long> excluded = new ArrayList<>();
+            JsonArray excludedJson = json.get("excluded");
+            if (excludedJson != null) {
+                for (int i = 0; i < excludedJson.size(); i++) {
+                    excluded.add(((Number) excludedJson.get(i)).longValue());
+                }
+            }
+            event.setRecurrence(Recurrence.parse(rule).excluding(excluded));
+        }
+        String seriesId = json.get("seriesId");
+        if (seriesId != null) {
+            event.setOccurrenceId(new OccurrenceId(seriesId, ((Number) json.get("originalStart")).longValue()));
+        }
+        JsonArray guestsJson = json.get("guests");
+        if (guestsJson != null) {
+            for (int i = 0; i < guestsJson.size(); i++) {
+                JsonObject guestJson = guestsJson.get(i);
+                Boolean organizer = guestJson.get("organizer");
+                DSAGuest guest = new DSAGuest(guestJson.get("uid"), guestJson.get("name"), guestJson.get("email"),
+                        organizer != null && organizer);
+                event.getGuests().add(Interner.GUESTS.intern(guest));
+            }
+        }
+        return event;
     }
 }
@@ -0,0 +1,59 @@
+package org.dsa.iot.calendar.event;
+
+/**
+ * Position in the order of a snapshot, which sorts events by start time and
+ * then unique ID. Paged queries hand out the cursor of the last row and
+ * resume right after it.
+ */
+public final class EventCursor {
+    private static final char SEPARATOR = '|';
+
+    private final long start;
+    private final String uid;
+
+    private EventCursor(long start, String uid) {
+        this.start = start;
+        this.uid = uid;
+    }
+
+    public static String of(DSAEvent event) {
+        return Long.toString(event.getStartMillis()) + SEPARATOR + (event.getUniqueId() != null ? event.getUniqueId() : "");
+    }
+
+    /**
+     * @param cursor Cursor returned by {@link #of(DSAEvent)}.
+     * @return The parsed cursor.
+     * @throws IllegalArgumentException If the cursor is malformed.
+     */
+    public static EventCursor parse(String cursor) {
+        int separator = cursor.indexOf(SEPARATOR);
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+        try {
+            return new EventCursor(Long.parseLong(cursor.substring(0, separator)), cursor.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+        }
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    String getUniqueId() {
+        return uid;
+    }
+
+    /**
+     * @return Negative, zero or positive as the event sorts before, at or
+     * after this cursor.
+     */
+    public int compareTo(DSAEvent event) {
+        int cmp = Long.compare(event.getStartMillis(), start);
+        if (cmp != 0) {
+            return cmp;
+        }
+        return (event.getUniqueId() != null ? event.getUniqueId() : "").compareTo(uid);
+    }
+}
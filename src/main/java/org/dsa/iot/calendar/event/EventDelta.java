@@ -0,0 +1,102 @@
+package org.dsa.iot.calendar.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Differences between two generations of a calendar's events.
+ */
+public final class EventDelta {
+    private final List<DSAEvent> added;
+    private final List<DSAEvent> updated;
+    private final List<DSAEvent> removed;
+
+    private EventDelta(List<DSAEvent> added, List<DSAEvent> updated, List<DSAEvent> removed) {
+        this.added = Collections.unmodifiableList(added);
+        this.updated = Collections.unmodifiableList(updated);
+        this.removed = Collections.unmodifiableList(removed);
+    }
+
+    public static EventDelta between(EventSnapshot previous, EventSnapshot next) {
+        List<DSAEvent> added = new ArrayList<>();
+        List<DSAEvent> updated = new ArrayList<>();
+        List<DSAEvent> removed = new ArrayList<>();
+        for (DSAEvent event : next.getEvents()) {
+            DSAEvent old = previous.get(event.getUniqueId());
+            if (old == null) {
+                added.add(event);
+            } else if (!old.contentEquals(event)) {
+                updated.add(event);
+            }
+        }
+        for (DSAEvent event : previous.getEvents()) {
+            if (next.get(event.getUniqueId()) == null) {
+                removed.add(event);
+            }
+        }
+        return new EventDelta(added, updated, removed);
+    }
+
+    /**
+     * @param before Previous version of an event, or null if it was added.
+     * @param after  Next version of the event, or null if it was removed.
+     * @return Delta holding the change of the event, if any.
+     */
+    public static EventDelta of(DSAEvent before, DSAEvent after) {
+        List<DSAEvent> added = new ArrayList<>();
+        List<DSAEvent> updated = new ArrayList<>();
+        List<DSAEvent> removed = new ArrayList<>();
+        if (before == null) {
+            if (after != null) {
+                added.add(after);
+            }
+        } else if (after == null) {
+            removed.add(before);
+        } else if (!before.contentEquals(after)) {
+            updated.add(after);
+        }
+        return new EventDelta(added, updated, removed);
+    }
+
+    /**
+     * @param keep Whether an event belongs to the returned delta.
+     * @return The part of this delta whose events are kept.
+     */
+    public EventDelta filter(Predicate<DSAEvent> keep) {
+        return new EventDelta(filter(added, keep), filter(updated, keep), filter(removed, keep));
+    }
+
+    private static List<DSAEvent> filter(List<DSAEvent> events, Predicate<DSAEvent> keep) {
+        List<DSAEvent> kept = new ArrayList<>();
+        for (DSAEvent event : events) {
+            if (keep.test(event)) {
+                kept.add(event);
+            }
+        }
+        return kept;
+    }
+
+    public List<DSAEvent> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return New versions of the events whose content changed.
+     */
+    public List<DSAEvent> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return Last versions of the events that were removed.
+     */
+    public List<DSAEvent> getRemoved() {
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+    }
+}
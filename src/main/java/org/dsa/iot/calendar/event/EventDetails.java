@@ -0,0 +1,36 @@
+package org.dsa.iot.calendar.event;
+
+import org.dsa.iot.calendar.guest.DSAGuest;
+import org.dsa.iot.dslink.util.json.JsonArray;
+
+import java.util.List;
+
+/**
+ * Description and guests of an event. Providers that sync event headers
+ * only load these on demand, see
+ * {@link org.dsa.iot.calendar.BaseCalendar#getEventDetails(String)}.
+ */
+public final class EventDetails {
+    private final String description;
+    private final GuestList guests;
+
+    public EventDetails(String description, List<DSAGuest> guests) {
+        this.description = description;
+        this.guests = GuestList.of(guests);
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public List<DSAGuest> getGuests() {
+        return guests;
+    }
+
+    /**
+     * @return Guests as JSON, shared between callers.
+     */
+    public JsonArray serializeGuests() {
+        return guests.toJson();
+    }
+}
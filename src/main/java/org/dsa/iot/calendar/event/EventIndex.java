@@ -0,0 +1,166 @@
+package org.dsa.iot.calendar.event;
+
+import org.dsa.iot.calendar.guest.DSAGuest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index over the title and location words and the guest emails of
+ * a calendar's events. It is kept up to date with the deltas of every sync,
+ * so lookups never scan the events.
+ * <p>
+ * Guests are indexed by their whole email and by its local part, so both
+ * {@code alice@example.com} and {@code alice} find Alice's events.
+ */
+public final class EventIndex {
+    public enum Field {
+        TITLE, LOCATION, GUEST
+    }
+
+    private final Map<Field, Map<String, Set<String>>> postings = new HashMap<>();
+    /* Keys indexed for each event, so an event can be removed without its old content. */
+    private final Map<String, List<Key>> keysByUid = new HashMap<>();
+
+    public EventIndex() {
+        for (Field field : Field.values()) {
+            postings.put(field, new HashMap<>());
+        }
+    }
+
+    /**
+     * Indexes an event, replacing whatever was indexed under its unique ID.
+     */
+    public synchronized void add(DSAEvent event) {
+        String uid = event.getUniqueId();
+        remove(uid);
+        for (String token : tokenize(event.getTitle())) {
+            put(uid, Field.TITLE, token);
+        }
+        for (String token : tokenize(event.getLocation())) {
+            put(uid, Field.LOCATION, token);
+        }
+        addGuests(uid, event.getGuests());
+    }
+
+    /**
+     * Indexes guests loaded after the event itself, as for events synced as
+     * headers only.
+     */
+    public synchronized void addGuests(String uid, Collection<DSAGuest> guests) {
+        for (DSAGuest guest : guests) {
+            String email = DSAGuest.toEmail(guest.getEmail());
+            if (email == null || email.isEmpty()) {
+                continue;
+            }
+            email = email.toLowerCase(Locale.ROOT);
+            put(uid, Field.GUEST, email);
+            int at = email.indexOf('@');
+            if (at > 0) {
+                put(uid, Field.GUEST, email.substring(0, at));
+            }
+        }
+    }
+
+    public synchronized void remove(String uid) {
+        List<Key> keys = keysByUid.remove(uid);
+        if (keys == null) {
+            return;
+        }
+        for (Key key : keys) {
+            Map<String, Set<String>> terms = postings.get(key.field);
+            Set<String> uids = terms.get(key.term);
+            if (uids != null && uids.remove(uid) && uids.isEmpty()) {
+                terms.remove(key.term);
+            }
+        }
+    }
+
+    /**
+     * @param field Field to search.
+     * @param query Words to find, all of which must match. For guests, an
+     *              email or the part before its {@code @}.
+     * @return Unique IDs of the matching events.
+     */
+    public synchronized Set<String> find(Field field, String query) {
+        List<String> terms;
+        if (field == Field.GUEST) {
+            String email = query.trim().toLowerCase(Locale.ROOT);
+            if (email.endsWith("@")) {
+                email = email.substring(0, email.length() - 1);
+            }
+            terms = email.isEmpty() ? Collections.emptyList() : Collections.singletonList(email);
+        } else {
+            terms = tokenize(query);
+        }
+        if (terms.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Map<String, Set<String>> fieldPostings = postings.get(field);
+        Set<String> smallest = null;
+        for (String term : terms) {
+            Set<String> uids = fieldPostings.get(term);
+            if (uids == null) {
+                return Collections.emptySet();
+            }
+            if (smallest == null || uids.size() < smallest.size()) {
+                smallest = uids;
+            }
+        }
+        Set<String> result = new HashSet<>(smallest);
+        for (String term : terms) {
+            result.retainAll(fieldPostings.get(term));
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return keysByUid.size();
+    }
+
+    /**
+     * @return Lower case words of the text, split at anything that is not a
+     * letter or digit.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private void put(String uid, Field field, String term) {
+        if (postings.get(field).computeIfAbsent(term, t -> new HashSet<>()).add(uid)) {
+            keysByUid.computeIfAbsent(uid, u -> new ArrayList<>()).add(new Key(field, term));
+        }
+    }
+
+    private static final class Key {
+        private final Field field;
+        private final String term;
+
+        private Key(Field field, String term) {
+            this.field = field;
+            this.term = term;
+        }
+    }
+}
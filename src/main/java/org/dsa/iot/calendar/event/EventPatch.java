@@ -0,0 +1,82 @@
+package org.dsa.iot.calendar.event;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Fields of an event changed by an edit, so that providers only send those.
+ */
+public final class EventPatch {
+    public enum Field {
+        TITLE, DESCRIPTION, START, END, LOCATION
+    }
+
+    private final DSAEvent current;
+    private final DSAEvent edited;
+    private final Set<Field> fields;
+
+    private EventPatch(DSAEvent current, DSAEvent edited, Set<Field> fields) {
+        this.current = current;
+        this.edited = edited;
+        this.fields = Collections.unmodifiableSet(fields);
+    }
+
+    /**
+     * @param current Stored version of the event.
+     * @param edited  Edited version of the event, with the same unique ID.
+     * @return The fields that differ between both versions.
+     */
+    public static EventPatch between(DSAEvent current, DSAEvent edited) {
+        Set<Field> fields = EnumSet.noneOf(Field.class);
+        if (!Objects.equals(current.getTitle(), edited.getTitle())) {
+            fields.add(Field.TITLE);
+        }
+        if (edited.getDescription() != null && !edited.getDescription().equals(current.getDescription())) {
+            // Header-only events have no description yet, so only a set one counts as a change.
+            fields.add(Field.DESCRIPTION);
+        }
+        if (current.getStartMillis() != edited.getStartMillis()) {
+            fields.add(Field.START);
+        }
+        if (current.getEndMillis() != edited.getEndMillis()) {
+            fields.add(Field.END);
+        }
+        if (!Objects.equals(current.getLocation(), edited.getLocation())) {
+            fields.add(Field.LOCATION);
+        }
+        return new EventPatch(current, edited, fields);
+    }
+
+    public String getUniqueId() {
+        return current.getUniqueId();
+    }
+
+    public DSAEvent getCurrent() {
+        return current;
+    }
+
+    public DSAEvent getEdited() {
+        return edited;
+    }
+
+    public Set<Field> getFields() {
+        return fields;
+    }
+
+    public boolean contains(Field field) {
+        return fields.contains(field);
+    }
+
+    /**
+     * @return True if the start or the end changed.
+     */
+    public boolean changesTime() {
+        return fields.contains(Field.START) || fields.contains(Field.END);
+    }
+
+    public boolean isEmpty() {
+        return fields.isEmpty();
+    }
+}
@@ -0,0 +1,769 @@
+package org.dsa.iot.calendar.event;
+
+import org.dsa.iot.calendar.DSAIdentifier;
+import org.dsa.iot.calendar.Interner;
+import org.dsa.iot.calendar.guest.DSAGuest;
+
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Immutable generation of a calendar's events, sorted by start time. A
+ * calendar publishes a new snapshot at the end of every sync, so readers
+ * holding a snapshot always see one consistent set of events without
+ * locking.
+ * <p>
+ * Events are stored by column: times in primitive arrays, calendars, time
+ * zones and locations as indexes into per-snapshot dictionaries. The events
+ * handed out are read only views over a row, created on access.
+ * <p>
+ * Range queries only scan the events starting up to a day before the range.
+ * Longer events are kept in a bucket of their own, checked separately, so a
+ * single long event does not widen every scan.
+ * <p>
+ * Recurring events are kept as their master only. Range queries expand the
+ * occurrences inside the range on the fly and merge them with the other
+ * events.
+ */
+public final class EventSnapshot {
+    /**
+     * Order of the events of a snapshot: by start time, then unique ID.
+     */
+    public static final Comparator<DSAEvent> ORDER = Comparator.comparingLong(DSAEvent::getStartMillis)
+            .thenComparing(DSAEvent::getUniqueId, EventSnapshot::compareUids);
+
+    public static final EventSnapshot EMPTY = new EventSnapshot(0, Collections.emptyList());
+
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    private static final int STRING_BYTES = 40;
+    private static final int IDENTIFIER_BYTES = 24;
+    private static final int GUEST_BYTES = 32;
+    private static final int GUEST_LIST_BYTES = 32;
+    private static final int MASTER_BYTES = 96;
+    private static final long LONG_EVENT_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final long generation;
+    private final int size;
+
+    private final long[] starts;
+    private final long[] ends;
+    private final String[] uids;
+    private final String[] titles;
+    private final String[] descriptions;
+    private final int[] timeZones;
+    private final int[] calendars;
+    private final int[] locations;
+    private final BitSet readOnly;
+    private final BitSet detailed;
+    private final GuestList[] guests;
+    /* Few events are modified occurrences, so only those are kept, by row. */
+    private final Map<Integer, OccurrenceId> occurrenceIds = new HashMap<>();
+    private final DSAEvent[] masters;
+    private final Map<String, DSAEvent> mastersByUid = new HashMap<>();
+
+    private final String[] timeZoneValues;
+    private final DSAIdentifier[] calendarValues;
+    private final String[] locationValues;
+
+    /* Rows sorted by unique id, for lookups by binary search. */
+    private final int[] rowsByUid;
+    /* Rows of the events longer than LONG_EVENT_MILLIS, ascending. */
+    private final int[] longRows;
+    /* Longest duration of the other events. */
+    private final long maxShortDuration;
+    private final long memoryBytes;
+    private final List<DSAEvent> events = new Rows();
+
+    private EventSnapshot(long generation, Collection<DSAEvent> source) {
+        this.generation = generation;
+
+        List<DSAEvent> sorted = new ArrayList<>(source.size());
+        List<DSAEvent> recurring = new ArrayList<>();
+        for (DSAEvent event : source) {
+            if (event.getRecurrence() != null) {
+                DSAEvent master = event.copy();
+                recurring.add(master);
+                mastersByUid.put(master.getUniqueId(), master);
+            } else {
+                sorted.add(event);
+            }
+        }
+        recurring.sort(ORDER);
+        masters = recurring.toArray(new DSAEvent[0]);
+        sorted.sort(ORDER);
+        size = sorted.size();
+        starts = new long[size];
+        ends = new long[size];
+        uids = new String[size];
+        titles = new String[size];
+        descriptions = new String[size];
+        timeZones = new int[size];
+        calendars = new int[size];
+        locations = new int[size];
+        readOnly = new BitSet(size);
+        detailed = new BitSet(size);
+        guests = new GuestList[size];
+
+        Dictionary<String> timeZoneDictionary = new Dictionary<>();
+        Dictionary<DSAIdentifier> calendarDictionary = new Dictionary<>();
+        Dictionary<String> locationDictionary = new Dictionary<>();
+        for (int row = 0; row < size; row++) {
+            DSAEvent event = sorted.get(row);
+            starts[row] = event.getStartMillis();
+            ends[row] = event.getEndMillis();
+            uids[row] = event.getUniqueId();
+            titles[row] = Interner.TEXT.intern(event.getTitle());
+            descriptions[row] = Interner.TEXT.intern(event.getDescription());
+            timeZones[row] = timeZoneDictionary.encode(event.getTimeZone());
+            calendars[row] = calendarDictionary.encode(event.getCalendar());
+            locations[row] = locationDictionary.encode(event.getLocation());
+            readOnly.set(row, event.isReadOnly());
+            detailed.set(row, event.isDetailed());
+            guests[row] = GuestList.of(event.getGuests());
+            if (event.getOccurrenceId() != null) {
+                occurrenceIds.put(row, event.getOccurrenceId());
+            }
+        }
+        timeZoneValues = timeZoneDictionary.values(new String[0]);
+        calendarValues = calendarDictionary.values(new DSAIdentifier[0]);
+        locationValues = locationDictionary.values(new String[0]);
+
+        Integer[] byUid = new Integer[size];
+        for (int row = 0; row < size; row++) {
+            byUid[row] = row;
+        }
+        Arrays.sort(byUid, (r1, r2) -> compareUids(uids[r1], uids[r2]));
+        rowsByUid = new int[size];
+        for (int i = 0; i < size; i++) {
+            rowsByUid[i] = byUid[i];
+        }
+
+        longRows = longRows(starts, ends);
+        maxShortDuration = maxShortDuration(starts, ends);
+        memoryBytes = estimateMemory();
+    }
+
+    /* Copies the columns of the previous generation with the row of one event replaced, added or removed. */
+    private EventSnapshot(EventSnapshot previous, String uid, DSAEvent event) {
+        this.generation = previous.generation + 1;
+
+        List<DSAEvent> recurring = new ArrayList<>();
+        for (DSAEvent master : previous.masters) {
+            if (!master.getUniqueId().equals(uid)) {
+                recurring.add(master);
+            }
+        }
+        boolean single = event != null && event.getRecurrence() == null;
+        if (event != null && !single) {
+            recurring.add(event.copy());
+            recurring.sort(ORDER);
+        }
+        masters = recurring.toArray(new DSAEvent[0]);
+        for (DSAEvent master : masters) {
+            mastersByUid.put(master.getUniqueId(), master);
+        }
+
+        int removed = previous.rowOf(uid);
+        int inserted = -1;
+        if (single) {
+            inserted = previous.rowsBefore(event);
+            if (removed >= 0 && removed < inserted) {
+                inserted--;
+            }
+        }
+        size = previous.size - (removed >= 0 ? 1 : 0) + (single ? 1 : 0);
+        starts = new long[size];
+        ends = new long[size];
+        uids = new String[size];
+        titles = new String[size];
+        descriptions = new String[size];
+        timeZones = new int[size];
+        calendars = new int[size];
+        locations = new int[size];
+        readOnly = new BitSet(size);
+        detailed = new BitSet(size);
+        guests = new GuestList[size];
+
+        for (int from = 0; from < previous.size; from++) {
+            if (from == removed) {
+                continue;
+            }
+            int row = shift(from, removed, inserted);
+            starts[row] = previous.starts[from];
+            ends[row] = previous.ends[from];
+            uids[row] = previous.uids[from];
+            titles[row] = previous.titles[from];
+            descriptions[row] = previous.descriptions[from];
+            timeZones[row] = previous.timeZones[from];
+            calendars[row] = previous.calendars[from];
+            locations[row] = previous.locations[from];
+            readOnly.set(row, previous.readOnly.get(from));
+            detailed.set(row, previous.detailed.get(from));
+            guests[row] = previous.guests[from];
+        }
+        for (Map.Entry<Integer, OccurrenceId> entry : previous.occurrenceIds.entrySet()) {
+            if (entry.getKey() != removed) {
+                occurrenceIds.put(shift(entry.getKey(), removed, inserted), entry.getValue());
+            }
+        }
+
+        String[] nextTimeZones = previous.timeZoneValues;
+        DSAIdentifier[] nextCalendars = previous.calendarValues;
+        String[] nextLocations = previous.locationValues;
+        if (single) {
+            starts[inserted] = event.getStartMillis();
+            ends[inserted] = event.getEndMillis();
+            uids[inserted] = uid;
+            titles[inserted] = Interner.TEXT.intern(event.getTitle());
+            descriptions[inserted] = Interner.TEXT.intern(event.getDescription());
+            nextTimeZones = withValue(nextTimeZones, event.getTimeZone());
+            timeZones[inserted] = codeOf(nextTimeZones, event.getTimeZone());
+            nextCalendars = withValue(nextCalendars, event.getCalendar());
+            calendars[inserted] = codeOf(nextCalendars, event.getCalendar());
+            nextLocations = withValue(nextLocations, event.getLocation());
+            locations[inserted] = codeOf(nextLocations, event.getLocation());
+            readOnly.set(inserted, event.isReadOnly());
+            detailed.set(inserted, event.isDetailed());
+            guests[inserted] = GuestList.of(event.getGuests());
+            if (event.getOccurrenceId() != null) {
+                occurrenceIds.put(inserted, event.getOccurrenceId());
+            }
+        }
+        timeZoneValues = nextTimeZones;
+        calendarValues = nextCalendars;
+        locationValues = nextLocations;
+
+        rowsByUid = new int[size];
+        int next = 0;
+        boolean pending = single;
+        for (int from : previous.rowsByUid) {
+            if (from == removed) {
+                continue;
+            }
+            if (pending && compareUids(previous.uids[from], uid) > 0) {
+                rowsByUid[next++] = inserted;
+                pending = false;
+            }
+            rowsByUid[next++] = shift(from, removed, inserted);
+        }
+        if (pending) {
+            rowsByUid[next] = inserted;
+        }
+
+        longRows = longRows(starts, ends);
+        maxShortDuration = maxShortDuration(starts, ends);
+        memoryBytes = estimateMemory();
+    }
+
+    /**
+     * Builds the generation following this one.
+     *
+     * @param nextEvents Complete set of events of the next generation.
+     * @return New snapshot, this one is left untouched.
+     */
+    public EventSnapshot next(Collection<DSAEvent> nextEvents) {
+        return new EventSnapshot(generation + 1, nextEvents);
+    }
+
+    /**
+     * Builds the generation following this one with a single event changed.
+     * The columns are copied around its row, without sorting or encoding the
+     * other events again.
+     *
+     * @param uid   Unique ID of the changed event.
+     * @param event New version of the event, or null to remove it.
+     * @return New snapshot, this one is left untouched.
+     */
+    public EventSnapshot with(String uid, DSAEvent event) {
+        return new EventSnapshot(this, uid, event);
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return All single events in {@link #ORDER}, followed by the recurring
+     * masters in the same order.
+     */
+    public List<DSAEvent> getEvents() {
+        return events;
+    }
+
+    /**
+     * @param uid Unique ID of a single event or of a recurring master.
+     * @return The event, or null if there is none.
+     */
+    public DSAEvent get(String uid) {
+        int row = rowOf(uid);
+        if (row >= 0) {
+            return new EventView(this, row);
+        }
+        // Masters are stored as events, so callers get a copy they may change.
+        DSAEvent master = mastersByUid.get(uid);
+        return master != null ? master.copy() : null;
+    }
+
+    public int size() {
+        return size + masters.length;
+    }
+
+    /**
+     * @return Estimated heap used by the columns and dictionaries, in bytes,
+     * assuming compressed references.
+     */
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Finds the events overlapping a range. Only events starting between
+     * {@code start} minus a day and {@code end}, and the events longer than
+     * a day, are checked.
+     *
+     * @param start Start of the range.
+     * @param end   End of the range.
+     * @return Matching events and occurrences, sorted by start time.
+     */
+    public List<DSAEvent> getEventsInRange(Instant start, Instant end) {
+        List<DSAEvent> result = new ArrayList<>();
+        for (Iterator<DSAEvent> events = iterateRange(start, end, false); events.hasNext();) {
+            result.add(events.next());
+        }
+        return result;
+    }
+
+    /**
+     * Lazily walks the events overlapping a range, so callers can stop early
+     * without materializing the rest.
+     *
+     * @param start      Start of the range.
+     * @param end        End of the range.
+     * @param descending Whether to walk from the latest event backwards.
+     * @return Matching events and occurrences in {@link #ORDER}, or reversed.
+     */
+    public Iterator<DSAEvent> iterateRange(Instant start, Instant end, boolean descending) {
+        return iterateRange(start, end, descending, null);
+    }
+
+    /**
+     * Resumes a walk over the events overlapping a range after the event a
+     * cursor was taken from. The first event after the cursor is found by
+     * binary search.
+     *
+     * @param start      Start of the range.
+     * @param end        End of the range.
+     * @param descending Whether to walk from the latest event backwards.
+     * @param after      Cursor of the last event already seen, or null to
+     *                   start at the beginning.
+     * @return Matching events and occurrences following the cursor in
+     * {@link #ORDER}, or reversed.
+     */
+    public Iterator<DSAEvent> iterateRange(Instant start, Instant end, boolean descending, EventCursor after) {
+        long startMillis = start.toEpochMilli();
+        long endMillis = end.toEpochMilli();
+        Iterator<DSAEvent> rows = rowsInRange(startMillis, endMillis, descending, after);
+        if (masters.length == 0) {
+            return rows;
+        }
+
+        List<Iterable<DSAEvent>> sources = new ArrayList<>(masters.length + 1);
+        sources.add(() -> rows);
+        for (DSAEvent master : masters) {
+            Iterator<DSAEvent> occurrences = master.getRecurrence().occurrences(master, startMillis, endMillis);
+            if (descending) {
+                // A range holds few occurrences of one series, so reversing them is cheap.
+                List<DSAEvent> reversed = new ArrayList<>();
+                occurrences.forEachRemaining(occurrence -> {
+                    if (after == null || after.compareTo(occurrence) < 0) {
+                        reversed.add(occurrence);
+                    }
+                });
+                Collections.reverse(reversed);
+                sources.add(reversed);
+            } else {
+                Iterator<DSAEvent> following = after == null ? occurrences : skipTo(occurrences, after);
+                sources.add(() -> following);
+            }
+        }
+        return SortedMerge.merge(sources, descending ? ORDER.reversed() : ORDER);
+    }
+
+    /* Skips the occurrences up to and including a cursor, they come in ORDER. */
+    private static Iterator<DSAEvent> skipTo(Iterator<DSAEvent> occurrences, EventCursor after) {
+        return new Iterator<DSAEvent>() {
+            private DSAEvent next = seek();
+
+            private DSAEvent seek() {
+                while (occurrences.hasNext()) {
+                    DSAEvent occurrence = occurrences.next();
+                    if (after.compareTo(occurrence) > 0) {
+                        return occurrence;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public DSAEvent next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                DSAEvent event = next;
+                // Occurrences after the first one past the cursor are past it as well.
+                next = occurrences.hasNext() ? occurrences.next() : null;
+                return event;
+            }
+        };
+    }
+
+    private Iterator<DSAEvent> rowsInRange(long startMillis, long endMillis, boolean descending, EventCursor after) {
+        int first = 0;
+        int last = upperBound(endMillis);
+        if (after != null) {
+            // First row at or after the cursor.
+            int row = rowsBefore(after.getStart(), after.getUniqueId());
+            if (descending) {
+                last = Math.min(last, row);
+            } else {
+                boolean atCursor = row < size && starts[row] == after.getStart() && after.getUniqueId().equals(uids[row]);
+                first = atCursor ? row + 1 : row;
+            }
+        }
+        int from = Math.max(first, lowerBound(startMillis - maxShortDuration));
+        int to = last;
+        int[] overlappingLong = longRowsOverlapping(first, last, startMillis, endMillis);
+        return new Iterator<DSAEvent>() {
+            private final int step = descending ? -1 : 1;
+            private int next = descending ? seek(to - 1) : seek(from);
+            private int nextLong = descending ? overlappingLong.length - 1 : 0;
+
+            /* Next short row overlapping the range, the long ones come from their bucket. */
+            private int seek(int row) {
+                while (row >= from && row < to
+                        && (isLong(row) || !TimeRange.overlaps(starts[row], ends[row], startMillis, endMillis))) {
+                    row += step;
+                }
+                return row;
+            }
+
+            private boolean hasShort() {
+                return next >= from && next < to;
+            }
+
+            private boolean hasLong() {
+                return nextLong >= 0 && nextLong < overlappingLong.length;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return hasShort() || hasLong();
+            }
+
+            @Override
+            public DSAEvent next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int row;
+                if (hasShort() && (!hasLong() || (next - overlappingLong[nextLong]) * step < 0)) {
+                    row = next;
+                    next = seek(next + step);
+                } else {
+                    row = overlappingLong[nextLong];
+                    nextLong += step;
+                }
+                return new EventView(EventSnapshot.this, row);
+            }
+        };
+    }
+
+    /* Long events between two rows overlapping a range, ascending. */
+    private int[] longRowsOverlapping(int first, int last, long startMillis, long endMillis) {
+        int count = 0;
+        int[] overlapping = new int[longRows.length];
+        for (int row : longRows) {
+            if (row >= first && row < last && TimeRange.overlaps(starts[row], ends[row], startMillis, endMillis)) {
+                overlapping[count++] = row;
+            }
+        }
+        return Arrays.copyOf(overlapping, count);
+    }
+
+    private boolean isLong(int row) {
+        return ends[row] - starts[row] > LONG_EVENT_MILLIS;
+    }
+
+    private static int[] longRows(long[] starts, long[] ends) {
+        int count = 0;
+        int[] rows = new int[starts.length];
+        for (int row = 0; row < starts.length; row++) {
+            if (ends[row] - starts[row] > LONG_EVENT_MILLIS) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private static long maxShortDuration(long[] starts, long[] ends) {
+        long longest = 0;
+        for (int row = 0; row < starts.length; row++) {
+            long duration = ends[row] - starts[row];
+            if (duration <= LONG_EVENT_MILLIS) {
+                longest = Math.max(longest, duration);
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * @param time Epoch milliseconds.
+     * @return The first event starting after the given time, or null.
+     */
+    public DSAEvent firstStartingAfter(long time) {
+        int row = upperBound(time);
+        DSAEvent first = row < size ? new EventView(this, row) : null;
+        for (DSAEvent master : masters) {
+            Iterator<DSAEvent> occurrences = master.getRecurrence().occurrences(master, time, Long.MAX_VALUE);
+            while (occurrences.hasNext()) {
+                DSAEvent occurrence = occurrences.next();
+                if (first != null && ORDER.compare(occurrence, first) >= 0) {
+                    break;
+                }
+                if (occurrence.getStartMillis() > time) {
+                    first = occurrence;
+                    break;
+                }
+            }
+        }
+        return first;
+    }
+
+    long startAt(int row) {
+        return starts[row];
+    }
+
+    long endAt(int row) {
+        return ends[row];
+    }
+
+    String uidAt(int row) {
+        return uids[row];
+    }
+
+    String titleAt(int row) {
+        return titles[row];
+    }
+
+    String descriptionAt(int row) {
+        return descriptions[row];
+    }
+
+    String timeZoneAt(int row) {
+        return timeZoneValues[timeZones[row]];
+    }
+
+    DSAIdentifier calendarAt(int row) {
+        return calendarValues[calendars[row]];
+    }
+
+    String locationAt(int row) {
+        return locationValues[locations[row]];
+    }
+
+    boolean readOnlyAt(int row) {
+        return readOnly.get(row);
+    }
+
+    boolean detailedAt(int row) {
+        return detailed.get(row);
+    }
+
+    GuestList guestsAt(int row) {
+        return guests[row];
+    }
+
+    OccurrenceId occurrenceIdAt(int row) {
+        return occurrenceIds.get(row);
+    }
+
+    private int rowOf(String uid) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareUids(uids[rowsByUid[mid]], uid);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return rowsByUid[mid];
+            }
+        }
+        return -1;
+    }
+
+    /* Number of rows ordered before an event. */
+    private int rowsBefore(DSAEvent event) {
+        return rowsBefore(event.getStartMillis(), event.getUniqueId());
+    }
+
+    /* Number of rows ordered before a start time and unique ID. */
+    private int rowsBefore(long start, String uid) {
+        int row = lowerBound(start);
+        while (row < size && starts[row] == start && compareUids(uids[row], uid) < 0) {
+            row++;
+        }
+        return row;
+    }
+
+    /* Row of a copied event once a row was removed and another inserted, each being -1 if there was none. */
+    private static int shift(int row, int removed, int inserted) {
+        int shifted = removed >= 0 && row > removed ? row - 1 : row;
+        return inserted >= 0 && shifted >= inserted ? shifted + 1 : shifted;
+    }
+
+    private static <T> T[] withValue(T[] values, T value) {
+        if (codeOf(values, value) >= 0) {
+            return values;
+        }
+        T[] extended = Arrays.copyOf(values, values.length + 1);
+        extended[values.length] = value;
+        return extended;
+    }
+
+    private static int codeOf(Object[] values, Object value) {
+        for (int code = 0; code < values.length; code++) {
+            if (Objects.equals(values[code], value)) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    private static int compareUids(String uid1, String uid2) {
+        if (uid1 == null) {
+            return uid2 == null ? 0 : -1;
+        }
+        return uid2 == null ? 1 : uid1.compareTo(uid2);
+    }
+
+    private long estimateMemory() {
+        long bytes = 2 * array(size, Long.BYTES)
+                + 4 * array(size, Integer.BYTES)
+                + 4 * array(size, REFERENCE_BYTES)
+                + 2 * size / Byte.SIZE;
+        for (int row = 0; row < size; row++) {
+            bytes += string(uids[row]) + string(titles[row]) + string(descriptions[row]);
+            if (!guests[row].isEmpty()) {
+                bytes += GUEST_LIST_BYTES + array(guests[row].size(), REFERENCE_BYTES);
+            }
+            for (DSAGuest guest : guests[row]) {
+                bytes += GUEST_BYTES + string(guest.getUniqueId()) + string(guest.getDisplayName()) + string(guest.getEmail());
+            }
+        }
+        for (String value : timeZoneValues) {
+            bytes += string(value);
+        }
+        for (String value : locationValues) {
+            bytes += string(value);
+        }
+        for (DSAIdentifier value : calendarValues) {
+            if (value != null) {
+                bytes += IDENTIFIER_BYTES + string(value.getUid()) + string(value.getTitle());
+            }
+        }
+        for (DSAEvent master : masters) {
+            bytes += MASTER_BYTES + string(master.getUniqueId()) + string(master.getTitle()) + string(master.getDescription())
+                    + string(master.getRecurrence().getRule()) + array(master.getRecurrence().getExcluded().length, Long.BYTES);
+        }
+        return bytes;
+    }
+
+    private static long array(int length, int elementBytes) {
+        return ARRAY_HEADER_BYTES + (long) length * elementBytes;
+    }
+
+    private static long string(String value) {
+        return value == null ? 0 : STRING_BYTES + 2L * value.length();
+    }
+
+    /* Index of the first event starting at or after the given time. */
+    private int lowerBound(long time) {
+        int index = Arrays.binarySearch(starts, time);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index > 0 && starts[index - 1] == time) {
+            index--;
+        }
+        return index;
+    }
+
+    /* Index of the first event starting after the given time. */
+    private int upperBound(long time) {
+        int index = Arrays.binarySearch(starts, time);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index < starts.length && starts[index] == time) {
+            index++;
+        }
+        return index;
+    }
+
+    private final class Rows extends AbstractList<DSAEvent> implements RandomAccess {
+        @Override
+        public DSAEvent get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Event " + index + " of " + size());
+            }
+            return index < size ? new EventView(EventSnapshot.this, index) : masters[index - size].copy();
+        }
+
+        @Override
+        public int size() {
+            return EventSnapshot.this.size();
+        }
+    }
+
+    /* Assigns consecutive codes to distinct values, null included. */
+    private static final class Dictionary<T> {
+        private final Map<T, Integer> codes = new HashMap<>();
+        private final List<T> values = new ArrayList<>();
+
+        int encode(T value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        T[] values(T[] type) {
+            return values.toArray(type);
+        }
+    }
+}
@@ -4,11 +4,9 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.List;
 
-import static java.time.temporal.ChronoUnit.MINUTES;
-import static java.util.stream.Collectors.toList;
-
 public class EventUtils {
     private static final String DATE_PATTERN = "yyyy-MM-dd'T'HH:mm:ss";
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern(DATE_PATTERN)
@@ -19,57 +17,74 @@ public class EventUtils {
     }
 
     public static TimeRange findNextFreeTimeRange(List<DSAEvent> events, Duration wantedDuration) {
+        return findNextFreeTimeRange(events, wantedDuration, null, null);
+    }
+
+    /**
+     * Finds the first free range of the wanted duration. Busy ranges are
+     * merged in a single pass over the start and end times, each sorted once
+     * as primitives, and the search stops at the first gap that fits.
+     *
+     * @param events         Events occupying the calendar, in any order.
+     * @param wantedDuration Minimum length of the free range.
+     * @param notBefore      Earliest start of the free range, or null for now.
+     * @param searchEnd      Time by which the free range must end, or null to
+     *                       search without limit.
+     * @return The first free range, or null if none ends by searchEnd.
+     */
+    public static TimeRange findNextFreeTimeRange(List<DSAEvent> events,
+                                                  Duration wantedDuration,
+                                                  Instant notBefore,
+                                                  Instant searchEnd) {
         Instant now = Instant.now(clock);
-        if (events.isEmpty()) {
-            return new TimeRange(now, now.plus(wantedDuration));
+        Instant from = notBefore != null && notBefore.isAfter(now) ? notBefore : now;
+        long fromMillis = from.toEpochMilli();
+        long limit = searchEnd != null ? searchEnd.toEpochMilli() : Long.MAX_VALUE;
+        long wanted = wantedDuration.toMillis();
+
+        // Only events still running at the start of the search and starting
+        // before its end can block it.
+        long[] starts = new long[events.size()];
+        long[] ends = new long[events.size()];
+        int count = 0;
+        for (DSAEvent event : events) {
+            long start = event.getStartMillis();
+            long end = event.getEndMillis();
+            if (end > fromMillis && start < limit) {
+                starts[count] = start;
+                ends[count] = end;
+                count++;
+            }
         }
 
-        List<DSAEvent> eventsNotOver = events
-                .stream()
-                .filter(event -> event.getEnd().isAfter(Instant.now(clock)))
-                .sorted((o1, o2) -> {
-                    if (MINUTES.between(o1.getStart(), now) > MINUTES.between(o2.getStart(), now)) {
-                        return 1;
-                    } else if (MINUTES.between(o1.getStart(), now) < MINUTES.between(o2.getStart(), now)) {
-                        return -1;
-                    } else {
-                        return 0;
-                    }
-                }).collect(toList());
-
-        TimeSlotTable timeSlots = new TimeSlotTable();
-        for (DSAEvent event : eventsNotOver) {
-            timeSlots.mergeSlot(new TimeRange(event.getStart(), event.getEnd()));
+        if (count == 0) {
+            return fitsBefore(fromMillis + wanted, limit) ? new TimeRange(from, from.plus(wantedDuration)) : null;
         }
 
-        List<TimeRange> table = timeSlots.getTable();
-
-        for (int i = 0; i < table.size(); ++i) {
-            TimeRange current = table.get(i);
-
-            if (i == 0 && hasEnoughFreeTimeInRange(now, current.start, wantedDuration)) {
-                return new TimeRange(now, current.start);
-            }
-
-            if (isLastEventOfTable(table, i)) {
-                return new TimeRange(current.end, current.end.plus(wantedDuration));
-            }
+        // Sorting starts and ends independently is enough to find the gaps:
+        // the calendar is free between ends[i] and starts[i + 1] exactly when
+        // starts[i + 1] > ends[i].
+        Arrays.sort(starts, 0, count);
+        Arrays.sort(ends, 0, count);
 
-            TimeRange next = table.get(i + 1);
-            if (hasEnoughFreeTimeInRange(current.end, next.start, wantedDuration)) {
-                return new TimeRange(current.end, current.end.plus(wantedDuration));
+        if (fromMillis + wanted <= starts[0]) {
+            return new TimeRange(from, Instant.ofEpochMilli(starts[0]));
+        }
+        for (int i = 0; i < count; i++) {
+            long nextStart = i + 1 < count ? starts[i + 1] : Long.MAX_VALUE;
+            if (nextStart > ends[i] && ends[i] + wanted <= nextStart) {
+                if (!fitsBefore(ends[i] + wanted, limit)) {
+                    return null;
+                }
+                Instant freeStart = Instant.ofEpochMilli(ends[i]);
+                return new TimeRange(freeStart, freeStart.plus(wantedDuration));
             }
         }
-
-        return new TimeRange(now, now.plus(wantedDuration));
-    }
-
-    private static boolean isLastEventOfTable(List<TimeRange> table, int i) {
-        return i == table.size() - 1;
+        return null;
     }
 
-    private static boolean hasEnoughFreeTimeInRange(Instant from, Instant to, Duration wantedDuration) {
-        return from.plus(wantedDuration).compareTo(to) <= 0;
+    private static boolean fitsBefore(long end, long limit) {
+        return end <= limit;
     }
 
     // TODO: We needn't to assume the timezone from DGLux https://github.com/IOT-DSA/dslink-java-calendar/issues/15
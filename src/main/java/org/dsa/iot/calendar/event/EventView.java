@@ -0,0 +1,161 @@
+package org.dsa.iot.calendar.event;
+
+import org.dsa.iot.calendar.DSAIdentifier;
+import org.dsa.iot.calendar.guest.DSAGuest;
+import org.dsa.iot.dslink.util.json.JsonArray;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Read only event backed by a row of an {@link EventSnapshot}. Views are
+ * created on access and hold nothing but the row index.
+ */
+final class EventView extends DSAEvent {
+    private final EventSnapshot snapshot;
+    private final int row;
+
+    EventView(EventSnapshot snapshot, int row) {
+        this.snapshot = snapshot;
+        this.row = row;
+    }
+
+    @Override
+    public String getUniqueId() {
+        return snapshot.uidAt(row);
+    }
+
+    @Override
+    public String getTitle() {
+        return snapshot.titleAt(row);
+    }
+
+    @Override
+    public String getDescription() {
+        return snapshot.descriptionAt(row);
+    }
+
+    @Override
+    public Instant getStart() {
+        return Instant.ofEpochMilli(snapshot.startAt(row));
+    }
+
+    @Override
+    public long getStartMillis() {
+        return snapshot.startAt(row);
+    }
+
+    @Override
+    public Instant getEnd() {
+        return Instant.ofEpochMilli(snapshot.endAt(row));
+    }
+
+    @Override
+    public long getEndMillis() {
+        return snapshot.endAt(row);
+    }
+
+    @Override
+    public String getTimeZone() {
+        return snapshot.timeZoneAt(row);
+    }
+
+    @Override
+    public DSAIdentifier getCalendar() {
+        return snapshot.calendarAt(row);
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return snapshot.readOnlyAt(row);
+    }
+
+    @Override
+    public String getLocation() {
+        return snapshot.locationAt(row);
+    }
+
+    @Override
+    public boolean isDetailed() {
+        return snapshot.detailedAt(row);
+    }
+
+    @Override
+    public OccurrenceId getOccurrenceId() {
+        return snapshot.occurrenceIdAt(row);
+    }
+
+    @Override
+    public List<DSAGuest> getGuests() {
+        return snapshot.guestsAt(row);
+    }
+
+    @Override
+    public JsonArray serializeGuests() {
+        return snapshot.guestsAt(row).toJson();
+    }
+
+    @Override
+    public void setUniqueId(String uniqueId) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setTitle(String title) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setDescription(String description) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setStart(Instant start) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setEnd(Instant end) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setTimeZone(String timeZone) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setCalendar(DSAIdentifier calendarIdentifier) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setLocation(String location) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setDetailed(boolean detailed) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setRecurrence(Recurrence recurrence) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setOccurrenceId(OccurrenceId occurrenceId) {
+        throw readOnly();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Events of a snapshot can't be modified");
+    }
+}
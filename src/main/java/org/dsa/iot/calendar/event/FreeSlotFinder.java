@@ -0,0 +1,103 @@
+package org.dsa.iot.calendar.event;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Finds slots that are free in several calendars at once. The busy events
+ * of every participant are merged by start time and swept once; the search
+ * stops as soon as enough slots are found.
+ */
+public final class FreeSlotFinder {
+    private final Duration duration;
+    private final LocalTime workdayStart;
+    private final LocalTime workdayEnd;
+    private final ZoneId zone;
+
+    /**
+     * @param duration     Length of the wanted slots.
+     * @param workdayStart Start of the working hours, or null to search the
+     *                     whole day.
+     * @param workdayEnd   End of the working hours, or null to search the
+     *                     whole day.
+     * @param zone         Time zone of the working hours.
+     */
+    public FreeSlotFinder(Duration duration, LocalTime workdayStart, LocalTime workdayEnd, ZoneId zone) {
+        if (duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("Duration must be positive");
+        }
+        if ((workdayStart == null) != (workdayEnd == null)) {
+            throw new IllegalArgumentException("Working hours need both a start and an end");
+        }
+        if (workdayStart != null && !workdayStart.isBefore(workdayEnd)) {
+            throw new IllegalArgumentException("Working hours must start before they end");
+        }
+        this.duration = duration;
+        this.workdayStart = workdayStart;
+        this.workdayEnd = workdayEnd;
+        this.zone = zone;
+    }
+
+    /**
+     * @param busy        Busy events of each participant, each sorted by
+     *                    start time.
+     * @param windowStart Start of the search window.
+     * @param windowEnd   End of the search window.
+     * @param count       Maximum number of slots to return.
+     * @return The earliest free slots of the wanted duration, at most one per
+     * free gap and working day.
+     */
+    public List<TimeRange> find(List<? extends Iterable<DSAEvent>> busy, Instant windowStart, Instant windowEnd, int count) {
+        List<TimeRange> slots = new ArrayList<>();
+        if (count <= 0) {
+            return slots;
+        }
+
+        Iterator<DSAEvent> events = SortedMerge.merge(busy, Comparator.comparingLong(DSAEvent::getStartMillis));
+        long end = windowEnd.toEpochMilli();
+        long freeFrom = windowStart.toEpochMilli();
+        while (events.hasNext() && slots.size() < count) {
+            DSAEvent event = events.next();
+            if (event.getStartMillis() >= end) {
+                break;
+            }
+            if (event.getStartMillis() > freeFrom) {
+                addSlots(slots, Instant.ofEpochMilli(freeFrom), event.getStart(), count);
+            }
+            freeFrom = Math.max(freeFrom, event.getEndMillis());
+        }
+        if (slots.size() < count && freeFrom < end) {
+            addSlots(slots, Instant.ofEpochMilli(freeFrom), windowEnd, count);
+        }
+        return slots;
+    }
+
+    private void addSlots(List<TimeRange> slots, Instant gapStart, Instant gapEnd, int count) {
+        if (workdayStart == null) {
+            addSlot(slots, gapStart, gapEnd);
+            return;
+        }
+
+        LocalDate day = gapStart.atZone(zone).toLocalDate();
+        LocalDate lastDay = gapEnd.atZone(zone).toLocalDate();
+        for (; !day.isAfter(lastDay) && slots.size() < count; day = day.plusDays(1)) {
+            Instant open = day.atTime(workdayStart).atZone(zone).toInstant();
+            Instant close = day.atTime(workdayEnd).atZone(zone).toInstant();
+            addSlot(slots, open.isAfter(gapStart) ? open : gapStart, close.isBefore(gapEnd) ? close : gapEnd);
+        }
+    }
+
+    private void addSlot(List<TimeRange> slots, Instant start, Instant end) {
+        Instant slotEnd = start.plus(duration);
+        if (!slotEnd.isAfter(end)) {
+            slots.add(new TimeRange(start, slotEnd));
+        }
+    }
+}
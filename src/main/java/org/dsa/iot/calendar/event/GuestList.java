@@ -0,0 +1,71 @@
+package org.dsa.iot.calendar.event;
+
+import org.dsa.iot.calendar.guest.DSAGuest;
+import org.dsa.iot.dslink.util.json.JsonArray;
+import org.dsa.iot.dslink.util.json.JsonObject;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable guest list of a snapshot row. The list serializes itself once
+ * and hands out the same JSON from then on; rows of later snapshots reuse
+ * the list, and its JSON, as long as the guests do not change.
+ */
+final class GuestList extends AbstractList<DSAGuest> implements RandomAccess {
+    static final GuestList EMPTY = new GuestList(new DSAGuest[0]);
+
+    private final DSAGuest[] guests;
+    private volatile JsonArray json;
+
+    private GuestList(DSAGuest[] guests) {
+        this.guests = guests;
+    }
+
+    static GuestList of(List<DSAGuest> guests) {
+        if (guests instanceof GuestList) {
+            return (GuestList) guests;
+        }
+        if (guests == null || guests.isEmpty()) {
+            return EMPTY;
+        }
+        return new GuestList(guests.toArray(new DSAGuest[0]));
+    }
+
+    @Override
+    public DSAGuest get(int index) {
+        return guests[index];
+    }
+
+    @Override
+    public int size() {
+        return guests.length;
+    }
+
+    /**
+     * @return The serialized guests, shared between all callers. Must not be
+     * modified.
+     */
+    JsonArray toJson() {
+        JsonArray result = json;
+        if (result == null) {
+            result = serialize(this);
+            json = result;
+        }
+        return result;
+    }
+
+    static JsonArray serialize(List<DSAGuest> guests) {
+        JsonArray guestsJson = new JsonArray();
+        for (DSAGuest guest : guests) {
+            JsonObject guestJson = new JsonObject();
+            guestJson.put("uid", guest.getUniqueId());
+            guestJson.put("name", guest.getDisplayName());
+            guestJson.put("email", guest.getEmail());
+            guestJson.put("organizer", guest.isOrganizer());
+            guestsJson.add(guestJson);
+        }
+        return guestsJson;
+    }
+}
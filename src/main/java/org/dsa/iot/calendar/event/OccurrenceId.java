@@ -0,0 +1,49 @@
+package org.dsa.iot.calendar.event;
+
+import java.util.Objects;
+
+/**
+ * Identifies a modified occurrence of a recurring event the way iCalendar
+ * does, by the UID of its series and its original start (RECURRENCE-ID).
+ * Providers that store such occurrences inside the resource of their series
+ * address them with it.
+ */
+public final class OccurrenceId {
+    private final String seriesId;
+    private final long originalStart;
+
+    /**
+     * @param seriesId      Provider UID of the series.
+     * @param originalStart Start the occurrence had before it was moved, in
+     *                      epoch milliseconds.
+     */
+    public OccurrenceId(String seriesId, long originalStart) {
+        this.seriesId = seriesId;
+        this.originalStart = originalStart;
+    }
+
+    public String getSeriesId() {
+        return seriesId;
+    }
+
+    public long getOriginalStart() {
+        return originalStart;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof OccurrenceId)) {
+            return false;
+        }
+        OccurrenceId other = (OccurrenceId) o;
+        return originalStart == other.originalStart && seriesId.equals(other.seriesId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(seriesId, originalStart);
+    }
+}
@@ -0,0 +1,382 @@
+package org.dsa.iot.calendar.event;
+
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+/**
+ * Recurrence rule of a master event, with the original starts of the
+ * occurrences that were cancelled or moved. Occurrences are never stored;
+ * they are computed on demand, only inside the queried window.
+ * <p>
+ * Supports the part of RFC 5545 providers commonly produce: {@code FREQ},
+ * {@code INTERVAL}, {@code COUNT}, {@code UNTIL} and, for weekly rules,
+ * {@code BYDAY} with plain weekdays. Other rules are rejected so callers can
+ * fall back to keeping the first occurrence only.
+ */
+public final class Recurrence {
+    public enum Frequency {
+        DAILY(ChronoUnit.DAYS), WEEKLY(ChronoUnit.WEEKS), MONTHLY(ChronoUnit.MONTHS), YEARLY(ChronoUnit.YEARS);
+
+        private final ChronoUnit unit;
+
+        Frequency(ChronoUnit unit) {
+            this.unit = unit;
+        }
+    }
+
+    private static final String RRULE_PREFIX = "RRULE:";
+    private static final String TZID_PARAM = "TZID=";
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+    private static final String[] WEEKDAYS = {"MO", "TU", "WE", "TH", "FR", "SA", "SU"};
+
+    private final String rule;
+    private final Frequency frequency;
+    private final int interval;
+    private final int count;
+    private final long until;
+    /* Last day of a date-only UNTIL, compared in the zone of the series. */
+    private final LocalDate untilDate;
+    private final List<DayOfWeek> byDay;
+    private final long[] excluded;
+
+    private Recurrence(String rule, Frequency frequency, int interval, int count, long until, LocalDate untilDate,
+                       List<DayOfWeek> byDay, long[] excluded) {
+        this.rule = rule;
+        this.frequency = frequency;
+        this.interval = interval;
+        this.count = count;
+        this.until = until;
+        this.untilDate = untilDate;
+        this.byDay = byDay;
+        this.excluded = excluded;
+    }
+
+    /**
+     * @param rule Value of an RRULE, with or without the {@code RRULE:}
+     *             prefix.
+     * @return The parsed rule, without exclusions.
+     * @throws IllegalArgumentException If the rule is invalid or uses parts
+     *                                  that are not supported.
+     */
+    public static Recurrence parse(String rule) {
+        String value = rule.startsWith(RRULE_PREFIX) ? rule.substring(RRULE_PREFIX.length()) : rule;
+        Frequency frequency = null;
+        int interval = 1;
+        int count = 0;
+        long until = Long.MAX_VALUE;
+        LocalDate untilDate = null;
+        List<DayOfWeek> byDay = new ArrayList<>();
+        for (String part : value.split(";")) {
+            int equals = part.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Invalid rule part " + part);
+            }
+            String name = part.substring(0, equals).toUpperCase(Locale.ROOT);
+            String partValue = part.substring(equals + 1);
+            try {
+                switch (name) {
+                    case "FREQ":
+                        frequency = Frequency.valueOf(partValue.toUpperCase(Locale.ROOT));
+                        break;
+                    case "INTERVAL":
+                        interval = Integer.parseInt(partValue);
+                        break;
+                    case "COUNT":
+                        count = Integer.parseInt(partValue);
+                        break;
+                    case "UNTIL":
+                        if (partValue.indexOf('T') < 0) {
+                            untilDate = LocalDate.parse(partValue, DATE);
+                        } else {
+                            until = parseTime(partValue, ZoneOffset.UTC);
+                        }
+                        break;
+                    case "BYDAY":
+                        for (String day : partValue.split(",")) {
+                            byDay.add(parseWeekday(day));
+                        }
+                        break;
+                    case "WKST":
+                        if (!"MO".equalsIgnoreCase(partValue)) {
+                            throw new IllegalArgumentException("Unsupported week start " + partValue);
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unsupported rule part " + name);
+                }
+            } catch (NumberFormatException | DateTimeException e) {
+                throw new IllegalArgumentException("Invalid rule part " + part, e);
+            }
+        }
+        if (frequency == null) {
+            throw new IllegalArgumentException("Rule without frequency " + rule);
+        }
+        if (interval < 1 || count < 0) {
+            throw new IllegalArgumentException("Invalid rule " + rule);
+        }
+        if (!byDay.isEmpty() && frequency != Frequency.WEEKLY) {
+            throw new IllegalArgumentException("BYDAY is only supported for weekly rules");
+        }
+        byDay = new ArrayList<>(new TreeSet<>(byDay));
+        return new Recurrence(value, frequency, interval, count, until, untilDate, byDay, new long[0]);
+    }
+
+    /**
+     * Reads the dates of an iCalendar EXDATE line, such as
+     * {@code EXDATE;TZID=Europe/Berlin:20161024T090000,20161025T090000}.
+     *
+     * @param line        EXDATE line, with or without its name and
+     *                    parameters.
+     * @param defaultZone Zone of floating times and of dates.
+     * @return Excluded starts in epoch milliseconds.
+     * @throws IllegalArgumentException If a date is invalid.
+     */
+    public static List<Long> parseExDates(String line, ZoneId defaultZone) {
+        ZoneId zone = defaultZone;
+        String values = line;
+        List<Long> dates = new ArrayList<>();
+        try {
+            int colon = line.lastIndexOf(':');
+            if (colon >= 0) {
+                for (String param : line.substring(0, colon).split(";")) {
+                    if (param.toUpperCase(Locale.ROOT).startsWith(TZID_PARAM)) {
+                        zone = ZoneId.of(param.substring(TZID_PARAM.length()));
+                    }
+                }
+                values = line.substring(colon + 1);
+            }
+            for (String value : values.split(",")) {
+                dates.add(parseTime(value.trim(), zone));
+            }
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid EXDATE " + line, e);
+        }
+        return dates;
+    }
+
+    /**
+     * @param starts Original starts of occurrences that were cancelled or
+     *               replaced by a separate event.
+     * @return This rule, additionally excluding the given starts.
+     */
+    public Recurrence excluding(Collection<Long> starts) {
+        TreeSet<Long> all = new TreeSet<>(starts);
+        for (long start : excluded) {
+            all.add(start);
+        }
+        long[] merged = new long[all.size()];
+        int i = 0;
+        for (long start : all) {
+            merged[i++] = start;
+        }
+        return new Recurrence(rule, frequency, interval, count, until, untilDate, byDay, merged);
+    }
+
+    /**
+     * @return The RRULE value, without the {@code RRULE:} prefix.
+     */
+    public String getRule() {
+        return rule;
+    }
+
+    /**
+     * @return Excluded starts in epoch milliseconds, sorted. Must not be
+     * modified.
+     */
+    public long[] getExcluded() {
+        return excluded;
+    }
+
+    public boolean isExcluded(long start) {
+        return Arrays.binarySearch(excluded, start) >= 0;
+    }
+
+    /**
+     * @param uid   Unique ID of the master event.
+     * @param start Original start of the occurrence.
+     * @return Unique ID of the occurrence.
+     */
+    public static String occurrenceId(String uid, long start) {
+        return uid + "_" + start;
+    }
+
+    /**
+     * Lazily expands the occurrences of a master event that overlap a
+     * window. Rules without a count skip straight to the window, so far
+     * windows of long running series cost the same as near ones.
+     *
+     * @param master Master event, whose start is the first occurrence and
+     *               whose time zone gives the local time of every one.
+     * @param from   Start of the window in epoch milliseconds.
+     * @param to     End of the window in epoch milliseconds.
+     * @return Occurrences sorted by start time, as events of their own.
+     */
+    public Iterator<DSAEvent> occurrences(DSAEvent master, long from, long to) {
+        return new Occurrences(master, from, to);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Recurrence)) {
+            return false;
+        }
+        Recurrence other = (Recurrence) o;
+        return rule.equals(other.rule) && Arrays.equals(excluded, other.excluded);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * rule.hashCode() + Arrays.hashCode(excluded);
+    }
+
+    @Override
+    public String toString() {
+        return RRULE_PREFIX + rule;
+    }
+
+    private static long parseTime(String value, ZoneId zone) {
+        try {
+            if (value.indexOf('T') < 0) {
+                return LocalDate.parse(value, DATE).atStartOfDay(zone).toInstant().toEpochMilli();
+            }
+            if (value.endsWith("Z")) {
+                return LocalDateTime.parse(value.substring(0, value.length() - 1), DATE_TIME)
+                        .toInstant(ZoneOffset.UTC).toEpochMilli();
+            }
+            return LocalDateTime.parse(value, DATE_TIME).atZone(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date " + value, e);
+        }
+    }
+
+    private static DayOfWeek parseWeekday(String day) {
+        int index = Arrays.asList(WEEKDAYS).indexOf(day.trim().toUpperCase(Locale.ROOT));
+        if (index < 0) {
+            throw new IllegalArgumentException("Unsupported BYDAY value " + day);
+        }
+        return DayOfWeek.of(index + 1);
+    }
+
+    private static ZoneId zoneOf(DSAEvent event) {
+        try {
+            return event.getTimeZone() != null ? ZoneId.of(event.getTimeZone()) : ZoneId.systemDefault();
+        } catch (DateTimeException e) {
+            return ZoneId.systemDefault();
+        }
+    }
+
+    private final class Occurrences implements Iterator<DSAEvent> {
+        private final DSAEvent master;
+        private final long from;
+        private final long to;
+        private final long duration;
+        private final ZonedDateTime first;
+        /* Start of the first period, the week of the first occurrence for rules by weekday. */
+        private final ZonedDateTime origin;
+
+        private long period;
+        private int day;
+        private int index;
+        private DSAEvent next;
+        private boolean done;
+
+        private Occurrences(DSAEvent master, long from, long to) {
+            this.master = master;
+            this.from = from;
+            this.to = to;
+            duration = master.getEndMillis() - master.getStartMillis();
+            first = Instant.ofEpochMilli(master.getStartMillis()).atZone(zoneOf(master));
+            origin = byDay.isEmpty() ? first : first.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            if (count == 0 && from - duration > master.getStartMillis()) {
+                ZonedDateTime target = Instant.ofEpochMilli(from - duration).atZone(first.getZone());
+                period = Math.max(0, frequency.unit.between(origin, target) / interval - 1);
+            }
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public DSAEvent next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            DSAEvent occurrence = next;
+            advance();
+            return occurrence;
+        }
+
+        private void advance() {
+            next = null;
+            while (!done) {
+                ZonedDateTime candidate = candidate();
+                if (candidate == null) {
+                    continue;
+                }
+                long start = candidate.toInstant().toEpochMilli();
+                boolean pastUntil = start > until || (untilDate != null && candidate.toLocalDate().isAfter(untilDate));
+                if (pastUntil || start > to || (count > 0 && index >= count)) {
+                    done = true;
+                    return;
+                }
+                index++;
+                if (!isExcluded(start) && TimeRange.overlaps(start, start + duration, from, to)) {
+                    next = master.copy();
+                    next.setUniqueId(occurrenceId(master.getUniqueId(), start));
+                    next.setStart(Instant.ofEpochMilli(start));
+                    next.setEnd(Instant.ofEpochMilli(start + duration));
+                    next.setRecurrence(null);
+                    return;
+                }
+            }
+        }
+
+        /* Start of the next candidate, or null if the current one is not a valid date. */
+        private ZonedDateTime candidate() {
+            ZonedDateTime periodStart = origin.plus(period * interval, frequency.unit);
+            if (byDay.isEmpty()) {
+                period++;
+                boolean dayMoved = periodStart.getDayOfMonth() != first.getDayOfMonth()
+                        || (frequency == Frequency.YEARLY && periodStart.getMonth() != first.getMonth());
+                if ((frequency == Frequency.MONTHLY || frequency == Frequency.YEARLY) && dayMoved) {
+                    // Skip the 31st in shorter months and the 29th of February in other years.
+                    return null;
+                }
+                return periodStart;
+            }
+
+            ZonedDateTime candidate = periodStart.with(TemporalAdjusters.nextOrSame(byDay.get(day)))
+                    .with(first.toLocalTime());
+            if (++day == byDay.size()) {
+                day = 0;
+                period++;
+            }
+            return candidate.isBefore(first) ? null : candidate;
+        }
+    }
+}
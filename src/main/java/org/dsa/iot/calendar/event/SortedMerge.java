@@ -0,0 +1,67 @@
+package org.dsa.iot.calendar.event;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of sources that are each already sorted. Only the head of
+ * every source is held in a heap, so merging k sources of n elements in
+ * total costs O(n log k) and the caller can stop at any time without
+ * touching the rest.
+ *
+ * @param <T> Type of the merged elements.
+ */
+public final class SortedMerge<T> implements Iterator<T> {
+    private final PriorityQueue<Head<T>> heads;
+
+    private SortedMerge(List<? extends Iterable<? extends T>> sources, Comparator<? super T> order) {
+        heads = new PriorityQueue<>(Math.max(1, sources.size()), (h1, h2) -> order.compare(h1.value, h2.value));
+        for (Iterable<? extends T> source : sources) {
+            advance(source.iterator());
+        }
+    }
+
+    /**
+     * @param sources Sources, each sorted by {@code order}.
+     * @param order   Order of the sources and of the result.
+     * @param <T>     Type of the merged elements.
+     * @return Lazy iterator over the elements of all sources in order.
+     */
+    public static <T> Iterator<T> merge(List<? extends Iterable<? extends T>> sources, Comparator<? super T> order) {
+        return new SortedMerge<>(sources, order);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        Head<T> head = heads.poll();
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        advance(head.rest);
+        return head.value;
+    }
+
+    private void advance(Iterator<? extends T> source) {
+        if (source.hasNext()) {
+            heads.add(new Head<>(source.next(), source));
+        }
+    }
+
+    private static final class Head<T> {
+        private final T value;
+        private final Iterator<? extends T> rest;
+
+        private Head(T value, Iterator<? extends T> rest) {
+            this.value = value;
+            this.rest = rest;
+        }
+    }
+}
@@ -46,32 +46,20 @@ public class TimeRange {
     }
 
     public static boolean areOverlapping(TimeRange t1, TimeRange t2) {
-        if (rangeIsSame(t1, t2)) {
-            return true;
-        }
-
-        if (t1.isIncludedIn(t2) || t2.isIncludedIn(t1)) {
-            return true;
-        }
-
-        if (partiallyOverlap(t1, t2) || partiallyOverlap(t2, t1)) {
-            return true;
-        }
-
-        return false;
-    }
-
-    private static boolean partiallyOverlap(TimeRange t1, TimeRange t2) {
-        return t2.start.isBefore(t1.end) && t2.end.isAfter(t1.end) && t2.start.isAfter(t1.start);
-    }
-
-    private boolean isIncludedIn(TimeRange other) {
-        return (start.equals(other.start) || start.isAfter(other.start))
-                && (end.equals(other.end) || end.isBefore(other.end));
+        return overlaps(t1.start.toEpochMilli(), t1.end.toEpochMilli(), t2.start.toEpochMilli(), t2.end.toEpochMilli());
     }
 
-    private static boolean rangeIsSame(TimeRange t1, TimeRange t2) {
-        return t1.start.equals(t2.start) && t1.end.equals(t2.end);
+    /**
+     * Checks whether two ranges given in epoch milliseconds overlap. Ranges
+     * that merely touch do not overlap, but a range included in the other
+     * always does, even when it is empty.
+     *
+     * @return True if the ranges overlap.
+     */
+    public static boolean overlaps(long start1, long end1, long start2, long end2) {
+        return start1 < end2 && start2 < end1
+                || start1 >= start2 && end1 <= end2
+                || start2 >= start1 && end2 <= end1;
     }
 
     public static boolean areContiguous(TimeRange t1, TimeRange t2) {
@@ -2,90 +2,53 @@ package org.dsa.iot.calendar.event;
 
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class TimeSlotTable {
-    private List<TimeRange> table = new ArrayList<>();
-
+    /* Disjoint, non-contiguous slots keyed by their start, mapped to their end. */
+    private final TreeMap<Instant, Instant> slots = new TreeMap<>();
+
+    /**
+     * Adds a time range, merging it with every slot it overlaps or touches.
+     * Only the neighbours of the range are visited, so building a table of
+     * n ranges takes O(n log n).
+     *
+     * @param toMerge Range to add.
+     */
     public void mergeSlot(TimeRange toMerge) {
-        if (table.isEmpty()) {
-            table.add(toMerge);
-
-            return;
-        }
-
-        if (table.contains(toMerge)) {
-            return;
-        }
-
-        boolean wasAdded = false;
-        for (TimeRange slot : table) {
-            if (TimeRange.areOverlapping(toMerge, slot)) {
-                Instant start = toMerge.start.isBefore(slot.start) ? toMerge.start : slot.start;
-                Instant end = toMerge.end.isAfter(slot.end) ? toMerge.end : slot.end;
+        Instant start = toMerge.start;
+        Instant end = toMerge.end;
 
-                slot.start = start;
-                slot.end = end;
-                wasAdded = true;
-                break;
-            } else if (TimeRange.areContiguous(toMerge, slot)) {
-                Instant start = slot.start.isBefore(toMerge.start) ? slot.start : toMerge.start;
-                Instant end = slot.start.isBefore(toMerge.start) ? toMerge.end : slot.end;
-
-                slot.start = start;
-                slot.end = end;
-                wasAdded = true;
-                break;
-            }
+        Map.Entry<Instant, Instant> previous = slots.floorEntry(start);
+        if (previous != null && !previous.getValue().isBefore(start)) {
+            start = previous.getKey();
+            end = latest(end, previous.getValue());
         }
 
-        if (!wasAdded) {
-            table.add(toMerge);
+        Map.Entry<Instant, Instant> following = slots.ceilingEntry(start);
+        while (following != null && !following.getKey().isAfter(end)) {
+            end = latest(end, following.getValue());
+            slots.remove(following.getKey());
+            following = slots.ceilingEntry(start);
         }
 
-        table.sort(Comparator.comparing(o -> o.start));
-        stabilizeTable();
+        slots.put(start, end);
     }
 
-    /* This is meant to re-merge every slots until the stable is stabilized */
-    private void stabilizeTable() {
-        int previousTableSize;
-        do {
-            previousTableSize = table.size();
-            for (Iterator<TimeRange> it1 = table.iterator(); it1.hasNext();) {
-                TimeRange range = it1.next();
-                for (TimeRange slot : table) {
-                    if (range == slot) {
-                        continue;
-                    }
-
-                    if (TimeRange.areOverlapping(range, slot)) {
-                        Instant start = range.start.isBefore(slot.start) ? range.start : slot.start;
-                        Instant end = range.end.isAfter(slot.end) ? range.end : slot.end;
-
-                        slot.start = start;
-                        slot.end = end;
-                        it1.remove();
-                        break;
-                    } else if (TimeRange.areContiguous(range, slot)) {
-                        Instant start = slot.start.isBefore(range.start) ? slot.start : range.start;
-                        Instant end = slot.start.isBefore(range.start) ? range.end : slot.end;
-
-                        slot.start = start;
-                        slot.end = end;
-                        it1.remove();
-                        break;
-                    }
-                }
-            }
-        } while (previousTableSize != table.size());
-
-        table.sort(Comparator.comparing(o -> o.start));
+    private static Instant latest(Instant first, Instant second) {
+        return first.isAfter(second) ? first : second;
     }
 
+    /**
+     * @return The merged slots, sorted by start.
+     */
     public List<TimeRange> getTable() {
+        List<TimeRange> table = new ArrayList<>(slots.size());
+        for (Map.Entry<Instant, Instant> slot : slots.entrySet()) {
+            table.add(new TimeRange(slot.getKey(), slot.getValue()));
+        }
         return table;
     }
 }
@@ -0,0 +1,68 @@
+package org.dsa.iot.calendar.event;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Rule firing at a boundary of the events it matches: some minutes before
+ * they start, when they start or when they end. Events can be filtered by
+ * title and location patterns.
+ */
+public final class Trigger {
+    public enum Kind {
+        BEFORE_START, AT_START, AT_END
+    }
+
+    private final Kind kind;
+    private final long minutes;
+    private final Pattern title;
+    private final Pattern location;
+
+    /**
+     * @param kind     Boundary to fire at.
+     * @param minutes  Minutes before the start, for {@link Kind#BEFORE_START}.
+     * @param title    Pattern found in the titles of matching events, or null
+     *                 for any title.
+     * @param location Pattern found in the locations of matching events, or
+     *                 null for any location.
+     */
+    public Trigger(Kind kind, long minutes, Pattern title, Pattern location) {
+        if (kind == Kind.BEFORE_START && minutes < 0) {
+            throw new IllegalArgumentException("Minutes before start can't be negative");
+        }
+        this.kind = kind;
+        this.minutes = kind == Kind.BEFORE_START ? minutes : 0;
+        this.title = title;
+        this.location = location;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getMinutes() {
+        return minutes;
+    }
+
+    public boolean matches(DSAEvent event) {
+        return matches(title, event.getTitle()) && matches(location, event.getLocation());
+    }
+
+    /**
+     * @return Epoch milliseconds this trigger fires at for the event.
+     */
+    public long fireTime(DSAEvent event) {
+        switch (kind) {
+            case BEFORE_START:
+                return event.getStartMillis() - TimeUnit.MINUTES.toMillis(minutes);
+            case AT_START:
+                return event.getStartMillis();
+            default:
+                return event.getEndMillis();
+        }
+    }
+
+    private static boolean matches(Pattern pattern, String value) {
+        return pattern == null || (value != null && pattern.matcher(value).find());
+    }
+}
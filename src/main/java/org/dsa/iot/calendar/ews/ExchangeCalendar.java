@@ -2,20 +2,43 @@ package org.dsa.iot.calendar.ews;
 
 import microsoft.exchange.webservices.data.autodiscover.IAutodiscoverRedirectionUrl;
 import microsoft.exchange.webservices.data.core.ExchangeService;
+import microsoft.exchange.webservices.data.core.PropertySet;
+import microsoft.exchange.webservices.data.core.enumeration.availability.AvailabilityData;
 import microsoft.exchange.webservices.data.core.enumeration.misc.ExchangeVersion;
+import microsoft.exchange.webservices.data.core.enumeration.property.BasePropertySet;
+import microsoft.exchange.webservices.data.core.enumeration.property.LegacyFreeBusyStatus;
 import microsoft.exchange.webservices.data.core.enumeration.property.WellKnownFolderName;
-import microsoft.exchange.webservices.data.core.exception.service.local.ServiceLocalException;
+import microsoft.exchange.webservices.data.core.enumeration.service.ConflictResolutionMode;
+import microsoft.exchange.webservices.data.core.enumeration.service.SendInvitationsMode;
+import microsoft.exchange.webservices.data.core.enumeration.service.SendInvitationsOrCancellationsMode;
+import microsoft.exchange.webservices.data.core.enumeration.service.ServiceResult;
+import microsoft.exchange.webservices.data.core.exception.service.remote.ServiceRequestException;
+import microsoft.exchange.webservices.data.core.response.AttendeeAvailability;
+import microsoft.exchange.webservices.data.core.response.ServiceResponse;
+import microsoft.exchange.webservices.data.core.response.ServiceResponseCollection;
 import microsoft.exchange.webservices.data.core.service.item.Appointment;
+import microsoft.exchange.webservices.data.core.service.item.Item;
+import microsoft.exchange.webservices.data.core.service.schema.AppointmentSchema;
 import microsoft.exchange.webservices.data.credential.ExchangeCredentials;
 import microsoft.exchange.webservices.data.credential.WebCredentials;
+import microsoft.exchange.webservices.data.misc.availability.AttendeeInfo;
+import microsoft.exchange.webservices.data.misc.availability.GetUserAvailabilityResults;
+import microsoft.exchange.webservices.data.misc.availability.TimeWindow;
 import microsoft.exchange.webservices.data.property.complex.Attendee;
+import microsoft.exchange.webservices.data.property.complex.FolderId;
 import microsoft.exchange.webservices.data.property.complex.ItemId;
 import microsoft.exchange.webservices.data.property.complex.MessageBody;
+import microsoft.exchange.webservices.data.property.complex.availability.CalendarEvent;
 import microsoft.exchange.webservices.data.search.CalendarView;
 import microsoft.exchange.webservices.data.search.FindItemsResults;
 import org.dsa.iot.calendar.Actions;
 import org.dsa.iot.calendar.BaseCalendar;
+import org.dsa.iot.calendar.BulkResult;
+import org.dsa.iot.calendar.Interner;
 import org.dsa.iot.calendar.event.DSAEvent;
+import org.dsa.iot.calendar.event.EventDetails;
+import org.dsa.iot.calendar.event.EventPatch;
+import org.dsa.iot.calendar.event.TimeRange;
 import org.dsa.iot.calendar.guest.DSAGuest;
 import org.dsa.iot.dslink.node.Node;
 import org.dsa.iot.dslink.node.Permission;
@@ -25,15 +48,19 @@ import org.dsa.iot.dslink.node.actions.EditorType;
 import org.dsa.iot.dslink.node.actions.Parameter;
 import org.dsa.iot.dslink.node.value.Value;
 import org.dsa.iot.dslink.node.value.ValueType;
+import org.dsa.iot.dslink.util.Objects;
 import org.dsa.iot.dslink.util.handler.Handler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static microsoft.exchange.webservices.data.core.enumeration.service.DeleteMode.HardDelete;
 import static microsoft.exchange.webservices.data.core.enumeration.service.SendCancellationsMode.SendToNone;
@@ -41,6 +68,7 @@ import static microsoft.exchange.webservices.data.core.enumeration.service.calen
 
 public class ExchangeCalendar extends BaseCalendar {
     private static final Logger LOGGER = LoggerFactory.getLogger(ExchangeCalendar.class);
+    private static final int MAX_ITEMS_PER_REQUEST = 100;
 
     private String email;
     private String password;
@@ -50,32 +78,35 @@ public class ExchangeCalendar extends BaseCalendar {
 
     private Node node;
 
-    private ExchangeService service;
+    /* Replaced as a whole when the account is edited, so requests in flight keep the one they started with. */
+    private volatile ExchangeService service;
     private static final long ONE_YEAR_IN_MILLISECONDS = 31556952000L;
 
     public ExchangeCalendar(Node calendarNode, ExchangeVersion exchangeVersion, String email, String password) {
+        this(calendarNode, exchangeVersion, email, password, null, true);
+    }
+
+    public ExchangeCalendar(Node calendarNode, ExchangeVersion exchangeVersion, String email, String password, String url) {
+        this(calendarNode, exchangeVersion, email, password, url, false);
+    }
+
+    private ExchangeCalendar(Node calendarNode, ExchangeVersion exchangeVersion, String email, String password, String url,
+                             boolean autoDiscover) {
         super(calendarNode.getChild("events", false));
         this.node = calendarNode;
         this.email = email;
         this.password = password;
         this.version = exchangeVersion;
-        this.autoDiscover = true;
-
-        setupService();
-    }
-
-    public ExchangeCalendar(Node calendarNode, ExchangeVersion exchangeVersion, String email, String password, String url) {
-        this(calendarNode, exchangeVersion, email, password);
         this.url = url;
-        this.autoDiscover = false;
+        this.autoDiscover = autoDiscover;
 
         setupService();
     }
 
-    private void setupService() {
-        service = new ExchangeService(version);
+    private synchronized void setupService() {
+        ExchangeService next = new ExchangeService(version);
         ExchangeCredentials credentials = new WebCredentials(email, password);
-        service.setCredentials(credentials);
+        next.setCredentials(credentials);
 
         if (!autoDiscover) {
             URI uri = null;
@@ -87,13 +118,13 @@ public class ExchangeCalendar extends BaseCalendar {
                 }
             }
             if (uri != null) {
-                service.setUrl(uri);
+                next.setUrl(uri);
             } else {
                 LOGGER.error("Invalid URL");
             }
         } else {
             try {
-                service.autodiscoverUrl(email, new IAutodiscoverRedirectionUrl() {
+                next.autodiscoverUrl(email, new IAutodiscoverRedirectionUrl() {
 
                     @Override
                     public boolean autodiscoverRedirectionUrlValidationCallback(String redirectionUrl) {
@@ -106,8 +137,8 @@ public class ExchangeCalendar extends BaseCalendar {
                     }
 
                 });
-                if (service.getUrl() != null) {
-                    url = service.getUrl().toString();
+                if (next.getUrl() != null) {
+                    url = next.getUrl().toString();
                     node.setRoConfig("url", new Value(url));
                 } else {
                     LOGGER.error("URL Autodiscovery Failed");
@@ -117,103 +148,241 @@ public class ExchangeCalendar extends BaseCalendar {
             }
         }
 
+        ExchangeService previous = service;
+        service = next;
+        if (previous != null) {
+            // The sync running with the previous service finishes before the one requested here starts.
+            Objects.getDaemonThreadPool().execute(() -> refresh().whenComplete((ignored, e) -> previous.close()));
+        }
         makeEditAction();
     }
 
     @Override
-    public void createEvent(DSAEvent event) {
-        Appointment appointment;
-        try {
-            appointment = new Appointment(service);
-            appointment.setSubject(event.getTitle());
-            appointment.setBody(MessageBody.getMessageBodyFromText(event.getDescription()));
-            appointment.setStart(Date.from(event.getStart()));
-            appointment.setEnd(Date.from(event.getEnd()));
-            appointment.setLocation(event.getLocation());
-            for (DSAGuest guest : event.getGuests()) {
-                Attendee attendee = new Attendee();
-                attendee.setName(guest.getDisplayName());
-                attendee.setAddress(guest.getEmail());
-                appointment.getRequiredAttendees().add(attendee);
-            }
-            appointment.save();
-            String uid = appointment.getId().getUniqueId();
-            event.setUniqueId(uid);
-        } catch (Exception e) {
-            LOGGER.debug("", e);
-        }
+    protected void releaseResources() {
+        service.close();
     }
 
     @Override
-    public void deleteEvent(String uid, boolean destroyNode) {
-        try {
-            ItemId itemId = ItemId.getItemIdFromString(uid);
-            service.deleteItem(itemId, HardDelete, SendToNone, SpecifiedOccurrenceOnly);
-        } catch (Exception e) {
-            LOGGER.debug("", e);
-        }
+    protected String insertEvent(DSAEvent event) throws Exception {
+        Appointment appointment = toAppointment(event);
+        appointment.save();
+        return appointment.getId().getUniqueId();
+    }
 
-        if (destroyNode) {
-            eventsNode.removeChild(uid, false);
+    private Appointment toAppointment(DSAEvent event) throws Exception {
+        Appointment appointment = new Appointment(service);
+        appointment.setSubject(event.getTitle());
+        appointment.setBody(MessageBody.getMessageBodyFromText(event.getDescription()));
+        appointment.setStart(Date.from(event.getStart()));
+        appointment.setEnd(Date.from(event.getEnd()));
+        appointment.setLocation(event.getLocation());
+        for (DSAGuest guest : event.getGuests()) {
+            Attendee attendee = new Attendee();
+            attendee.setName(guest.getDisplayName());
+            attendee.setAddress(guest.getEmail());
+            appointment.getRequiredAttendees().add(attendee);
         }
-
+        return appointment;
     }
 
     @Override
-    public List<DSAEvent> getEvents() {
-        List<DSAEvent> events = new ArrayList<>();
-        FindItemsResults<Appointment> results = null;
-        try {
-            Date now = new Date();
-            Date nextYear = new Date(System.currentTimeMillis() + ONE_YEAR_IN_MILLISECONDS);
-            results = service.findAppointments(WellKnownFolderName.Calendar, new CalendarView(now, nextYear));
-        } catch (Exception e) {
-            LOGGER.debug("Silenced exception:", e);
-        }
+    protected void removeEvent(DSAEvent event) throws Exception {
+        service.deleteItem(ItemId.getItemIdFromString(event.getUniqueId()), HardDelete, SendToNone, SpecifiedOccurrenceOnly);
+    }
 
-        if (results == null) {
-            return events;
+    /**
+     * Creates the appointments with one CreateItem request per
+     * {@value #MAX_ITEMS_PER_REQUEST} events.
+     */
+    @Override
+    protected List<BulkResult> insertEvents(List<DSAEvent> events) {
+        List<BulkResult> results = new ArrayList<>();
+        for (int from = 0; from < events.size(); from += MAX_ITEMS_PER_REQUEST) {
+            List<DSAEvent> chunk = events.subList(from, Math.min(from + MAX_ITEMS_PER_REQUEST, events.size()));
+            List<Appointment> appointments = new ArrayList<>();
+            try {
+                for (DSAEvent event : chunk) {
+                    appointments.add(toAppointment(event));
+                }
+                // Appointments take no message disposition, like Appointment.save does.
+                ServiceResponseCollection<ServiceResponse> responses = service.createItems(new ArrayList<Item>(appointments),
+                        new FolderId(WellKnownFolderName.Calendar), null, SendInvitationsMode.SendToNone);
+                for (int i = 0; i < appointments.size(); i++) {
+                    ServiceResponse response = responses.getResponseAtIndex(i);
+                    if (response.getResult() == ServiceResult.Success) {
+                        results.add(BulkResult.success(appointments.get(i).getId().getUniqueId()));
+                    } else {
+                        results.add(BulkResult.failure(null, response.getErrorMessage()));
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.debug("", e);
+                for (int i = 0; i < chunk.size(); i++) {
+                    results.add(BulkResult.failure(null, e.getMessage()));
+                }
+            }
         }
+        return results;
+    }
 
-        for (Appointment appointment : results) {
+    /**
+     * Deletes the appointments with one DeleteItem request per
+     * {@value #MAX_ITEMS_PER_REQUEST} events.
+     */
+    @Override
+    protected List<BulkResult> removeEvents(List<DSAEvent> events) {
+        List<BulkResult> results = new ArrayList<>();
+        for (int from = 0; from < events.size(); from += MAX_ITEMS_PER_REQUEST) {
+            List<DSAEvent> chunk = events.subList(from, Math.min(from + MAX_ITEMS_PER_REQUEST, events.size()));
             try {
-                DSAEvent event = new DSAEvent(
-                        appointment.getSubject(),
-                        appointment.getStart().toInstant(),
-                        appointment.getEnd().toInstant()
-                );
-
-                try {
-                    event.setDescription(appointment.getBody().toString());
-                } catch (ServiceLocalException e) {
-                    event.setDescription("");
-                }
-                event.setLocation(appointment.getLocation());
-                for (Attendee attendee : appointment.getRequiredAttendees()) {
-                    event.getGuests().add(exchangeToDSAGuest(attendee));
+                List<ItemId> ids = new ArrayList<>();
+                for (DSAEvent event : chunk) {
+                    ids.add(ItemId.getItemIdFromString(event.getUniqueId()));
                 }
-                for (Attendee attendee : appointment.getOptionalAttendees()) {
-                    event.getGuests().add(exchangeToDSAGuest(attendee));
+                ServiceResponseCollection<ServiceResponse> responses = service.deleteItems(ids, HardDelete, SendToNone,
+                        SpecifiedOccurrenceOnly);
+                for (int i = 0; i < chunk.size(); i++) {
+                    ServiceResponse response = responses.getResponseAtIndex(i);
+                    String uid = chunk.get(i).getUniqueId();
+                    results.add(response.getResult() == ServiceResult.Success
+                            ? BulkResult.success(uid) : BulkResult.failure(uid, response.getErrorMessage()));
                 }
-                event.setTimeZone("UTC");
-                event.setUniqueId(appointment.getId().getUniqueId());
-                events.add(event);
-            } catch (ServiceLocalException e) {
+            } catch (Exception e) {
                 LOGGER.debug("", e);
+                for (DSAEvent event : chunk) {
+                    results.add(BulkResult.failure(event.getUniqueId(), e.getMessage()));
+                }
             }
         }
+        return results;
+    }
+
+    /**
+     * Retries requests that did not get a response, such as timeouts and
+     * connection failures. Errors reported by the server are not retried.
+     */
+    @Override
+    protected boolean isTransient(Exception e) {
+        return e instanceof ServiceRequestException || super.isTransient(e);
+    }
+
+    /**
+     * Binds the appointment without loading its properties, so that UpdateItem
+     * only carries the fields that changed. Conflicting changes made on the
+     * server since are resolved by Exchange.
+     */
+    @Override
+    protected void patchEvent(EventPatch patch) throws Exception {
+        DSAEvent edited = patch.getEdited();
+        Appointment appointment = Appointment.bind(service, new ItemId(patch.getUniqueId()),
+                new PropertySet(BasePropertySet.IdOnly));
+        if (patch.contains(EventPatch.Field.TITLE)) {
+            appointment.setSubject(edited.getTitle());
+        }
+        if (patch.contains(EventPatch.Field.DESCRIPTION)) {
+            appointment.setBody(MessageBody.getMessageBodyFromText(edited.getDescription()));
+        }
+        if (patch.contains(EventPatch.Field.START)) {
+            appointment.setStart(Date.from(edited.getStart()));
+        }
+        if (patch.contains(EventPatch.Field.END)) {
+            appointment.setEnd(Date.from(edited.getEnd()));
+        }
+        if (patch.contains(EventPatch.Field.LOCATION)) {
+            appointment.setLocation(edited.getLocation());
+        }
+        appointment.update(ConflictResolutionMode.AutoResolve, SendInvitationsOrCancellationsMode.SendToNone);
+    }
+
+    /**
+     * Asks GetUserAvailability for every address in one request. Ranges the
+     * server reports as free are left out.
+     */
+    @Override
+    public Map<String, List<TimeRange>> getAvailability(List<String> emails, Instant start, Instant end) throws Exception {
+        List<AttendeeInfo> attendees = new ArrayList<>();
+        for (String email : emails) {
+            attendees.add(new AttendeeInfo(email));
+        }
+        GetUserAvailabilityResults results = service.getUserAvailability(attendees,
+                new TimeWindow(Date.from(start), Date.from(end)), AvailabilityData.FreeBusy);
+
+        // Responses come back in the order of the attendees.
+        Map<String, List<TimeRange>> busy = new LinkedHashMap<>();
+        int index = 0;
+        for (AttendeeAvailability availability : results.getAttendeesAvailability()) {
+            List<TimeRange> ranges = new ArrayList<>();
+            if (availability.getResult() == ServiceResult.Success) {
+                for (CalendarEvent event : availability.getCalendarEvents()) {
+                    if (event.getFreeBusyStatus() != LegacyFreeBusyStatus.Free) {
+                        ranges.add(new TimeRange(event.getStartTime().toInstant(), event.getEndTime().toInstant()));
+                    }
+                }
+            } else {
+                LOGGER.debug("No availability for " + emails.get(index) + ": " + availability.getErrorMessage());
+            }
+            busy.put(emails.get(index), ranges);
+            index++;
+        }
+        return busy;
+    }
+
+    @Override
+    public List<DSAEvent> getEvents() throws Exception {
+        List<DSAEvent> events = new ArrayList<>();
+        Date now = new Date();
+        Date nextYear = new Date(System.currentTimeMillis() + ONE_YEAR_IN_MILLISECONDS);
+        FindItemsResults<Appointment> results = service.findAppointments(WellKnownFolderName.Calendar,
+                new CalendarView(now, nextYear));
+
+        for (Appointment appointment : results) {
+            DSAEvent event = new DSAEvent(
+                    appointment.getSubject(),
+                    appointment.getStart().toInstant(),
+                    appointment.getEnd().toInstant()
+            );
+
+            event.setLocation(appointment.getLocation());
+            event.setDetailed(false);
+            event.setTimeZone("UTC");
+            event.setUniqueId(appointment.getId().getUniqueId());
+            events.add(event);
+        }
         return events;
     }
 
-    private DSAGuest exchangeToDSAGuest(Attendee attendee) {
-        DSAGuest guest = new DSAGuest();
-        if (attendee.getName() != null) {
-            guest.setDisplayName(attendee.getName());
+    /**
+     * FindItem does not return attendees, so synced headers have no guests
+     * to search.
+     */
+    @Override
+    protected boolean supportsGuestSearch() {
+        return false;
+    }
+
+    /**
+     * FindItem does not return bodies or attendees, so they are bound from
+     * the appointment when first needed.
+     */
+    @Override
+    protected EventDetails fetchDetails(DSAEvent header) throws Exception {
+        PropertySet details = new PropertySet(BasePropertySet.IdOnly,
+                AppointmentSchema.Body, AppointmentSchema.RequiredAttendees, AppointmentSchema.OptionalAttendees);
+        Appointment appointment = Appointment.bind(service, new ItemId(header.getUniqueId()), details);
+        List<DSAGuest> guests = new ArrayList<>();
+        for (Attendee attendee : appointment.getRequiredAttendees()) {
+            guests.add(exchangeToDSAGuest(attendee));
         }
-        if (attendee.getAddress() != null) {
-            guest.setEmail(attendee.getAddress());
+        for (Attendee attendee : appointment.getOptionalAttendees()) {
+            guests.add(exchangeToDSAGuest(attendee));
         }
-        return guest;
+        String description = appointment.getBody() != null ? appointment.getBody().toString() : "";
+        return new EventDetails(description, guests);
+    }
+
+    private DSAGuest exchangeToDSAGuest(Attendee attendee) {
+        DSAGuest guest = new DSAGuest(null, attendee.getName(), attendee.getAddress(), false);
+        return Interner.GUESTS.intern(guest);
     }
 
     private void makeEditAction() {
@@ -261,7 +430,7 @@ public class ExchangeCalendar extends BaseCalendar {
             password = event.getParameter("password").getString();
         }
         if (event.getParameter("autoDiscoverUrl") != null) {
-            autoDiscover = event.getParameter("host").getBool();
+            autoDiscover = event.getParameter("autoDiscoverUrl").getBool();
         }
         if (event.getParameter("url") != null) {
             url = event.getParameter("url").getString();
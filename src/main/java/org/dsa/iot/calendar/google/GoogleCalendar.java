@@ -2,7 +2,13 @@ package org.dsa.iot.calendar.google;
 
 import com.google.api.client.auth.oauth2.*;
 import com.google.api.client.googleapis.auth.oauth2.GoogleOAuthConstants;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
 import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonFactory;
@@ -14,27 +20,55 @@ import com.google.api.services.calendar.CalendarScopes;
 import com.google.api.services.calendar.model.*;
 import org.dsa.iot.calendar.Actions;
 import org.dsa.iot.calendar.BaseCalendar;
+import org.dsa.iot.calendar.BulkResult;
 import org.dsa.iot.calendar.DSAIdentifier;
+import org.dsa.iot.calendar.Interner;
+import org.dsa.iot.calendar.SyncResult;
 import org.dsa.iot.calendar.event.DSAEvent;
+import org.dsa.iot.calendar.event.EventDetails;
+import org.dsa.iot.calendar.event.EventPatch;
+import org.dsa.iot.calendar.event.Recurrence;
+import org.dsa.iot.calendar.event.TimeRange;
 import org.dsa.iot.calendar.guest.DSAGuest;
 import org.dsa.iot.dslink.node.Node;
 import org.dsa.iot.dslink.node.Writable;
 import org.dsa.iot.dslink.node.value.Value;
 import org.dsa.iot.dslink.node.value.ValueType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.DateTimeException;
 import java.time.Instant;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static com.google.api.client.googleapis.auth.oauth2.GoogleOAuthConstants.AUTHORIZATION_SERVER_URL;
 import static com.google.api.client.googleapis.auth.oauth2.GoogleOAuthConstants.TOKEN_SERVER_URL;
 
 public class GoogleCalendar extends BaseCalendar {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GoogleCalendar.class);
     private static final int CREDENTIALS_EXPIRATION_TIMEOUT = 60;
+    private static final int HTTP_GONE = 410;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVER_ERROR = 500;
+    private static final int MAX_BATCH_SIZE = 50;
+    private static final String STATUS_CANCELLED = "cancelled";
+    /* Syncs only event headers; descriptions and attendees are loaded on demand. */
+    private static final String HEADER_FIELDS = "items(id,status,summary,start,end,location,attendees(email),"
+            + "recurrence,recurringEventId,originalStartTime),nextPageToken,nextSyncToken";
+    private static final String RRULE_PREFIX = "RRULE:";
+    private static final String EXDATE_PREFIX = "EXDATE";
     private String clientId;
     private String clientSecret;
     private HttpTransport httpTransport;
@@ -90,6 +124,12 @@ public class GoogleCalendar extends BaseCalendar {
                         Actions.addCreateEventNode(calendarNode);
                         Actions.addRemoveCalendarNode(calendarNode);
                         Actions.addRefreshCalendarNode(calendarNode);
+                        Actions.addGetAvailabilityNode(calendarNode);
+                        Actions.addSearchEventsNode(calendarNode);
+                        Actions.addWatchChangesNode(calendarNode);
+                        Actions.addAddTriggerNode(calendarNode);
+                        Actions.addBulkCreateEventsNode(calendarNode);
+                        Actions.addBulkDeleteEventsNode(calendarNode);
                         Actions.addGetEventsRange(calendarNode);
                         Actions.addGetCalendars(calendarNode);
                     } catch (IOException e) {
@@ -127,7 +167,20 @@ public class GoogleCalendar extends BaseCalendar {
     }
 
     @Override
-    public void createEvent(DSAEvent event) {
+    protected void releaseResources() {
+        try {
+            httpTransport.shutdown();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    protected String insertEvent(DSAEvent event) throws IOException {
+        return calendar.events().insert(event.getCalendar().getUid(), toGoogleEvent(event)).execute().getId();
+    }
+
+    private static Event toGoogleEvent(DSAEvent event) {
         Event googleEvent = new Event();
         EventDateTime startEventDateTime = new EventDateTime();
         EventDateTime endEventDateTime = new EventDateTime();
@@ -150,45 +203,301 @@ public class GoogleCalendar extends BaseCalendar {
             attendees.add(attendee);
         }
         googleEvent.setAttendees(attendees);
-        try {
-            Event submittedEvent = calendar.events().insert(event.getCalendar().getUid(), googleEvent).execute();
-            event.setUniqueId(submittedEvent.getId());
-            createEventNode(event);
-        } catch (IOException e) {
-            e.printStackTrace();
+        return googleEvent;
+    }
+
+    @Override
+    protected void removeEvent(DSAEvent event) throws IOException {
+        calendar.events().delete(event.getCalendar().getUid(), event.getUniqueId()).execute();
+    }
+
+    /**
+     * Sends the inserts through the batch endpoint, {@value #MAX_BATCH_SIZE}
+     * per HTTP request.
+     */
+    @Override
+    protected List<BulkResult> insertEvents(List<DSAEvent> events) {
+        BulkResult[] results = new BulkResult[events.size()];
+        for (int from = 0; from < events.size(); from += MAX_BATCH_SIZE) {
+            int to = Math.min(from + MAX_BATCH_SIZE, events.size());
+            Exception failure = null;
+            try {
+                BatchRequest batch = calendar.batch();
+                for (int i = from; i < to; i++) {
+                    DSAEvent event = events.get(i);
+                    calendar.events().insert(event.getCalendar().getUid(), toGoogleEvent(event))
+                            .queue(batch, new BulkCallback<>(results, i, null));
+                }
+                batch.execute();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Batch insert failed", e);
+                failure = e;
+            }
+            fillFailures(results, from, to, events, failure, false);
         }
+        return Arrays.asList(results);
     }
 
+    /**
+     * Sends the deletes through the batch endpoint, {@value #MAX_BATCH_SIZE}
+     * per HTTP request.
+     */
     @Override
-    public void deleteEvent(String uid, boolean destroyNode) {
-        try {
-            String calendarId = eventsNode.getChild(uid, false).getChild("calendarId", false).getValue().getString();
-            calendar.events().delete(calendarId, uid).execute();
-            if (destroyNode) {
-                eventsNode.removeChild(uid, false);
+    protected List<BulkResult> removeEvents(List<DSAEvent> events) {
+        BulkResult[] results = new BulkResult[events.size()];
+        for (int from = 0; from < events.size(); from += MAX_BATCH_SIZE) {
+            int to = Math.min(from + MAX_BATCH_SIZE, events.size());
+            Exception failure = null;
+            try {
+                BatchRequest batch = calendar.batch();
+                for (int i = from; i < to; i++) {
+                    DSAEvent event = events.get(i);
+                    calendar.events().delete(event.getCalendar().getUid(), event.getUniqueId())
+                            .queue(batch, new BulkCallback<>(results, i, event.getUniqueId()));
+                }
+                batch.execute();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Batch delete failed", e);
+                failure = e;
+            }
+            fillFailures(results, from, to, events, failure, true);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Fails the events of a batch that got no response.
+     *
+     * @param e        Failure of the batch request, or null if it completed
+     *                 without answering every request.
+     * @param existing Whether the events already have their unique IDs.
+     */
+    static void fillFailures(BulkResult[] results, int from, int to, List<DSAEvent> events, Exception e,
+                             boolean existing) {
+        for (int i = from; i < to; i++) {
+            if (results[i] == null) {
+                results[i] = BulkResult.failure(existing ? events.get(i).getUniqueId() : null,
+                        e != null ? e.getMessage() : "No response in batch");
             }
-        } catch (IOException | NullPointerException e) {
-            e.printStackTrace();
         }
     }
 
+    /* Stores the response to one request of a batch. */
+    static final class BulkCallback<T> extends JsonBatchCallback<T> {
+        private final BulkResult[] results;
+        private final int index;
+        private final String uid;
+
+        BulkCallback(BulkResult[] results, int index, String uid) {
+            this.results = results;
+            this.index = index;
+            this.uid = uid;
+        }
+
+        @Override
+        public void onSuccess(T response, HttpHeaders headers) {
+            results[index] = BulkResult.success(response instanceof Event ? ((Event) response).getId() : uid);
+        }
+
+        @Override
+        public void onFailure(GoogleJsonError error, HttpHeaders headers) {
+            results[index] = BulkResult.failure(uid, error.getMessage());
+        }
+    }
+
+    /**
+     * Retries server errors and rate limiting. Other HTTP errors are
+     * rejections of the request.
+     */
+    @Override
+    protected boolean isTransient(Exception e) {
+        if (e instanceof HttpResponseException) {
+            int status = ((HttpResponseException) e).getStatusCode();
+            return status >= HTTP_SERVER_ERROR || status == HTTP_TOO_MANY_REQUESTS;
+        }
+        return super.isTransient(e);
+    }
+
+    /**
+     * Sends a PATCH carrying only the changed fields. Start and end are sent
+     * together, as Google validates them as a pair.
+     */
+    @Override
+    protected void patchEvent(EventPatch patch) throws IOException {
+        DSAEvent edited = patch.getEdited();
+        Event googleEvent = new Event();
+        if (patch.contains(EventPatch.Field.TITLE)) {
+            googleEvent.setSummary(edited.getTitle());
+        }
+        if (patch.contains(EventPatch.Field.DESCRIPTION)) {
+            googleEvent.setDescription(edited.getDescription());
+        }
+        if (patch.contains(EventPatch.Field.LOCATION)) {
+            googleEvent.setLocation(edited.getLocation());
+        }
+        if (patch.changesTime()) {
+            googleEvent.setStart(new EventDateTime()
+                    .setDateTime(new DateTime(edited.getStartMillis()))
+                    .setTimeZone(edited.getTimeZone()));
+            googleEvent.setEnd(new EventDateTime()
+                    .setDateTime(new DateTime(edited.getEndMillis()))
+                    .setTimeZone(edited.getTimeZone()));
+        }
+        calendar.events().patch(patch.getCurrent().getCalendar().getUid(), patch.getUniqueId(), googleEvent).execute();
+    }
+
     @Override
-    public List<DSAEvent> getEvents() {
-        List<DSAEvent> events = new ArrayList<>();
+    public List<DSAEvent> getEvents() throws IOException {
+        SyncResult result = fetchChanges(new HashMap<>());
+        if (result == null) {
+            throw new IOException("Could not fetch the events of " + getName());
+        }
+        return result.getEvents();
+    }
+
+    /**
+     * Uses the sync token of every calendar in the account to only fetch the
+     * events changed since the previous sync. Falls back to a full listing
+     * when a calendar has no token yet or its token has expired.
+     * <p>
+     * Recurring events are synced as their master only. Moved and cancelled
+     * occurrences are excluded from the master, moved ones also being synced
+     * as events of their own.
+     */
+    @Override
+    protected SyncResult fetchChanges(Map<String, String> previousState) {
         try {
             CalendarList calendarList = calendar.calendarList().list().execute();
+            boolean incremental = !previousState.isEmpty();
+            for (CalendarListEntry listEntry : calendarList.getItems()) {
+                incremental &= previousState.containsKey(listEntry.getId());
+            }
+
+            List<DSAEvent> events = new ArrayList<>();
+            Set<String> removedIds = new HashSet<>();
+            Map<String, List<Long>> exceptions = new HashMap<>();
+            Map<String, String> syncState = new HashMap<>();
             for (CalendarListEntry listEntry : calendarList.getItems()) {
-                for (Event event : calendar.events().list(listEntry.getId()).execute().getItems()) {
-                    DSAEvent dsaEvent = parseEvent(listEntry, event);
-                    if (dsaEvent != null) {
-                        events.add(dsaEvent);
+                String syncToken = incremental ? previousState.get(listEntry.getId()) : null;
+                String pageToken = null;
+                do {
+                    Calendar.Events.List request = calendar.events().list(listEntry.getId())
+                            .setPageToken(pageToken)
+                            .setFields(HEADER_FIELDS);
+                    if (syncToken != null) {
+                        request.setSyncToken(syncToken);
                     }
-                }
+                    Events page = request.execute();
+                    for (Event event : page.getItems()) {
+                        if (event.getRecurringEventId() != null && event.getOriginalStartTime() != null) {
+                            exceptions.computeIfAbsent(event.getRecurringEventId(), k -> new ArrayList<>())
+                                    .add(toMillis(event.getOriginalStartTime()));
+                        }
+                        if (STATUS_CANCELLED.equals(event.getStatus())) {
+                            removedIds.add(event.getId());
+                            continue;
+                        }
+                        DSAEvent dsaEvent = parseEvent(listEntry, event);
+                        if (dsaEvent != null) {
+                            events.add(dsaEvent);
+                        }
+                    }
+                    pageToken = page.getNextPageToken();
+                    if (pageToken == null && page.getNextSyncToken() != null) {
+                        syncState.put(listEntry.getId(), page.getNextSyncToken());
+                    }
+                } while (pageToken != null);
+            }
+            applyExceptions(events, exceptions, incremental);
+
+            if (incremental) {
+                return SyncResult.delta(events, removedIds, syncState);
+            }
+            return SyncResult.full(events, syncState);
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() == HTTP_GONE && !previousState.isEmpty()) {
+                // Sync token expired, start over with a full sync.
+                return fetchChanges(new HashMap<>());
             }
+            e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
         }
-        return events;
+        return null;
+    }
+
+    /**
+     * Asks freebusy.query for every address in one request. Google treats
+     * each address as the id of its primary calendar.
+     */
+    @Override
+    public Map<String, List<TimeRange>> getAvailability(List<String> emails, Instant start, Instant end) throws IOException {
+        List<FreeBusyRequestItem> items = new ArrayList<>();
+        for (String email : emails) {
+            items.add(new FreeBusyRequestItem().setId(email));
+        }
+        FreeBusyRequest request = new FreeBusyRequest()
+                .setTimeMin(new DateTime(start.toEpochMilli()))
+                .setTimeMax(new DateTime(end.toEpochMilli()))
+                .setItems(items);
+        FreeBusyResponse response = calendar.freebusy().query(request).execute();
+
+        Map<String, List<TimeRange>> busy = new LinkedHashMap<>();
+        for (String email : emails) {
+            List<TimeRange> ranges = new ArrayList<>();
+            FreeBusyCalendar freeBusy = response.getCalendars() != null ? response.getCalendars().get(email) : null;
+            if (freeBusy != null && freeBusy.getBusy() != null) {
+                for (TimePeriod period : freeBusy.getBusy()) {
+                    ranges.add(new TimeRange(Instant.ofEpochMilli(period.getStart().getValue()),
+                            Instant.ofEpochMilli(period.getEnd().getValue())));
+                }
+            }
+            busy.put(email, ranges);
+        }
+        return busy;
+    }
+
+    /*
+     * Excludes the moved and cancelled occurrences from their masters. Incremental syncs carry over the exclusions
+     * of masters synced before, and re-sync unchanged masters that got new exceptions from the current snapshot.
+     */
+    private void applyExceptions(List<DSAEvent> events, Map<String, List<Long>> exceptions, boolean incremental) {
+        Map<String, DSAEvent> masters = new HashMap<>();
+        for (DSAEvent event : events) {
+            if (event.getRecurrence() != null) {
+                masters.put(event.getUniqueId(), event);
+            }
+        }
+        if (incremental) {
+            for (DSAEvent master : masters.values()) {
+                DSAEvent previous = getSnapshot().get(master.getUniqueId());
+                if (previous != null && previous.getRecurrence() != null
+                        && previous.getRecurrence().getRule().equals(master.getRecurrence().getRule())) {
+                    List<Long> excluded = new ArrayList<>();
+                    for (long start : previous.getRecurrence().getExcluded()) {
+                        excluded.add(start);
+                    }
+                    master.setRecurrence(master.getRecurrence().excluding(excluded));
+                }
+            }
+        }
+        for (Map.Entry<String, List<Long>> entry : exceptions.entrySet()) {
+            DSAEvent master = masters.get(entry.getKey());
+            if (master == null) {
+                DSAEvent previous = getSnapshot().get(entry.getKey());
+                if (previous == null || previous.getRecurrence() == null) {
+                    continue;
+                }
+                master = previous.copy();
+                masters.put(master.getUniqueId(), master);
+                events.add(master);
+            }
+            master.setRecurrence(master.getRecurrence().excluding(entry.getValue()));
+        }
+    }
+
+    private static long toMillis(EventDateTime time) {
+        return time.getDate() != null ? time.getDate().getValue() : time.getDateTime().getValue();
     }
 
     private DSAEvent parseEvent(CalendarListEntry listEntry, Event event) {
@@ -213,29 +522,59 @@ public class GoogleCalendar extends BaseCalendar {
 
         DSAEvent dsaEvent = new DSAEvent(event.getSummary(), start, end);
         dsaEvent.setUniqueId(event.getId());
-        dsaEvent.setDescription(event.getDescription());
         dsaEvent.setLocation(event.getLocation());
-        dsaEvent.setCalendar(new DSAIdentifier(listEntry.getId(), listEntry.getSummary()));
-        if (event.getAttendees() != null) {
-            for (EventAttendee attendee : event.getAttendees()) {
-                DSAGuest guest = new DSAGuest();
-                if (attendee.getId() != null) {
-                    guest.setUniqueId(attendee.getId());
-                }
-                if (attendee.getDisplayName() != null) {
-                    guest.setDisplayName(attendee.getDisplayName());
-                }
-                if (attendee.getEmail() != null) {
-                    guest.setEmail(attendee.getEmail());
-                }
-                if (attendee.getOrganizer() != null) {
-                    guest.setOrganizer(attendee.getOrganizer());
+        dsaEvent.setCalendar(Interner.IDENTIFIERS.intern(new DSAIdentifier(listEntry.getId(), listEntry.getSummary())));
+        if (eventStart.getTimeZone() != null) {
+            dsaEvent.setTimeZone(eventStart.getTimeZone());
+        }
+        if (event.getRecurrence() != null) {
+            dsaEvent.setRecurrence(parseRecurrence(dsaEvent, event.getRecurrence()));
+        }
+        // Headers carry the attendee emails only, enough for searching by attendee.
+        dsaEvent.getGuests().addAll(parseGuests(event));
+        dsaEvent.setDetailed(false);
+
+        return dsaEvent;
+    }
+
+    /* Rule of a master event, or null to keep only its first occurrence when the rule is not supported. */
+    private static Recurrence parseRecurrence(DSAEvent master, List<String> lines) {
+        Recurrence recurrence = null;
+        List<Long> excluded = new ArrayList<>();
+        try {
+            for (String line : lines) {
+                if (line.startsWith(RRULE_PREFIX)) {
+                    recurrence = Recurrence.parse(line);
+                } else if (line.startsWith(EXDATE_PREFIX)) {
+                    excluded.addAll(Recurrence.parseExDates(line, ZoneId.of(master.getTimeZone())));
                 }
-                dsaEvent.getGuests().add(guest);
             }
+        } catch (IllegalArgumentException | DateTimeException e) {
+            LOGGER.debug("Keeping only the first occurrence of " + master.getUniqueId(), e);
+            return null;
         }
+        return recurrence != null ? recurrence.excluding(excluded) : null;
+    }
 
-        return dsaEvent;
+    @Override
+    protected EventDetails fetchDetails(DSAEvent header) throws IOException {
+        Event event = calendar.events().get(header.getCalendar().getUid(), header.getUniqueId()).execute();
+        if (event == null || STATUS_CANCELLED.equals(event.getStatus())) {
+            return null;
+        }
+        return new EventDetails(event.getDescription(), parseGuests(event));
+    }
+
+    private static List<DSAGuest> parseGuests(Event event) {
+        List<DSAGuest> guests = new ArrayList<>();
+        if (event.getAttendees() != null) {
+            for (EventAttendee attendee : event.getAttendees()) {
+                DSAGuest guest = new DSAGuest(attendee.getId(), attendee.getDisplayName(), attendee.getEmail(),
+                        attendee.getOrganizer() != null && attendee.getOrganizer());
+                guests.add(Interner.GUESTS.intern(guest));
+            }
+        }
+        return guests;
     }
 
     @Override
@@ -1,43 +1,79 @@
 package org.dsa.iot.calendar.guest;
 
+import java.util.Objects;
+
 /**
- * Represents a guest that attends a meeting.
+ * Represents a guest that attends a meeting. Providers intern the guests of
+ * synced events through {@link org.dsa.iot.calendar.Interner#GUESTS}, so
+ * those instances are shared; guests are immutable for that reason.
  */
 public class DSAGuest {
-    private String uniqueId;
-    private String displayName;
-    private String email;
-    private boolean organizer;
+    private static final String MAILTO = "mailto:";
 
-    public String getUniqueId() {
-        return uniqueId;
-    }
+    private final String uniqueId;
+    private final String displayName;
+    private final String email;
+    private final boolean organizer;
 
-    public void setUniqueId(String uniqueId) {
+    /**
+     * @param uniqueId    Provider ID of the guest, or null.
+     * @param displayName Name of the guest, or null.
+     * @param email       Email address of the guest, or null.
+     * @param organizer   Whether the guest organizes the meeting.
+     */
+    public DSAGuest(String uniqueId, String displayName, String email, boolean organizer) {
         this.uniqueId = uniqueId;
+        this.displayName = displayName;
+        this.email = email;
+        this.organizer = organizer;
     }
 
-    public String getDisplayName() {
-        return displayName;
+    /**
+     * @param address Email address, or a {@code mailto:} URI as used by
+     *                iCalendar.
+     * @return The email address alone, or null.
+     */
+    public static String toEmail(String address) {
+        if (address != null && address.regionMatches(true, 0, MAILTO, 0, MAILTO.length())) {
+            return address.substring(MAILTO.length());
+        }
+        return address;
     }
 
-    public void setDisplayName(String displayName) {
-        this.displayName = displayName;
+    public String getUniqueId() {
+        return uniqueId;
     }
 
-    public String getEmail() {
-        return email;
+    public String getDisplayName() {
+        return displayName;
     }
 
-    public void setEmail(String email) {
-        this.email = email;
+    public String getEmail() {
+        return email;
     }
 
     public boolean isOrganizer() {
         return organizer;
     }
 
-    public void setOrganizer(boolean organizer) {
-        this.organizer = organizer;
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        DSAGuest guest = (DSAGuest) o;
+        return organizer == guest.organizer
+                && Objects.equals(uniqueId, guest.uniqueId)
+                && Objects.equals(displayName, guest.displayName)
+                && Objects.equals(email, guest.email);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(uniqueId, displayName, email, organizer);
     }
 }
@@ -0,0 +1,42 @@
+package org.dsa.iot.calendar;
+
+import org.dsa.iot.calendar.event.DSAEvent;
+import org.dsa.iot.dslink.node.actions.table.Row;
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ActionsTest {
+    private static final int CALENDAR_ID_COLUMN = 6;
+    private static final int CALENDAR_TITLE_COLUMN = 7;
+
+    @Test
+    public void events_without_a_calendar_use_the_account() {
+        DSAEvent event = event();
+
+        Row row = Actions.eventRow("exchange", event);
+
+        assertThat(row.getValues().get(0).getString()).isEqualTo("uid");
+        assertThat(row.getValues().get(CALENDAR_ID_COLUMN).getString()).isEqualTo("exchange");
+        assertThat(row.getValues().get(CALENDAR_TITLE_COLUMN).getString()).isEqualTo("exchange");
+    }
+
+    @Test
+    public void calendar_columns_follow_the_declared_order() {
+        DSAEvent event = event();
+        event.setCalendar(new DSAIdentifier("primary@example.com", "Rooms"));
+
+        Row row = Actions.eventRow("google", event);
+
+        assertThat(row.getValues().get(CALENDAR_ID_COLUMN).getString()).isEqualTo("primary@example.com");
+        assertThat(row.getValues().get(CALENDAR_TITLE_COLUMN).getString()).isEqualTo("Rooms");
+    }
+
+    private DSAEvent event() {
+        DSAEvent event = new DSAEvent("Meeting", Instant.parse("2016-10-24T09:00:00Z"), Instant.parse("2016-10-24T10:00:00Z"));
+        event.setUniqueId("uid");
+        return event;
+    }
+}
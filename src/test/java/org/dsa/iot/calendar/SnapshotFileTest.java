@@ -0,0 +1,61 @@
+package org.dsa.iot.calendar;
+
+import org.dsa.iot.calendar.event.DSAEvent;
+import org.dsa.iot.calendar.event.Recurrence;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SnapshotFileTest {
+    @Test
+    public void saved_events_and_sync_state_are_loaded_back() throws IOException {
+        File directory = Files.createTempDirectory("snapshots").toFile();
+        DSAEvent single = event("single", "2016-10-24T09:00:00Z");
+        DSAEvent weekly = event("weekly", "2016-10-24T11:00:00Z");
+        weekly.setRecurrence(Recurrence.parse("FREQ=WEEKLY;BYDAY=MO"));
+        Map<String, String> syncState = new HashMap<>();
+        syncState.put("primary", "token");
+
+        new SnapshotFile(directory, "calendar/name").save(Arrays.asList(single, weekly), syncState);
+        List<DSAEvent> events = new ArrayList<>();
+        Map<String, String> loadedState = new HashMap<>();
+        boolean loaded = new SnapshotFile(directory, "calendar/name").load(events, loadedState);
+
+        assertThat(loaded).isTrue();
+        assertThat(events).hasSize(2);
+        assertThat(events.get(0).contentEquals(single)).isTrue();
+        assertThat(events.get(1).contentEquals(weekly)).isTrue();
+        assertThat(loadedState).isEqualTo(syncState);
+    }
+
+    @Test
+    public void missing_snapshots_leave_the_collections_untouched() throws IOException {
+        File directory = Files.createTempDirectory("snapshots").toFile();
+        List<DSAEvent> events = new ArrayList<>();
+        Map<String, String> syncState = new HashMap<>();
+
+        boolean loaded = new SnapshotFile(directory, "missing").load(events, syncState);
+
+        assertThat(loaded).isFalse();
+        assertThat(events).isEmpty();
+        assertThat(syncState).isEmpty();
+    }
+
+    private static DSAEvent event(String uid, String start) {
+        Instant startInstant = Instant.parse(start);
+        DSAEvent event = new DSAEvent(uid, startInstant, startInstant.plusSeconds(3600));
+        event.setUniqueId(uid);
+        event.setTimeZone("UTC");
+        return event;
+    }
+}
@@ -0,0 +1,61 @@
+package org.dsa.iot.calendar;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimingWheelTest {
+    private static final long TICK = 1000;
+
+    @Test
+    public void runs_tasks_at_their_deadline_and_not_before() {
+        TimingWheel wheel = new TimingWheel(TICK, 0);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(5 * TICK, () -> fired.add("5"));
+        wheel.schedule(2 * TICK + 1, () -> fired.add("3"));
+
+        wheel.advanceTo(2 * TICK);
+        assertThat(fired).isEmpty();
+        wheel.advanceTo(3 * TICK);
+        assertThat(fired).containsExactly("3");
+        wheel.advanceTo(10 * TICK);
+        assertThat(fired).containsExactly("3", "5");
+        assertThat(wheel.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void cancelled_tasks_never_run() {
+        TimingWheel wheel = new TimingWheel(TICK, 0);
+        List<String> fired = new ArrayList<>();
+        TimingWheel.Timeout timeout = wheel.schedule(TICK, () -> fired.add("cancelled"));
+        timeout.cancel();
+
+        wheel.advanceTo(2 * TICK);
+        assertThat(fired).isEmpty();
+        assertThat(wheel.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void cascades_far_deadlines_down_to_the_exact_tick() {
+        long start = 12345;
+        TimingWheel wheel = new TimingWheel(1, start);
+        long[] deadlines = {start + 64, start + 4096 + 7, start + 300_000, start + 20_000_000};
+        List<Long> fired = new ArrayList<>();
+        long[] now = {start};
+        for (long deadline : deadlines) {
+            wheel.schedule(deadline, () -> fired.add(now[0]));
+        }
+
+        for (long deadline : deadlines) {
+            now[0] = deadline - 1;
+            wheel.advanceTo(now[0]);
+            now[0] = deadline;
+            wheel.advanceTo(now[0]);
+        }
+
+        assertThat(fired).containsExactly(start + 64, start + 4096 + 7, start + 300_000, start + 20_000_000);
+    }
+}
@@ -0,0 +1,158 @@
+package org.dsa.iot.calendar;
+
+import org.dsa.iot.calendar.event.DSAEvent;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WriteBehindQueueTest {
+    private static final long TICK = 1000;
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final List<String> sent = new ArrayList<>();
+    private final List<Exception> failures = new ArrayList<>();
+    private final TimingWheel wheel = new TimingWheel(TICK, System.currentTimeMillis());
+    private final WriteBehindQueue queue = new WriteBehindQueue(new RecordingSender(), tasks::add, wheel);
+
+    @Test
+    public void edits_queued_behind_a_send_are_coalesced() {
+        DSAEvent first = event("a", "First");
+        queue.update(first, edit(first, "Second"));
+        DSAEvent second = edit(first, "Second");
+        CompletableFuture<Void> third = queue.update(second, edit(second, "Third"));
+        CompletableFuture<Void> fourth = queue.update(second, edit(second, "Fourth"));
+
+        Map<String, DSAEvent> shown = new HashMap<>();
+        queue.overlay(shown);
+        runTasks();
+
+        assertThat(shown.get("a").getTitle()).isEqualTo("Fourth");
+        assertThat(sent).containsExactly("UPDATE a First>Second", "UPDATE a Second>Fourth");
+        assertThat(third.isDone() && fourth.isDone()).isTrue();
+        assertThat(queue.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void deleting_an_unsent_create_sends_nothing() {
+        DSAEvent blocker = event("blocker", "Blocker");
+        queue.delete(blocker);
+        DSAEvent created = new DSAEvent("New", Instant.EPOCH, Instant.EPOCH);
+        queue.create(created);
+
+        assertThat(created.getUniqueId().startsWith(WriteBehindQueue.PROVISIONAL_PREFIX)).isTrue();
+        assertThat(queue.delete(created).isDone()).isTrue();
+        runTasks();
+
+        assertThat(sent).containsExactly("DELETE blocker");
+    }
+
+    @Test
+    public void transient_failures_are_retried_with_backoff() {
+        DSAEvent event = event("flaky", "Flaky");
+        CompletableFuture<Void> deleted = queue.delete(event);
+
+        runTasks();
+        assertThat(sent).containsExactly("DELETE flaky");
+        assertThat(deleted.isDone()).isFalse();
+
+        wheel.advanceTo(System.currentTimeMillis() + 2 * TICK);
+        runTasks();
+        assertThat(sent).containsExactly("DELETE flaky", "DELETE flaky");
+        assertThat(deleted.isDone()).isTrue();
+        assertThat(failures).isEmpty();
+    }
+
+    @Test
+    public void mutations_behind_a_create_move_to_the_assigned_id() {
+        DSAEvent created = new DSAEvent("New", Instant.EPOCH, Instant.EPOCH);
+        queue.create(created);
+        // The create is already handed to the sender, so the edit queues behind it.
+        queue.update(created, edit(created, "Renamed"));
+
+        runTasks();
+
+        assertThat(sent).containsExactly("CREATE New", "UPDATE assigned New>Renamed");
+    }
+
+    @Test
+    public void mutations_behind_a_failed_create_are_dropped() {
+        DSAEvent created = new DSAEvent("Rejected", Instant.EPOCH, Instant.EPOCH);
+        CompletableFuture<Void> create = queue.create(created);
+        CompletableFuture<Void> rename = queue.update(created, edit(created, "Renamed"));
+
+        runTasks();
+
+        assertThat(sent).containsExactly("CREATE Rejected");
+        assertThat(create.isCompletedExceptionally() && rename.isCompletedExceptionally()).isTrue();
+        assertThat(failures).hasSize(1);
+        assertThat(queue.isEmpty()).isTrue();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private DSAEvent event(String uid, String title) {
+        DSAEvent event = new DSAEvent(title, Instant.EPOCH, Instant.EPOCH.plusSeconds(3600));
+        event.setUniqueId(uid);
+        return event;
+    }
+
+    private DSAEvent edit(DSAEvent event, String title) {
+        DSAEvent edited = event.copy();
+        edited.setTitle(title);
+        return edited;
+    }
+
+    private final class RecordingSender implements WriteBehindQueue.Sender {
+        private boolean failedOnce;
+
+        @Override
+        public String send(WriteBehindQueue.Mutation mutation) throws Exception {
+            switch (mutation.getKind()) {
+                case CREATE:
+                    sent.add("CREATE " + mutation.getEvent().getTitle());
+                    if (mutation.getEvent().getTitle().equals("Rejected")) {
+                        throw new IllegalStateException("Calendar is read-only");
+                    }
+                    return "assigned";
+                case UPDATE:
+                    sent.add("UPDATE " + mutation.getUniqueId() + " " + mutation.getBase().getTitle()
+                            + ">" + mutation.getEvent().getTitle());
+                    return mutation.getUniqueId();
+                default:
+                    sent.add("DELETE " + mutation.getUniqueId());
+                    if (mutation.getUniqueId().equals("flaky") && !failedOnce) {
+                        failedOnce = true;
+                        throw new IOException("Timed out");
+                    }
+                    return mutation.getUniqueId();
+            }
+        }
+
+        @Override
+        public boolean isTransient(Exception e) {
+            return e instanceof IOException;
+        }
+
+        @Override
+        public void onSettled(WriteBehindQueue.Mutation mutation, Exception failure) {
+            if (failure != null) {
+                failures.add(failure);
+            }
+        }
+    }
+}
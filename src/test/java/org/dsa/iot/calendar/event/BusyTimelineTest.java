@@ -0,0 +1,57 @@
+package org.dsa.iot.calendar.event;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BusyTimelineTest {
+    private static final String TITLE = "meeting";
+    private final Instant origin = Instant.parse("2017-06-05T00:00:00Z");
+    private final Duration quarter = Duration.of(15, MINUTES);
+
+    @Test
+    public void marks_every_slot_an_event_touches() {
+        BusyTimeline timeline = new BusyTimeline(origin, quarter, 96);
+
+        timeline.add(new DSAEvent(TITLE, origin.plus(20, MINUTES), origin.plus(50, MINUTES)));
+
+        assertThat(BusyTimeline.toBitString(timeline.getBusy(origin, 6), 6)).isEqualTo("011100");
+    }
+
+    @Test
+    public void slot_stays_busy_until_every_event_is_removed() {
+        BusyTimeline timeline = new BusyTimeline(origin, quarter, 96);
+        DSAEvent first = new DSAEvent(TITLE, origin, origin.plus(30, MINUTES));
+        DSAEvent second = new DSAEvent(TITLE, origin.plus(15, MINUTES), origin.plus(45, MINUTES));
+        timeline.add(first);
+        timeline.add(second);
+
+        timeline.remove(first);
+
+        assertThat(BusyTimeline.toBitString(timeline.getBusy(origin, 4), 4)).isEqualTo("0110");
+    }
+
+    @Test
+    public void reads_bits_across_word_boundaries() {
+        BusyTimeline timeline = new BusyTimeline(origin, quarter, 200);
+        timeline.add(new DSAEvent(TITLE, origin.plus(63 * 15, MINUTES), origin.plus(66 * 15, MINUTES)));
+
+        long[] busy = timeline.getBusy(origin.plus(60 * 15, MINUTES), 8);
+
+        assertThat(BusyTimeline.toBitString(busy, 8)).isEqualTo("00011100");
+    }
+
+    @Test
+    public void combines_calendars_word_by_word() {
+        long[] first = {0b0110L};
+        long[] second = {0b0011L};
+
+        assertThat(BusyTimeline.or(Arrays.asList(first, second))).containsExactly(0b0111L);
+        assertThat(BusyTimeline.and(Arrays.asList(first, second))).containsExactly(0b0010L);
+    }
+}
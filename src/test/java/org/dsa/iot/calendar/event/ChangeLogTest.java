@@ -0,0 +1,90 @@
+package org.dsa.iot.calendar.event;
+
+import org.assertj.core.util.Lists;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChangeLogTest {
+    @Test
+    public void numbers_changes_and_resumes_after_a_sequence() {
+        ChangeLog log = new ChangeLog(10, 0);
+        EventSnapshot first = EventSnapshot.EMPTY.next(Lists.newArrayList(event("a"), event("b")));
+        log.append(EventDelta.between(EventSnapshot.EMPTY, first));
+        log.append(EventDelta.between(first, first.next(Lists.newArrayList(event("a")))));
+
+        Recorder recorder = new Recorder();
+        log.subscribe(1, recorder);
+        log.append(EventDelta.between(EventSnapshot.EMPTY, EventSnapshot.EMPTY.next(Lists.newArrayList(event("c")))));
+
+        assertThat(log.getLastSequence()).isEqualTo(4L);
+        assertThat(recorder.changes).containsExactly("2 ADDED b", "3 REMOVED b", "4 ADDED c");
+        assertThat(recorder.gap).isEqualTo(-1L);
+    }
+
+    @Test
+    public void reports_a_gap_when_resuming_from_a_dropped_sequence() {
+        ChangeLog log = new ChangeLog(1, 0);
+        log.append(EventDelta.between(EventSnapshot.EMPTY, EventSnapshot.EMPTY.next(Lists.newArrayList(event("a"), event("b")))));
+
+        Recorder dropped = new Recorder();
+        log.subscribe(0, dropped);
+        Recorder otherRun = new Recorder();
+        log.subscribe(7, otherRun);
+
+        assertThat(dropped.gap).isEqualTo(2L);
+        assertThat(dropped.changes).isEmpty();
+        assertThat(otherRun.gap).isEqualTo(2L);
+    }
+
+    @Test
+    public void sequences_of_an_earlier_run_are_reported_as_a_gap() {
+        ChangeLog earlier = new ChangeLog(10);
+        earlier.append(EventDelta.between(EventSnapshot.EMPTY, EventSnapshot.EMPTY.next(Lists.newArrayList(event("a")))));
+        long since = earlier.getLastSequence();
+
+        ChangeLog restarted = new ChangeLog(10, since + 1);
+        restarted.append(EventDelta.between(EventSnapshot.EMPTY,
+                EventSnapshot.EMPTY.next(Lists.newArrayList(event("b"), event("c")))));
+        Recorder recorder = new Recorder();
+        restarted.subscribe(since, recorder);
+
+        assertThat(recorder.gap).isEqualTo(restarted.getLastSequence());
+        assertThat(recorder.changes).isEmpty();
+    }
+
+    @Test
+    public void runs_number_their_changes_above_their_start_time() {
+        long before = System.currentTimeMillis() * 1000;
+        ChangeLog log = new ChangeLog(10);
+
+        assertThat(log.getLastSequence() >= before).isTrue();
+    }
+
+    private static DSAEvent event(String uid) {
+        DSAEvent event = new DSAEvent(uid, Instant.parse("2016-10-24T09:00:00Z"), Instant.parse("2016-10-24T10:00:00Z"));
+        event.setUniqueId(uid);
+        return event;
+    }
+
+    private static final class Recorder implements ChangeLog.Listener {
+        private final List<String> changes = new ArrayList<>();
+        private long gap = -1;
+
+        @Override
+        public void onChanges(List<ChangeLog.Change> logged) {
+            for (ChangeLog.Change change : logged) {
+                changes.add(change.getSequence() + " " + change.getType() + " " + change.getEvent().getUniqueId());
+            }
+        }
+
+        @Override
+        public void onGap(long lastSequence) {
+            gap = lastSequence;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.dsa.iot.calendar.event;
+
+import org.dsa.iot.calendar.DSAIdentifier;
+import org.dsa.iot.calendar.guest.DSAGuest;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DSAEventTest {
+    @Test
+    public void json_round_trip_keeps_every_synced_field() {
+        DSAEvent event = new DSAEvent("Standup", Instant.parse("2016-10-24T07:00:00Z"), Instant.parse("2016-10-24T07:15:00Z"));
+        event.setUniqueId("standup");
+        event.setDescription("Daily");
+        event.setTimeZone("Europe/Berlin");
+        event.setCalendar(new DSAIdentifier("team@example.com", "Team"));
+        event.setReadOnly(true);
+        event.setLocation("Room 1");
+        event.setDetailed(false);
+        event.setRecurrence(Recurrence.parse("FREQ=DAILY;COUNT=10")
+                .excluding(Arrays.asList(Instant.parse("2016-10-25T07:00:00Z").toEpochMilli())));
+        event.getGuests().add(new DSAGuest("g1", "Ann", "ann@example.com", true));
+
+        DSAEvent restored = DSAEvent.fromJson(event.toJson());
+
+        assertThat(restored.contentEquals(event)).isTrue();
+        assertThat(restored.getRecurrence()).isEqualTo(event.getRecurrence());
+    }
+
+    @Test
+    public void json_round_trip_keeps_the_occurrence_id() {
+        DSAEvent event = new DSAEvent("Moved", Instant.parse("2016-10-26T09:00:00Z"), Instant.parse("2016-10-26T10:00:00Z"));
+        event.setUniqueId("series_1477386000000");
+        event.setOccurrenceId(new OccurrenceId("series", Instant.parse("2016-10-25T09:00:00Z").toEpochMilli()));
+
+        DSAEvent restored = DSAEvent.fromJson(event.toJson());
+
+        assertThat(restored.getOccurrenceId()).isEqualTo(event.getOccurrenceId());
+        assertThat(restored.getRecurrence()).isNull();
+        assertThat(restored.isDetailed()).isTrue();
+    }
+}
@@ -0,0 +1,73 @@
+package org.dsa.iot.calendar.event;
+
+import org.dsa.iot.calendar.guest.DSAGuest;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventIndexTest {
+    @Test
+    public void finds_events_by_all_title_words_and_location() {
+        EventIndex index = new EventIndex();
+        index.add(event("1", "Weekly Sync, Team A", "Building A / Room 2"));
+        index.add(event("2", "Team lunch", "Cafeteria"));
+
+        assertThat(index.find(EventIndex.Field.TITLE, "team")).containsOnly("1", "2");
+        assertThat(index.find(EventIndex.Field.TITLE, "SYNC team")).containsOnly("1");
+        assertThat(index.find(EventIndex.Field.TITLE, "sync lunch")).isEmpty();
+        assertThat(index.find(EventIndex.Field.LOCATION, "building a")).containsOnly("1");
+    }
+
+    @Test
+    public void finds_guests_by_email_or_local_part() {
+        EventIndex index = new EventIndex();
+        DSAEvent event = event("1", "Review", null);
+        event.getGuests().add(guest("Alice@Example.com"));
+        index.add(event);
+
+        assertThat(index.find(EventIndex.Field.GUEST, "alice@example.com")).containsOnly("1");
+        assertThat(index.find(EventIndex.Field.GUEST, "alice@")).containsOnly("1");
+        assertThat(index.find(EventIndex.Field.GUEST, "bob")).isEmpty();
+    }
+
+    @Test
+    public void finds_guests_synced_as_mailto_uris() {
+        EventIndex index = new EventIndex();
+        DSAEvent event = event("1", "Review", null);
+        event.getGuests().add(guest("mailto:alice@example.com"));
+        index.add(event);
+
+        assertThat(index.find(EventIndex.Field.GUEST, "alice")).containsOnly("1");
+        assertThat(index.find(EventIndex.Field.GUEST, "alice@example.com")).containsOnly("1");
+    }
+
+    @Test
+    public void updates_and_removals_drop_stale_terms() {
+        EventIndex index = new EventIndex();
+        index.add(event("1", "Old title", null));
+        index.addGuests("1", Collections.singletonList(guest("bob@example.com")));
+
+        index.add(event("1", "New title", null));
+        assertThat(index.find(EventIndex.Field.TITLE, "old")).isEmpty();
+        assertThat(index.find(EventIndex.Field.GUEST, "bob")).isEmpty();
+        assertThat(index.find(EventIndex.Field.TITLE, "new")).containsOnly("1");
+
+        index.remove("1");
+        assertThat(index.find(EventIndex.Field.TITLE, "new")).isEmpty();
+        assertThat(index.size()).isEqualTo(0);
+    }
+
+    private static DSAEvent event(String uid, String title, String location) {
+        DSAEvent event = new DSAEvent(title, Instant.parse("2016-10-24T09:00:00Z"), Instant.parse("2016-10-24T10:00:00Z"));
+        event.setUniqueId(uid);
+        event.setLocation(location);
+        return event;
+    }
+
+    private static DSAGuest guest(String email) {
+        return new DSAGuest(null, null, email, false);
+    }
+}
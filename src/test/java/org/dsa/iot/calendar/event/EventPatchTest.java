@@ -0,0 +1,42 @@
+package org.dsa.iot.calendar.event;
+
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventPatchTest {
+    @Test
+    public void between_finds_only_the_changed_fields() {
+        DSAEvent current = event();
+        DSAEvent edited = current.copy();
+        edited.setTitle("Renamed");
+        edited.setEnd(Instant.parse("2016-10-24T11:00:00Z"));
+
+        EventPatch patch = EventPatch.between(current, edited);
+
+        assertThat(patch.getFields()).containsOnly(EventPatch.Field.TITLE, EventPatch.Field.END);
+        assertThat(patch.changesTime()).isTrue();
+        assertThat(patch.getUniqueId()).isEqualTo("uid");
+        assertThat(EventPatch.between(current, current.copy()).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void missing_description_of_a_header_is_not_a_change() {
+        DSAEvent header = event();
+        header.setDetailed(false);
+        DSAEvent edited = header.copy();
+        edited.setDescription("Agenda");
+
+        assertThat(EventPatch.between(edited, header).isEmpty()).isTrue();
+        assertThat(EventPatch.between(header, edited).getFields()).containsOnly(EventPatch.Field.DESCRIPTION);
+    }
+
+    private DSAEvent event() {
+        DSAEvent event = new DSAEvent("Meeting", Instant.parse("2016-10-24T09:00:00Z"), Instant.parse("2016-10-24T10:00:00Z"));
+        event.setUniqueId("uid");
+        event.setLocation("Room 1");
+        return event;
+    }
+}
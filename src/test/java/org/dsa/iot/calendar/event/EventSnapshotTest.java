@@ -0,0 +1,248 @@
+package org.dsa.iot.calendar.event;
+
+import org.assertj.core.util.Lists;
+import org.dsa.iot.calendar.guest.DSAGuest;
+import org.dsa.iot.dslink.util.json.JsonArray;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventSnapshotTest {
+    @Test
+    public void next_increments_generation_and_sorts_by_start() {
+        DSAEvent late = event("late", "2016-10-24T15:00", "2016-10-24T16:00");
+        DSAEvent early = event("early", "2016-10-24T09:00", "2016-10-24T10:00");
+
+        EventSnapshot snapshot = EventSnapshot.EMPTY.next(Lists.newArrayList(late, early));
+
+        assertThat(snapshot.getGeneration()).isEqualTo(1L);
+        assertThat(snapshot.getEvents()).containsExactly(early, late);
+        assertThat(snapshot.get("late")).isEqualTo(late);
+        assertThat(EventSnapshot.EMPTY.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void getEventsInRange_finds_long_events_starting_before_range() {
+        DSAEvent allDay = event("allDay", "2016-10-24T00:00", "2016-10-25T00:00");
+        DSAEvent before = event("before", "2016-10-24T08:00", "2016-10-24T09:00");
+        DSAEvent inside = event("inside", "2016-10-24T13:00", "2016-10-24T14:00");
+        DSAEvent after = event("after", "2016-10-24T18:00", "2016-10-24T19:00");
+        EventSnapshot snapshot = EventSnapshot.EMPTY.next(Lists.newArrayList(after, inside, before, allDay));
+
+        List<DSAEvent> result = snapshot.getEventsInRange(instant("2016-10-24T12:00"), instant("2016-10-24T17:00"));
+
+        assertThat(result).containsExactly(allDay, inside);
+    }
+
+    @Test
+    public void long_events_are_merged_in_order_without_widening_the_scan() {
+        DSAEvent conference = event("conference", "2016-10-01T00:00", "2016-11-01T00:00");
+        DSAEvent early = event("early", "2016-10-02T09:00", "2016-10-02T10:00");
+        DSAEvent morning = event("morning", "2016-10-24T08:00", "2016-10-24T09:00");
+        DSAEvent noon = event("noon", "2016-10-24T12:00", "2016-10-24T13:00");
+        DSAEvent trip = event("trip", "2016-10-24T10:00", "2016-10-27T10:00");
+        EventSnapshot snapshot = EventSnapshot.EMPTY.next(Lists.newArrayList(noon, trip, early, conference, morning));
+
+        List<DSAEvent> ascending = snapshot.getEventsInRange(instant("2016-10-24T07:00"), instant("2016-10-24T14:00"));
+        List<DSAEvent> descending = Lists.newArrayList(snapshot.iterateRange(instant("2016-10-24T07:00"),
+                instant("2016-10-24T14:00"), true));
+
+        assertThat(ascending).containsExactly(conference, morning, trip, noon);
+        assertThat(descending).containsExactly(noon, trip, morning, conference);
+    }
+
+    @Test
+    public void titles_and_descriptions_are_shared_between_snapshots() {
+        DSAEvent first = event("first", "2016-10-24T09:00", "2016-10-24T10:00");
+        first.setTitle(new String("Standup"));
+        DSAEvent second = event("second", "2016-10-25T09:00", "2016-10-25T10:00");
+        second.setTitle(new String("Standup"));
+
+        EventSnapshot snapshot = EventSnapshot.EMPTY.next(Lists.newArrayList(first, second));
+
+        assertThat(snapshot.get("first").getTitle()).isSameAs(snapshot.get("second").getTitle());
+    }
+
+    @Test
+    public void getEventsInRange_includes_events_starting_at_range_end() {
+        DSAEvent atEnd = event("atEnd", "2016-10-24T17:00", "2016-10-24T17:00");
+        EventSnapshot snapshot = EventSnapshot.EMPTY.next(Lists.newArrayList(atEnd));
+
+        List<DSAEvent> result = snapshot.getEventsInRange(instant("2016-10-24T12:00"), instant("2016-10-24T17:00"));
+
+        assertThat(result).containsExactly(atEnd);
+    }
+
+    @Test
+    public void iterateRange_walks_both_directions_in_start_then_uid_order() {
+        DSAEvent b = event("b", "2016-10-24T09:00", "2016-10-24T10:00");
+        DSAEvent a = event("a", "2016-10-24T09:00", "2016-10-24T10:00");
+        DSAEvent later = event("later", "2016-10-24T13:00", "2016-10-24T14:00");
+        DSAEvent outside = event("outside", "2016-10-24T18:00", "2016-10-24T19:00");
+        EventSnapshot snapshot = EventSnapshot.EMPTY.next(Lists.newArrayList(later, b, outside, a));
+
+        assertThat(Lists.newArrayList(snapshot.iterateRange(instant("2016-10-24T08:00"), instant("2016-10-24T17:00"), false)))
+                .containsExactly(a, b, later);
+        assertThat(Lists.newArrayList(snapshot.iterateRange(instant("2016-10-24T08:00"), instant("2016-10-24T17:00"), true)))
+                .containsExactly(later, b, a);
+    }
+
+    @Test
+    public void cursor_resumes_after_the_event_it_was_taken_from() {
+        DSAEvent a = event("a", "2016-10-24T09:00", "2016-10-24T10:00");
+        DSAEvent b = event("b", "2016-10-24T09:00", "2016-10-24T10:00");
+        DSAEvent c = event("c", "2016-10-24T11:00", "2016-10-24T12:00");
+
+        EventCursor cursor = EventCursor.parse(EventCursor.of(b));
+
+        assertThat(cursor.compareTo(a)).isLessThan(0);
+        assertThat(cursor.compareTo(b)).isEqualTo(0);
+        assertThat(cursor.compareTo(c)).isGreaterThan(0);
+    }
+
+    @Test
+    public void iterateRange_resumes_after_a_cursor_in_both_directions() {
+        DSAEvent a = event("a", "2016-10-24T09:00", "2016-10-24T10:00");
+        DSAEvent b = event("b", "2016-10-24T09:00", "2016-10-24T10:00");
+        DSAEvent c = event("c", "2016-10-24T11:00", "2016-10-24T12:00");
+        DSAEvent daily = event("daily", "2016-10-24T10:00", "2016-10-24T10:30");
+        daily.setRecurrence(Recurrence.parse("FREQ=DAILY;COUNT=2"));
+        EventSnapshot snapshot = EventSnapshot.EMPTY.next(Lists.newArrayList(c, b, a, daily));
+        EventCursor cursor = EventCursor.parse(EventCursor.of(b));
+
+        List<DSAEvent> ascending = Lists.newArrayList(snapshot.iterateRange(instant("2016-10-24T00:00"),
+                instant("2016-10-26T00:00"), false, cursor));
+        List<DSAEvent> descending = Lists.newArrayList(snapshot.iterateRange(instant("2016-10-24T00:00"),
+                instant("2016-10-26T00:00"), true, cursor));
+
+        assertThat(ascending).hasSize(3);
+        assertThat(ascending.get(0).getStartMillis()).isEqualTo(instant("2016-10-24T10:00").toEpochMilli());
+        assertThat(ascending.get(1)).isEqualTo(c);
+        assertThat(ascending.get(2).getStartMillis()).isEqualTo(instant("2016-10-25T10:00").toEpochMilli());
+        assertThat(descending).containsExactly(a);
+    }
+
+    @Test
+    public void delta_reports_added_updated_and_removed_events() {
+        DSAEvent kept = event("kept", "2016-10-24T09:00", "2016-10-24T10:00");
+        DSAEvent changed = event("changed", "2016-10-24T11:00", "2016-10-24T12:00");
+        DSAEvent removed = event("removed", "2016-10-24T13:00", "2016-10-24T14:00");
+        EventSnapshot previous = EventSnapshot.EMPTY.next(Lists.newArrayList(kept, changed, removed));
+
+        DSAEvent keptCopy = event("kept", "2016-10-24T09:00", "2016-10-24T10:00");
+        DSAEvent changedCopy = event("changed", "2016-10-24T11:30", "2016-10-24T12:00");
+        DSAEvent added = event("added", "2016-10-24T15:00", "2016-10-24T16:00");
+        EventSnapshot next = previous.next(Lists.newArrayList(keptCopy, changedCopy, added));
+
+        EventDelta delta = EventDelta.between(previous, next);
+
+        assertThat(delta.getAdded()).containsExactly(added);
+        assertThat(delta.getUpdated()).containsExactly(changedCopy);
+        assertThat(delta.getRemoved()).containsExactly(removed);
+        assertThat(EventDelta.between(next, next).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void events_are_read_only_views_over_the_columns() {
+        DSAEvent source = event("source", "2016-10-24T09:00", "2016-10-24T10:00");
+        source.setLocation("Room 1");
+        EventSnapshot snapshot = EventSnapshot.EMPTY.next(Lists.newArrayList(source));
+
+        DSAEvent view = snapshot.get("source");
+        source.setLocation("Room 2");
+
+        assertThat(view.getLocation()).isEqualTo("Room 1");
+        assertThat(view.getStartMillis()).isEqualTo(instant("2016-10-24T09:00").toEpochMilli());
+        assertThat(snapshot.getMemoryBytes()).isGreaterThan(0L);
+        try {
+            view.setTitle("changed");
+            throw new AssertionError("View should be read only");
+        } catch (UnsupportedOperationException expected) {
+            assertThat(view.getTitle()).isEqualTo("source");
+        }
+    }
+
+    @Test
+    public void guest_json_is_shared_until_the_guests_change() {
+        DSAEvent source = event("source", "2016-10-24T09:00", "2016-10-24T10:00");
+        source.getGuests().add(guest("a@example.com"));
+        JsonArray first = source.serializeGuests();
+
+        assertThat(source.serializeGuests()).isSameAs(first);
+        source.getGuests().add(guest("b@example.com"));
+        assertThat(source.serializeGuests()).isNotSameAs(first);
+
+        EventSnapshot snapshot = EventSnapshot.EMPTY.next(Lists.newArrayList(source));
+        JsonArray rowJson = snapshot.get("source").serializeGuests();
+        EventSnapshot next = snapshot.next(snapshot.getEvents());
+
+        assertThat(snapshot.get("source").serializeGuests()).isSameAs(rowJson);
+        assertThat(next.get("source").serializeGuests()).isSameAs(rowJson);
+    }
+
+    @Test
+    public void recurring_masters_cannot_be_changed_through_the_snapshot() {
+        DSAEvent master = event("weekly", "2016-10-24T09:00", "2016-10-24T10:00");
+        master.setRecurrence(Recurrence.parse("FREQ=WEEKLY"));
+        EventSnapshot snapshot = EventSnapshot.EMPTY.next(Lists.newArrayList(master));
+
+        snapshot.get("weekly").setTitle("Changed");
+        snapshot.getEvents().get(0).setTitle("Changed");
+
+        assertThat(snapshot.get("weekly").getTitle()).isEqualTo("weekly");
+        assertThat(snapshot.getEvents().get(0).getTitle()).isEqualTo("weekly");
+    }
+
+    @Test
+    public void with_moves_adds_and_removes_single_events() {
+        DSAEvent early = event("early", "2016-10-24T09:00", "2016-10-24T10:00");
+        DSAEvent late = event("late", "2016-10-24T15:00", "2016-10-24T16:00");
+        EventSnapshot snapshot = EventSnapshot.EMPTY.next(Lists.newArrayList(early, late));
+        DSAEvent moved = event("early", "2016-10-24T17:00", "2016-10-24T18:00");
+        moved.setLocation("Room 2");
+        DSAEvent added = event("added", "2016-10-24T12:00", "2016-10-25T12:00");
+
+        EventSnapshot next = snapshot.with("early", moved).with("added", added).with("late", null);
+
+        assertThat(next.getGeneration()).isEqualTo(4L);
+        assertThat(next.getEvents()).containsExactly(added, moved);
+        assertThat(next.get("early").getLocation()).isEqualTo("Room 2");
+        assertThat(next.get("late")).isNull();
+        assertThat(next.getEventsInRange(instant("2016-10-25T08:00"), instant("2016-10-25T09:00"))).containsExactly(added);
+        assertThat(snapshot.getEvents()).containsExactly(early, late);
+    }
+
+    @Test
+    public void with_replaces_recurring_masters() {
+        DSAEvent single = event("single", "2016-10-24T09:00", "2016-10-24T10:00");
+        EventSnapshot snapshot = EventSnapshot.EMPTY.next(Lists.newArrayList(single));
+        DSAEvent weekly = event("single", "2016-10-24T09:00", "2016-10-24T10:00");
+        weekly.setRecurrence(Recurrence.parse("FREQ=WEEKLY"));
+
+        EventSnapshot next = snapshot.with("single", weekly);
+
+        assertThat(next.size()).isEqualTo(1);
+        assertThat(next.get("single").getRecurrence()).isEqualTo(weekly.getRecurrence());
+        assertThat(next.getEventsInRange(instant("2016-10-31T00:00"), instant("2016-11-01T00:00"))).hasSize(1);
+        assertThat(next.with("single", null).size()).isEqualTo(0);
+    }
+
+    private DSAGuest guest(String email) {
+        return new DSAGuest(null, null, email, false);
+    }
+
+    private DSAEvent event(String uid, String start, String end) {
+        DSAEvent event = new DSAEvent(uid, instant(start), instant(end));
+        event.setUniqueId(uid);
+        return event;
+    }
+
+    private Instant instant(String dateTimeToParse) {
+        return LocalDateTime.parse(dateTimeToParse).atZone(ZoneId.systemDefault()).toInstant();
+    }
+}
@@ -129,4 +129,34 @@ public class EventUtilsTest {
 
         assertThat(result).isEqualTo(expectedResult);
     }
+
+    /**
+     * |-*-|2 Hours free|--| and the search ends before the event
+     */
+    @Test
+    public void null_when_nothing_fits_in_search_window() {
+        List<DSAEvent> events = Lists.newArrayList(
+                new DSAEvent(TITLE, now.minus(1, HOURS), now.plus(1, HOURS)),
+                new DSAEvent(TITLE, now.plus(3, HOURS), now.plus(4, HOURS))
+        );
+
+        TimeRange result = EventUtils.findNextFreeTimeRange(events, Duration.of(3, HOURS), null, now.plus(6, HOURS));
+
+        assertThat(result).isNull();
+    }
+
+    @Test
+    public void search_starts_at_not_before() {
+        Instant notBefore = now.plus(5, HOURS);
+        TimeRange expectedResult = new TimeRange(now.plus(8, HOURS), now.plus(10, HOURS));
+        List<DSAEvent> events = Lists.newArrayList(
+                new DSAEvent(TITLE, now.plus(1, HOURS), now.plus(2, HOURS)),
+                new DSAEvent(TITLE, now.plus(6, HOURS), now.plus(8, HOURS)),
+                new DSAEvent(TITLE, now.plus(4, HOURS), now.plus(7, HOURS))
+        );
+
+        TimeRange result = EventUtils.findNextFreeTimeRange(events, wantedDuration, notBefore, null);
+
+        assertThat(result).isEqualTo(expectedResult);
+    }
 }
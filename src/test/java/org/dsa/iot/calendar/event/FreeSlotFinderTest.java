@@ -0,0 +1,62 @@
+package org.dsa.iot.calendar.event;
+
+import org.assertj.core.util.Lists;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.List;
+
+import static java.time.temporal.ChronoUnit.HOURS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FreeSlotFinderTest {
+    private static final String TITLE = "meeting";
+    private final Instant monday = LocalDateTime.of(2017, 6, 5, 0, 0).toInstant(ZoneOffset.UTC);
+
+    @Test
+    public void finds_gaps_free_in_every_calendar() {
+        List<DSAEvent> first = Lists.newArrayList(
+                new DSAEvent(TITLE, monday.plus(1, HOURS), monday.plus(3, HOURS)),
+                new DSAEvent(TITLE, monday.plus(6, HOURS), monday.plus(7, HOURS)));
+        List<DSAEvent> second = Lists.newArrayList(
+                new DSAEvent(TITLE, monday.plus(2, HOURS), monday.plus(4, HOURS)));
+        FreeSlotFinder finder = new FreeSlotFinder(Duration.of(1, HOURS), null, null, ZoneOffset.UTC);
+
+        List<TimeRange> slots = finder.find(Lists.newArrayList(first, second), monday, monday.plus(10, HOURS), 10);
+
+        assertThat(slots).containsExactly(
+                new TimeRange(monday, monday.plus(1, HOURS)),
+                new TimeRange(monday.plus(4, HOURS), monday.plus(5, HOURS)),
+                new TimeRange(monday.plus(7, HOURS), monday.plus(8, HOURS)));
+    }
+
+    @Test
+    public void stops_after_count_slots() {
+        List<DSAEvent> busy = Lists.newArrayList(
+                new DSAEvent(TITLE, monday.plus(1, HOURS), monday.plus(2, HOURS)),
+                new DSAEvent(TITLE, monday.plus(3, HOURS), monday.plus(4, HOURS)));
+        FreeSlotFinder finder = new FreeSlotFinder(Duration.of(1, HOURS), null, null, ZoneOffset.UTC);
+
+        List<TimeRange> slots = finder.find(Collections.singletonList(busy), monday, monday.plus(10, HOURS), 2);
+
+        assertThat(slots).containsExactly(
+                new TimeRange(monday, monday.plus(1, HOURS)),
+                new TimeRange(monday.plus(2, HOURS), monday.plus(3, HOURS)));
+    }
+
+    @Test
+    public void keeps_slots_within_working_hours() {
+        List<DSAEvent> busy = Lists.newArrayList(
+                new DSAEvent(TITLE, monday.plus(9, HOURS), monday.plus(17, HOURS)));
+        FreeSlotFinder finder = new FreeSlotFinder(Duration.of(2, HOURS), LocalTime.of(9, 0), LocalTime.of(17, 0), ZoneOffset.UTC);
+
+        List<TimeRange> slots = finder.find(Collections.singletonList(busy), monday, monday.plus(48, HOURS), 1);
+
+        assertThat(slots).containsExactly(new TimeRange(monday.plus(33, HOURS), monday.plus(35, HOURS)));
+    }
+}
@@ -0,0 +1,141 @@
+package org.dsa.iot.calendar.event;
+
+import org.assertj.core.util.Lists;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RecurrenceTest {
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    @Test
+    public void daily_rule_stops_after_count() {
+        DSAEvent master = master("RRULE:FREQ=DAILY;COUNT=3", "2016-10-24T09:00", "2016-10-24T10:00");
+
+        List<String> starts = starts(master, "2016-10-01T00:00", "2016-11-01T00:00");
+
+        assertThat(starts).containsExactly("2016-10-24T09:00", "2016-10-25T09:00", "2016-10-26T09:00");
+        assertThat(master.getRecurrence().getRule()).isEqualTo("FREQ=DAILY;COUNT=3");
+    }
+
+    @Test
+    public void weekly_rule_skips_straight_to_far_windows() {
+        DSAEvent master = master("FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,WE", "2016-10-24T09:00", "2016-10-24T10:00");
+
+        List<String> starts = starts(master, "2116-10-01T00:00", "2116-10-15T00:00");
+
+        assertThat(starts).hasSize(2);
+        for (String start : starts) {
+            assertThat(LocalDateTime.parse(start).toLocalTime().toString()).isEqualTo("09:00");
+        }
+    }
+
+    @Test
+    public void excluded_starts_are_skipped_and_occurrences_get_their_own_ids() {
+        DSAEvent master = master("FREQ=DAILY", "2016-10-24T09:00", "2016-10-24T10:00");
+        List<Long> excluded = Recurrence.parseExDates("EXDATE;TZID=Europe/Berlin:20161025T090000", BERLIN);
+        master.setRecurrence(master.getRecurrence().excluding(excluded));
+
+        Iterator<DSAEvent> occurrences = master.getRecurrence().occurrences(master,
+                millis("2016-10-24T00:00"), millis("2016-10-27T00:00"));
+        List<DSAEvent> events = Lists.newArrayList(occurrences);
+
+        assertThat(events).hasSize(2);
+        assertThat(events.get(1).getUniqueId()).isEqualTo(Recurrence.occurrenceId("master", millis("2016-10-26T09:00")));
+        assertThat(events.get(1).getEndMillis()).isEqualTo(millis("2016-10-26T10:00"));
+        assertThat(events.get(1).getRecurrence()).isNull();
+    }
+
+    @Test
+    public void date_only_until_includes_its_last_day_west_of_utc() {
+        ZoneId newYork = ZoneId.of("America/New_York");
+        DSAEvent master = new DSAEvent("master", LocalDateTime.parse("2016-10-24T00:00").atZone(newYork).toInstant(),
+                LocalDateTime.parse("2016-10-25T00:00").atZone(newYork).toInstant());
+        master.setUniqueId("master");
+        master.setTimeZone(newYork.getId());
+        master.setRecurrence(Recurrence.parse("FREQ=DAILY;UNTIL=20161026"));
+
+        Iterator<DSAEvent> occurrences = master.getRecurrence().occurrences(master,
+                millis("2016-10-01T00:00"), millis("2016-11-01T00:00"));
+        List<DSAEvent> events = Lists.newArrayList(occurrences);
+
+        assertThat(events).hasSize(3);
+        assertThat(LocalDateTime.ofInstant(events.get(2).getStart(), newYork).toString()).isEqualTo("2016-10-26T00:00");
+    }
+
+    @Test
+    public void monthly_rule_skips_months_without_the_day() {
+        DSAEvent master = master("FREQ=MONTHLY;COUNT=3", "2016-08-31T09:00", "2016-08-31T10:00");
+
+        List<String> starts = starts(master, "2016-08-01T00:00", "2017-01-01T00:00");
+
+        assertThat(starts).containsExactly("2016-08-31T09:00", "2016-10-31T09:00", "2016-12-31T09:00");
+    }
+
+    @Test
+    public void occurrences_keep_their_local_time_across_daylight_saving_changes() {
+        DSAEvent master = master("FREQ=DAILY", "2016-10-29T09:00", "2016-10-29T10:00");
+
+        List<String> starts = starts(master, "2016-10-29T00:00", "2016-10-31T00:00");
+
+        assertThat(starts).containsExactly("2016-10-29T09:00", "2016-10-30T09:00");
+    }
+
+    @Test
+    public void unsupported_rules_are_rejected() {
+        try {
+            Recurrence.parse("FREQ=MONTHLY;BYSETPOS=-1");
+            throw new AssertionError("Rule should be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage()).isEqualTo("Unsupported rule part BYSETPOS");
+        }
+    }
+
+    @Test
+    public void snapshot_expands_masters_into_ranges() {
+        DSAEvent master = master("FREQ=DAILY", "2016-10-24T09:00", "2016-10-24T10:00");
+        DSAEvent single = new DSAEvent("single", instant("2016-10-26T12:00"), instant("2016-10-26T13:00"));
+        single.setUniqueId("single");
+        EventSnapshot snapshot = EventSnapshot.EMPTY.next(Lists.newArrayList(master, single));
+
+        List<DSAEvent> result = snapshot.getEventsInRange(instant("2016-10-26T00:00"), instant("2016-10-27T00:00"));
+
+        assertThat(result).hasSize(2);
+        assertThat(result.get(0).getStartMillis()).isEqualTo(millis("2016-10-26T09:00"));
+        assertThat(result.get(1)).isEqualTo(single);
+        assertThat(snapshot.get("master").getRecurrence()).isEqualTo(master.getRecurrence());
+        assertThat(snapshot.getEvents()).hasSize(2);
+    }
+
+    private DSAEvent master(String rule, String start, String end) {
+        DSAEvent event = new DSAEvent("master", instant(start), instant(end));
+        event.setUniqueId("master");
+        event.setTimeZone(BERLIN.getId());
+        event.setRecurrence(Recurrence.parse(rule));
+        return event;
+    }
+
+    private List<String> starts(DSAEvent master, String from, String to) {
+        List<String> starts = new ArrayList<>();
+        Iterator<DSAEvent> occurrences = master.getRecurrence().occurrences(master, millis(from), millis(to));
+        while (occurrences.hasNext()) {
+            starts.add(LocalDateTime.ofInstant(occurrences.next().getStart(), BERLIN).toString());
+        }
+        return starts;
+    }
+
+    private long millis(String dateTime) {
+        return instant(dateTime).toEpochMilli();
+    }
+
+    private Instant instant(String dateTime) {
+        return LocalDateTime.parse(dateTime).atZone(BERLIN).toInstant();
+    }
+}
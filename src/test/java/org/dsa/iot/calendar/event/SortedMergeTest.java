@@ -0,0 +1,36 @@
+package org.dsa.iot.calendar.event;
+
+import org.assertj.core.util.Lists;
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SortedMergeTest {
+    @Test
+    public void merges_sorted_sources_in_order() {
+        List<List<Integer>> sources = Lists.newArrayList(
+                Lists.newArrayList(1, 4, 7),
+                Lists.newArrayList(),
+                Lists.newArrayList(2, 3, 8));
+
+        Iterator<Integer> merged = SortedMerge.merge(sources, Comparator.naturalOrder());
+
+        assertThat(Lists.newArrayList(merged)).containsExactly(1, 2, 3, 4, 7, 8);
+    }
+
+    @Test
+    public void only_pulls_the_heads_it_needs() {
+        List<Integer> pulled = Lists.newArrayList();
+        Iterable<Integer> first = () -> Lists.newArrayList(1, 2, 3).stream().peek(pulled::add).iterator();
+        Iterable<Integer> second = () -> Lists.newArrayList(5, 6).stream().peek(pulled::add).iterator();
+
+        Iterator<Integer> merged = SortedMerge.merge(Lists.newArrayList(first, second), Comparator.naturalOrder());
+        merged.next();
+
+        assertThat(pulled).containsExactly(1, 5, 2);
+    }
+}
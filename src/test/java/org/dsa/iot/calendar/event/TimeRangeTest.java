@@ -142,6 +142,35 @@ public class TimeRangeTest {
         assertThat(result).isTrue();
     }
 
+    @Test
+    public void doesnt_overlap_when_ranges_only_touch() {
+        assertThat(TimeRange.overlaps(0, 10, 10, 20)).isFalse();
+        assertThat(TimeRange.overlaps(10, 20, 0, 10)).isFalse();
+    }
+
+    @Test
+    public void overlaps_when_empty_range_is_included_in_the_other() {
+        assertThat(TimeRange.overlaps(10, 10, 0, 10)).isTrue();
+        assertThat(TimeRange.overlaps(10, 10, 10, 10)).isTrue();
+    }
+
+    @Test
+    public void overlaps_agrees_with_the_range_comparisons() {
+        for (long s1 = 0; s1 < 5; s1++) {
+            for (long e1 = s1; e1 < 5; e1++) {
+                for (long s2 = 0; s2 < 5; s2++) {
+                    for (long e2 = s2; e2 < 5; e2++) {
+                        boolean same = s1 == s2 && e1 == e2;
+                        boolean included = s1 >= s2 && e1 <= e2 || s2 >= s1 && e2 <= e1;
+                        boolean partial = s2 < e1 && e2 > e1 && s2 > s1 || s1 < e2 && e1 > e2 && s1 > s2;
+
+                        assertThat(TimeRange.overlaps(s1, e1, s2, e2)).isEqualTo(same || included || partial);
+                    }
+                }
+            }
+        }
+    }
+
     private Instant getInstantFromString(String dateTimeToParse) {
         return LocalDateTime.parse(dateTimeToParse).atZone(ZoneId.systemDefault()).toInstant();
     }
@@ -5,8 +5,12 @@ import org.junit.Test;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
+import static java.time.temporal.ChronoUnit.MINUTES;
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class TimeSlotTableTest {
@@ -140,6 +144,28 @@ public class TimeSlotTableTest {
         assertThat(result).hasSize(1);
     }
 
+    @Test
+    public void mergeSlot_mergesManyRangesInAnyOrder() {
+        Instant base = getInstantFromString("2016-10-24T00:00");
+        List<TimeRange> ranges = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            // Pairs of touching 30 minute ranges, separated by one free hour.
+            int block = i / 2;
+            Instant start = base.plus(block * 120 + (i % 2) * 30, MINUTES);
+            ranges.add(new TimeRange(start, start.plus(30, MINUTES)));
+        }
+        Collections.shuffle(ranges, new Random(42));
+
+        for (TimeRange range : ranges) {
+            timeSlotTable.mergeSlot(range);
+        }
+
+        List<TimeRange> result = timeSlotTable.getTable();
+        assertThat(result).hasSize(5000);
+        assertThat(result.get(0)).isEqualTo(new TimeRange(base, base.plus(60, MINUTES)));
+        assertThat(result.get(1)).isEqualTo(new TimeRange(base.plus(120, MINUTES), base.plus(180, MINUTES)));
+    }
+
     private int getHour(Instant instant) {
         return instant.atZone(ZoneId.systemDefault()).getHour();
     }
@@ -0,0 +1,36 @@
+package org.dsa.iot.calendar.event;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TriggerTest {
+    private static final Instant START = Instant.parse("2016-10-24T09:00:00Z");
+    private static final Instant END = Instant.parse("2016-10-24T10:00:00Z");
+
+    @Test
+    public void fires_at_the_chosen_boundary() {
+        DSAEvent event = new DSAEvent("Standup", START, END);
+
+        assertThat(new Trigger(Trigger.Kind.BEFORE_START, 15, null, null).fireTime(event))
+                .isEqualTo(START.minusSeconds(15 * 60).toEpochMilli());
+        assertThat(new Trigger(Trigger.Kind.AT_START, 15, null, null).fireTime(event)).isEqualTo(START.toEpochMilli());
+        assertThat(new Trigger(Trigger.Kind.AT_END, 0, null, null).fireTime(event)).isEqualTo(END.toEpochMilli());
+    }
+
+    @Test
+    public void matches_title_and_location_patterns() {
+        DSAEvent event = new DSAEvent("Board meeting", START, END);
+        event.setLocation("Building A, Room 12");
+        DSAEvent nowhere = new DSAEvent("Board meeting", START, END);
+
+        Trigger trigger = new Trigger(Trigger.Kind.AT_START, 0, Pattern.compile("(?i)board"), Pattern.compile("Building A"));
+
+        assertThat(trigger.matches(event)).isTrue();
+        assertThat(trigger.matches(nowhere)).isFalse();
+        assertThat(new Trigger(Trigger.Kind.AT_START, 0, null, null).matches(nowhere)).isTrue();
+    }
+}
@@ -0,0 +1,75 @@
+package org.dsa.iot.calendar.google;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.services.calendar.model.Event;
+import org.dsa.iot.calendar.BulkResult;
+import org.dsa.iot.calendar.event.DSAEvent;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GoogleBatchTest {
+    @Test
+    public void responses_are_stored_at_the_index_of_their_request() throws IOException {
+        BulkResult[] results = new BulkResult[3];
+
+        new GoogleCalendar.BulkCallback<Event>(results, 2, null).onSuccess(new Event().setId("third"), null);
+        new GoogleCalendar.BulkCallback<Event>(results, 0, null).onSuccess(new Event().setId("first"), null);
+        new GoogleCalendar.BulkCallback<Event>(results, 1, null).onFailure(new GoogleJsonError().setMessage("Forbidden"), null);
+
+        assertThat(results[0].getUniqueId()).isEqualTo("first");
+        assertThat(results[1].isSuccess()).isFalse();
+        assertThat(results[1].getError()).isEqualTo("Forbidden");
+        assertThat(results[2].getUniqueId()).isEqualTo("third");
+    }
+
+    @Test
+    public void deletes_report_the_id_of_their_event() throws IOException {
+        BulkResult[] results = new BulkResult[1];
+
+        new GoogleCalendar.BulkCallback<Void>(results, 0, "uid").onSuccess(null, null);
+
+        assertThat(results[0].isSuccess()).isTrue();
+        assertThat(results[0].getUniqueId()).isEqualTo("uid");
+    }
+
+    @Test
+    public void failed_batches_only_fail_the_unanswered_requests() throws IOException {
+        List<DSAEvent> events = Arrays.asList(event("a"), event("b"), event("c"), event("d"));
+        BulkResult[] results = new BulkResult[events.size()];
+        results[0] = BulkResult.success("a");
+        new GoogleCalendar.BulkCallback<Void>(results, 2, "c").onSuccess(null, null);
+
+        GoogleCalendar.fillFailures(results, 0, 3, events, new IOException("Connection reset"), true);
+
+        assertThat(results[0].isSuccess()).isTrue();
+        assertThat(results[1].getUniqueId()).isEqualTo("b");
+        assertThat(results[1].getError()).isEqualTo("Connection reset");
+        assertThat(results[2].isSuccess()).isTrue();
+        assertThat(results[3]).isNull();
+    }
+
+    @Test
+    public void unanswered_inserts_fail_without_an_id() {
+        List<DSAEvent> events = Arrays.asList(event(null), event(null));
+        BulkResult[] results = new BulkResult[events.size()];
+        results[1] = BulkResult.success("created");
+
+        GoogleCalendar.fillFailures(results, 0, 2, events, null, false);
+
+        assertThat(results[0].isSuccess()).isFalse();
+        assertThat(results[0].getUniqueId()).isNull();
+        assertThat(results[1].getUniqueId()).isEqualTo("created");
+    }
+
+    private DSAEvent event(String uid) {
+        DSAEvent event = new DSAEvent("Booking", Instant.parse("2016-10-24T09:00:00Z"), Instant.parse("2016-10-24T10:00:00Z"));
+        event.setUniqueId(uid);
+        return event;
+    }
+}